@@ -0,0 +1,132 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for system property isolation of {@link GradleBuildTask}.
+ * This launches a real Gradle daemon, so that this must be run as a plug-in test.
+ */
+public class GradleBuildTaskPropertyIsolationTest {
+
+    private static final String KEY_BUILD_ID = "com.asakusafw.shafu.test.buildId"; //$NON-NLS-1$
+
+    private static final String KEY_PREFIX = "com.asakusafw.shafu.test.build."; //$NON-NLS-1$
+
+    private static final String KEY_EXPECTED_ID = "expectedId"; //$NON-NLS-1$
+
+    private static final String KEY_REPORT_FILE = "reportFile"; //$NON-NLS-1$
+
+    private static final String TASK_NAME = "checkIsolation"; //$NON-NLS-1$
+
+    private static final int BUILDS = 4;
+
+    private static final String SCRIPT = "import java.lang.management.ManagementFactory\n" //$NON-NLS-1$
+            + "task " + TASK_NAME + " '{'\n" //$NON-NLS-1$ //$NON-NLS-2$
+            + "    doLast '{'\n" //$NON-NLS-1$
+            + "        def expected = project.property(''" + KEY_EXPECTED_ID + "'')\n" //$NON-NLS-1$ //$NON-NLS-2$
+            + "        def leaked = System.properties.keySet().findAll '{'\n" //$NON-NLS-1$
+            + "            it.startsWith(''{1}'') && it != ''{1}'' + expected\n" //$NON-NLS-1$
+            + "        '}'\n" //$NON-NLS-1$
+            + "        new File(project.property(''" + KEY_REPORT_FILE + "'')).text = [\n" //$NON-NLS-1$ //$NON-NLS-2$
+            + "            ManagementFactory.runtimeMXBean.name,\n" //$NON-NLS-1$
+            + "            System.getProperty(''{0}''),\n" //$NON-NLS-1$
+            + "            new File(System.getProperty(''user.dir'')).canonicalPath,\n" //$NON-NLS-1$
+            + "            leaked.sort().join('','')].join(''\\n'')\n" //$NON-NLS-1$
+            + "    '}'\n" //$NON-NLS-1$
+            + "'}'\n"; //$NON-NLS-1$
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
+    /**
+     * Runs builds one after another on the same daemon, and checks that each build observes only its own
+     * system properties and working directory.
+     * @throws Exception if failed
+     */
+    @Test
+    public void sequential_builds() throws Exception {
+        File[] projects = {
+                createProject("a"), //$NON-NLS-1$
+                createProject("b"), //$NON-NLS-1$
+        };
+        Properties client = copy(System.getProperties());
+        String daemon = null;
+        for (int i = 0; i < BUILDS; i++) {
+            String id = String.valueOf(i);
+            File project = projects[i % projects.length];
+            File report = new File(temporary.getRoot(), "report-" + id + ".txt"); //$NON-NLS-1$ //$NON-NLS-2$
+
+            Map<String, String> systemProperties = new LinkedHashMap<>();
+            systemProperties.put(KEY_BUILD_ID, id);
+            systemProperties.put(KEY_PREFIX + id, id);
+            Map<String, String> projectProperties = new LinkedHashMap<>();
+            projectProperties.put(KEY_EXPECTED_ID, id);
+            projectProperties.put(KEY_REPORT_FILE, report.getAbsolutePath());
+            GradleContext context = new GradleContextBuilder()
+                    .withSystemProperties(systemProperties)
+                    .withProjectProperties(projectProperties)
+                    .build(project);
+            new GradleBuildTask(context, Arrays.asList(TASK_NAME)).run(new NullProgressMonitor());
+
+            List<String> lines = Files.readAllLines(report.toPath(), StandardCharsets.UTF_8);
+            if (daemon == null) {
+                daemon = lines.get(0);
+            } else {
+                // otherwise, this test cannot detect properties leaked between builds
+                assertEquals("builds must share the same daemon", daemon, lines.get(0)); //$NON-NLS-1$
+            }
+            assertEquals(id, lines.get(1));
+            assertEquals(project.getCanonicalPath(), lines.get(2));
+            assertEquals("leaked properties", "", lines.size() > 3 ? lines.get(3) : ""); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        assertEquals("client properties", client, copy(System.getProperties())); //$NON-NLS-1$
+    }
+
+    private File createProject(String name) throws IOException {
+        File project = temporary.newFolder(name);
+        Files.write(new File(project, "settings.gradle").toPath(), new byte[0]); //$NON-NLS-1$
+        Files.write(new File(project, GradleContext.DEFAULT_BUILD_SCRIPT_NAME).toPath(),
+                MessageFormat.format(SCRIPT, KEY_BUILD_ID, KEY_PREFIX).getBytes(StandardCharsets.UTF_8));
+        return project;
+    }
+
+    private static Properties copy(Properties properties) {
+        Properties results = new Properties();
+        results.putAll(properties);
+        return results;
+    }
+}
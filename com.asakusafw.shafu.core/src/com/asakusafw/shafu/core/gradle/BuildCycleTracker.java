@@ -0,0 +1,97 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IStatus;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationResult;
+import org.gradle.tooling.events.OperationType;
+import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.ProgressListener;
+import org.gradle.tooling.events.StartEvent;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskSkippedResult;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * Tracks build cycles of continuous builds, and notifies them to {@link IBuildCycleListener}.
+ * @since 0.8.0
+ */
+final class BuildCycleTracker implements ProgressListener {
+
+    static final Set<OperationType> OPERATION_TYPES = EnumSet.of(OperationType.TASK, OperationType.GENERIC);
+
+    private final IBuildCycleListener listener;
+
+    private final Set<String> executedTaskPaths = new LinkedHashSet<>();
+
+    BuildCycleTracker(IBuildCycleListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void statusChanged(ProgressEvent event) {
+        if (event instanceof StartEvent) {
+            if (event.getDescriptor().getParent() == null) {
+                // the root build operation was started
+                executedTaskPaths.clear();
+                LogUtil.debug("Build cycle was started"); //$NON-NLS-1$
+                try {
+                    listener.cycleStarted();
+                } catch (RuntimeException e) {
+                    LogUtil.log(IStatus.ERROR, e.getMessage(), e);
+                }
+            }
+            return;
+        }
+        if ((event instanceof FinishEvent) == false) {
+            return;
+        }
+        if (event instanceof TaskFinishEvent) {
+            TaskFinishEvent finish = (TaskFinishEvent) event;
+            if (isExecuted(finish.getResult())) {
+                executedTaskPaths.add(finish.getDescriptor().getTaskPath());
+            }
+        } else if (event.getDescriptor().getParent() == null) {
+            // the root build operation was finished
+            Set<String> paths = new LinkedHashSet<>(executedTaskPaths);
+            executedTaskPaths.clear();
+            LogUtil.debug("Build cycle was finished: {0}", paths); //$NON-NLS-1$
+            try {
+                listener.cycleFinished(paths);
+            } catch (RuntimeException e) {
+                LogUtil.log(IStatus.ERROR, e.getMessage(), e);
+            }
+        }
+    }
+
+    private static boolean isExecuted(OperationResult result) {
+        if (result instanceof TaskSkippedResult) {
+            return false;
+        }
+        if (result instanceof TaskSuccessResult) {
+            return ((TaskSuccessResult) result).isUpToDate() == false;
+        }
+        // failed tasks may also leave their outputs
+        return true;
+    }
+}
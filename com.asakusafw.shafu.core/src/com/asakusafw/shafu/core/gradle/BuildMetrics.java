@@ -0,0 +1,219 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IStatus;
+
+import com.asakusafw.shafu.internal.core.Activator;
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * Elapsed time of each phase in a Gradle build.
+ * Each elapsed time is measured by the monotonic clock ({@link System#nanoTime()}).
+ * @since 0.8.0
+ * @see IBuildMetricsListener
+ */
+public final class BuildMetrics {
+
+    private final File projectDirectory;
+
+    private final List<String> tasks;
+
+    private final Map<Phase, Long> elapsedNanos = new EnumMap<>(Phase.class);
+
+    private volatile boolean succeeded;
+
+    /**
+     * Creates a new instance.
+     * @param projectDirectory the target project directory
+     * @param tasks the target task names
+     */
+    public BuildMetrics(File projectDirectory, List<String> tasks) {
+        this.projectDirectory = projectDirectory;
+        this.tasks = Collections.unmodifiableList(new ArrayList<>(tasks));
+    }
+
+    /**
+     * Returns the target project directory.
+     * @return the target project directory
+     */
+    public File getProjectDirectory() {
+        return projectDirectory;
+    }
+
+    /**
+     * Returns the target task names.
+     * @return the target task names
+     */
+    public List<String> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Returns whether or not the target operation was successfully finished.
+     * @return {@code true} if it was successfully finished, otherwise {@code false}
+     */
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Sets whether or not the target operation was successfully finished.
+     * @param succeeded {@code true} if it was successfully finished, otherwise {@code false}
+     */
+    public void setSucceeded(boolean succeeded) {
+        this.succeeded = succeeded;
+    }
+
+    /**
+     * Records the elapsed time of the phase.
+     * @param phase the target phase
+     * @param startNanos the start time of the phase in {@link System#nanoTime()}
+     * @return the current time in {@link System#nanoTime()}, which can be the start time of the next phase
+     */
+    public long record(Phase phase, long startNanos) {
+        long now = System.nanoTime();
+        synchronized (elapsedNanos) {
+            Long last = elapsedNanos.get(phase);
+            elapsedNanos.put(phase, (last == null ? 0L : last) + (now - startNanos));
+        }
+        return now;
+    }
+
+    /**
+     * Returns the elapsed time of each recorded phase.
+     * @return the elapsed time in nanoseconds, ordered by their phases
+     */
+    public Map<Phase, Long> getElapsedNanos() {
+        synchronized (elapsedNanos) {
+            return new EnumMap<>(elapsedNanos);
+        }
+    }
+
+    /**
+     * Returns the total elapsed time of the recorded phases.
+     * @return the total elapsed time in nanoseconds
+     */
+    public long getTotalNanos() {
+        long total = 0L;
+        for (Long value : getElapsedNanos().values()) {
+            total += value;
+        }
+        return total;
+    }
+
+    /**
+     * Returns a one-line summary of this metrics.
+     * @return the summary
+     */
+    public String getSummary() {
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<Phase, Long> entry : getElapsedNanos().entrySet()) {
+            buf.append(", "); //$NON-NLS-1$
+            buf.append(entry.getKey().getSymbol());
+            buf.append('=');
+            buf.append(TimeUnit.NANOSECONDS.toMillis(entry.getValue()));
+            buf.append("ms"); //$NON-NLS-1$
+        }
+        return MessageFormat.format(
+                "{0} {1}: total={2}ms{3}", //$NON-NLS-1$
+                projectDirectory.getName(),
+                tasks,
+                TimeUnit.NANOSECONDS.toMillis(getTotalNanos()),
+                buf);
+    }
+
+    /**
+     * Publishes this metrics to the registered {@link IBuildMetricsListener}s.
+     * @param context the current context
+     */
+    public void publish(GradleContext context) {
+        for (IBuildMetricsListener listener : Activator.getExtensions().createBuildMetricsListeners()) {
+            try {
+                listener.metricsRecorded(context, this);
+            } catch (RuntimeException e) {
+                LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                        Messages.BuildMetrics_warnFailedToPublish,
+                        listener.getClass().getName()), e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+
+    /**
+     * Represents a phase of Gradle builds.
+     */
+    public enum Phase {
+
+        /**
+         * Enhancing {@link GradleContext}.
+         */
+        ENHANCE,
+
+        /**
+         * Connecting to the target project.
+         */
+        CONNECT,
+
+        /**
+         * Obtaining the build environment.
+         */
+        ENVIRONMENT,
+
+        /**
+         * Running the Gradle build.
+         */
+        BUILD,
+
+        /**
+         * Disconnecting from the target project.
+         */
+        DISCONNECT,
+
+        /**
+         * Disposing {@link GradleContext}.
+         */
+        DISPOSE,
+
+        /**
+         * Refreshing workspace resources after the build.
+         */
+        REFRESH,
+        ;
+
+        /**
+         * Returns the symbol of this phase.
+         * @return the symbol
+         */
+        public String getSymbol() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.ICommand;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.IAccessRule;
+import org.eclipse.jdt.core.IClasspathAttribute;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.launching.JavaRuntime;
+import org.gradle.tooling.model.UnsupportedMethodException;
+import org.gradle.tooling.model.eclipse.AccessRule;
+import org.gradle.tooling.model.eclipse.ClasspathAttribute;
+import org.gradle.tooling.model.eclipse.EclipseBuildCommand;
+import org.gradle.tooling.model.eclipse.EclipseClasspathContainer;
+import org.gradle.tooling.model.eclipse.EclipseClasspathEntry;
+import org.gradle.tooling.model.eclipse.EclipseExternalDependency;
+import org.gradle.tooling.model.eclipse.EclipseJavaSourceSettings;
+import org.gradle.tooling.model.eclipse.EclipseOutputLocation;
+import org.gradle.tooling.model.eclipse.EclipseProject;
+import org.gradle.tooling.model.eclipse.EclipseProjectDependency;
+import org.gradle.tooling.model.eclipse.EclipseProjectNature;
+import org.gradle.tooling.model.eclipse.EclipseSourceDirectory;
+
+import com.asakusafw.shafu.core.util.IRunnable;
+import com.asakusafw.shafu.core.util.StatusUtils;
+import com.asakusafw.shafu.internal.core.Activator;
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * Configures workspace projects directly from the Gradle {@link EclipseProject} model.
+ * This applies project natures, build commands, source folders, classpath entries,
+ * and Java compliance settings in a single workspace operation,
+ * instead of generating Eclipse metadata files by {@link GradleBuildTask#TASK_CONFIGURE_ECLIPSE}.
+ * The target projects are created if they do not exist in the workspace.
+ * @since 0.8.0
+ */
+public class EclipseSyncTask implements IRunnable {
+
+    private static final String DEFAULT_OUTPUT_LOCATION = "bin"; //$NON-NLS-1$
+
+    private final EclipseProject model;
+
+    private final List<File> projectDirectories;
+
+    private final List<IProject> projects = new ArrayList<>();
+
+    /**
+     * Creates a new instance.
+     * @param model the Eclipse model of any project in the target build
+     * @param projectDirectories the target project directories
+     */
+    public EclipseSyncTask(EclipseProject model, List<File> projectDirectories) {
+        this.model = model;
+        this.projectDirectories = new ArrayList<>(projectDirectories);
+    }
+
+    /**
+     * Returns the synchronized projects.
+     * @return the synchronized projects
+     */
+    public List<IProject> getProjects() {
+        return new ArrayList<>(projects);
+    }
+
+    @Override
+    public void run(IProgressMonitor monitor) throws CoreException {
+        final List<EclipseProject> targets = findTargets();
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        workspace.run(new IWorkspaceRunnable() {
+            @Override
+            public void run(IProgressMonitor m) throws CoreException {
+                SubMonitor sub = SubMonitor.convert(m, Messages.EclipseSyncTask_monitorSync, targets.size());
+                projects.clear();
+                for (EclipseProject target : targets) {
+                    StatusUtils.checkCanceled(sub);
+                    projects.add(synchronize(sub.newChild(1), target));
+                }
+            }
+        }, workspace.getRoot(), IWorkspace.AVOID_UPDATE, monitor);
+    }
+
+    private List<EclipseProject> findTargets() throws CoreException {
+        EclipseProject root = model;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Map<File, EclipseProject> candidates = new LinkedHashMap<>();
+        LinkedList<EclipseProject> work = new LinkedList<>();
+        work.add(root);
+        while (work.isEmpty() == false) {
+            EclipseProject next = work.removeFirst();
+            candidates.put(next.getProjectDirectory().getAbsoluteFile(), next);
+            work.addAll(next.getChildren());
+        }
+        List<EclipseProject> results = new ArrayList<>();
+        for (File directory : projectDirectories) {
+            EclipseProject target = candidates.get(directory.getAbsoluteFile());
+            if (target == null) {
+                throw new CoreException(new Status(
+                        IStatus.ERROR,
+                        Activator.PLUGIN_ID,
+                        MessageFormat.format(
+                                Messages.EclipseSyncTask_errorMissingProject,
+                                directory)));
+            }
+            results.add(target);
+        }
+        return results;
+    }
+
+    IProject synchronize(SubMonitor monitor, EclipseProject target) throws CoreException {
+        monitor.setWorkRemaining(100);
+        LogUtil.debug("Synchronizing Eclipse project: {0}", target.getName()); //$NON-NLS-1$
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        IProject project = workspace.getRoot().getProject(target.getName());
+        IPath location = Path.fromOSString(target.getProjectDirectory().getAbsolutePath());
+        IProjectDescription description;
+        if (project.exists()) {
+            if (project.isOpen() == false) {
+                project.open(monitor.newChild(10));
+            }
+            description = project.getDescription();
+        } else {
+            description = workspace.newProjectDescription(project.getName());
+            if (workspace.getRoot().getLocation().append(project.getName()).equals(location) == false) {
+                description.setLocation(location);
+            }
+            project.create(description, monitor.newChild(10));
+            project.open(monitor.newChild(10));
+        }
+        boolean java = configureDescription(description, target);
+        project.setDescription(description, monitor.newChild(10));
+        if (java) {
+            configureJavaProject(monitor.newChild(70), JavaCore.create(project), target);
+        }
+        return project;
+    }
+
+    private static boolean configureDescription(IProjectDescription description, EclipseProject target) {
+        Set<String> natures = new LinkedHashSet<>();
+        List<ICommand> commands = new ArrayList<>();
+        try {
+            for (EclipseProjectNature nature : target.getProjectNatures()) {
+                natures.add(nature.getId());
+            }
+            for (EclipseBuildCommand command : target.getBuildCommands()) {
+                ICommand c = description.newCommand();
+                c.setBuilderName(command.getName());
+                c.setArguments(new LinkedHashMap<>(command.getArguments()));
+                commands.add(c);
+            }
+        } catch (UnsupportedMethodException e) {
+            LogUtil.debug("Project natures are not available: {0}", target.getName()); //$NON-NLS-1$
+            if (target.getSourceDirectories().isEmpty() == false) {
+                natures.add(JavaCore.NATURE_ID);
+                ICommand c = description.newCommand();
+                c.setBuilderName(JavaCore.BUILDER_ID);
+                commands.add(c);
+            }
+        }
+        description.setNatureIds(natures.toArray(new String[natures.size()]));
+        description.setBuildSpec(commands.toArray(new ICommand[commands.size()]));
+        return natures.contains(JavaCore.NATURE_ID);
+    }
+
+    private static void configureJavaProject(
+            SubMonitor monitor,
+            IJavaProject javaProject, EclipseProject target) throws CoreException {
+        monitor.setWorkRemaining(100);
+        IPath base = javaProject.getProject().getFullPath();
+        List<IClasspathEntry> entries = new ArrayList<>();
+        for (EclipseSourceDirectory source : target.getSourceDirectories()) {
+            String sourceOutput = getOutput(source);
+            entries.add(JavaCore.newSourceEntry(
+                    base.append(source.getPath()),
+                    toPatterns(source, true),
+                    toPatterns(source, false),
+                    sourceOutput == null ? null : base.append(sourceOutput),
+                    toAttributes(source)));
+        }
+        boolean sawJre = false;
+        try {
+            for (EclipseClasspathContainer container : target.getClasspathContainers()) {
+                IPath path = new Path(container.getPath());
+                sawJre |= JavaRuntime.JRE_CONTAINER.equals(path.segment(0));
+                entries.add(JavaCore.newContainerEntry(
+                        path,
+                        toAccessRules(container),
+                        toAttributes(container),
+                        container.isExported()));
+            }
+        } catch (UnsupportedMethodException e) {
+            LogUtil.debug("Classpath containers are not available: {0}", target.getName()); //$NON-NLS-1$
+        }
+        if (sawJre == false) {
+            entries.add(JavaCore.newContainerEntry(JavaRuntime.newDefaultJREContainerPath()));
+        }
+        for (EclipseProjectDependency dependency : target.getProjectDependencies()) {
+            entries.add(JavaCore.newProjectEntry(
+                    new Path(dependency.getPath()).makeAbsolute(),
+                    toAccessRules(dependency),
+                    true,
+                    toAttributes(dependency),
+                    dependency.isExported()));
+        }
+        for (EclipseExternalDependency dependency : target.getClasspath()) {
+            if (dependency.getFile() == null) {
+                continue;
+            }
+            entries.add(JavaCore.newLibraryEntry(
+                    Path.fromOSString(dependency.getFile().getAbsolutePath()),
+                    dependency.getSource() == null ? null : Path.fromOSString(dependency.getSource().getAbsolutePath()),
+                    null,
+                    toAccessRules(dependency),
+                    toAttributes(dependency),
+                    dependency.isExported()));
+        }
+        IPath output;
+        try {
+            EclipseOutputLocation location = target.getOutputLocation();
+            output = base.append(location == null ? DEFAULT_OUTPUT_LOCATION : location.getPath());
+        } catch (UnsupportedMethodException e) {
+            output = base.append(DEFAULT_OUTPUT_LOCATION);
+        }
+        javaProject.setRawClasspath(
+                entries.toArray(new IClasspathEntry[entries.size()]),
+                output,
+                monitor.newChild(90));
+        configureCompliance(javaProject, target);
+    }
+
+    private static void configureCompliance(IJavaProject javaProject, EclipseProject target) {
+        EclipseJavaSourceSettings settings;
+        try {
+            settings = target.getJavaSourceSettings();
+        } catch (UnsupportedMethodException e) {
+            return;
+        }
+        if (settings == null || settings.getSourceLanguageLevel() == null) {
+            return;
+        }
+        Map<String, String> options = javaProject.getOptions(false);
+        JavaCore.setComplianceOptions(settings.getSourceLanguageLevel().toString(), options);
+        try {
+            if (settings.getTargetBytecodeVersion() != null) {
+                options.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, settings.getTargetBytecodeVersion().toString());
+            }
+        } catch (UnsupportedMethodException e) {
+            LogUtil.debug("Target bytecode version is not available: {0}", target.getName()); //$NON-NLS-1$
+        }
+        javaProject.setOptions(options);
+    }
+
+    private static String getOutput(EclipseSourceDirectory source) {
+        try {
+            return source.getOutput();
+        } catch (UnsupportedMethodException e) {
+            return null;
+        }
+    }
+
+    private static IPath[] toPatterns(EclipseSourceDirectory source, boolean includes) {
+        List<IPath> results = new ArrayList<>();
+        try {
+            for (String pattern : includes ? source.getIncludes() : source.getExcludes()) {
+                results.add(new Path(pattern));
+            }
+        } catch (UnsupportedMethodException e) {
+            return new IPath[0];
+        }
+        return results.toArray(new IPath[results.size()]);
+    }
+
+    private static IClasspathAttribute[] toAttributes(EclipseClasspathEntry entry) {
+        List<IClasspathAttribute> results = new ArrayList<>();
+        try {
+            for (ClasspathAttribute attribute : entry.getClasspathAttributes()) {
+                results.add(JavaCore.newClasspathAttribute(attribute.getName(), attribute.getValue()));
+            }
+        } catch (UnsupportedMethodException e) {
+            return new IClasspathAttribute[0];
+        }
+        return results.toArray(new IClasspathAttribute[results.size()]);
+    }
+
+    private static IAccessRule[] toAccessRules(EclipseClasspathEntry entry) {
+        List<IAccessRule> results = new ArrayList<>();
+        try {
+            for (AccessRule rule : entry.getAccessRules()) {
+                results.add(JavaCore.newAccessRule(new Path(rule.getPattern()), rule.getKind()));
+            }
+        } catch (UnsupportedMethodException e) {
+            return new IAccessRule[0];
+        }
+        return results.toArray(new IAccessRule[results.size()]);
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+
+import com.asakusafw.shafu.core.util.IRunnable;
+import com.asakusafw.shafu.core.util.RunnableBuilder;
+import com.asakusafw.shafu.internal.core.Activator;
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * Schedules Gradle builds, with coalescing equivalent requests.
+ * Builds are queued for each {@code queue key} (e.g. the root project directory), and each queue runs
+ * at most one build at a time, in the order of their requests.
+ * A request which spans several queues runs only after it reaches the head of all of them.
+ * <ul>
+ * <li> If the request is equivalent to a pending one on the same queues,
+ *      this returns the existing job instead of creating a new one. </li>
+ * <li> Otherwise, the pending requests which are subsumed by the request (equivalent ones on a subset of its
+ *      queues) are canceled without running, and the request is queued. </li>
+ * </ul>
+ * Note that requests are never coalesced with the running builds, because they may have started before
+ * the latest changes.
+ * @since 0.8.0
+ */
+public final class GradleBuildScheduler {
+
+    private final Map<Object, Queue> queues = new HashMap<>();
+
+    /**
+     * Returns the shared instance.
+     * @return the shared instance
+     */
+    public static GradleBuildScheduler getDefault() {
+        return Activator.getBuildScheduler();
+    }
+
+    /**
+     * Schedules a build request.
+     * Clients can wait for or observe the returned job to subscribe the build result.
+     * @param queueKey the queue key (e.g. the root project directory)
+     * @param requestKey the request key, which must be equivalent if the requests are also equivalent
+     *     (e.g. the build tasks and arguments)
+     * @param name the job name
+     * @param runnable the build operation
+     * @return the job which will perform the request
+     */
+    public Job schedule(Object queueKey, Object requestKey, String name, IRunnable runnable) {
+        return schedule(Collections.singleton(queueKey), requestKey, name, runnable);
+    }
+
+    /**
+     * Schedules a build request which spans several queues.
+     * Clients can wait for or observe the returned job to subscribe the build result.
+     * @param queueKeys the queue keys (e.g. the root project directories)
+     * @param requestKey the request key, which must be equivalent if the requests are also equivalent
+     *     (e.g. the build tasks and arguments)
+     * @param name the job name
+     * @param runnable the build operation
+     * @return the job which will perform the request
+     */
+    public synchronized Job schedule(
+            Collection<?> queueKeys, Object requestKey, String name, IRunnable runnable) {
+        Set<Queue> targets = new LinkedHashSet<>();
+        for (Object queueKey : queueKeys) {
+            Queue queue = queues.get(queueKey);
+            if (queue == null) {
+                queue = new Queue(queueKey);
+                queues.put(queueKey, queue);
+            }
+            targets.add(queue);
+        }
+        Request existing = findPending(targets, requestKey);
+        if (existing != null) {
+            LogUtil.debug("Coalesced build request: {0} - {1}", queueKeys, requestKey); //$NON-NLS-1$
+            return existing.job;
+        }
+        Request request = new Request(targets, requestKey, name, runnable);
+        Set<Queue> affected = new LinkedHashSet<>();
+        for (Request subsumed : findSubsumed(targets, requestKey)) {
+            affected.addAll(supersede(subsumed));
+        }
+        for (Queue queue : targets) {
+            queue.pending.addLast(request);
+        }
+        affected.addAll(targets);
+        startPending(affected);
+        return request.job;
+    }
+
+    private static Request findPending(Set<Queue> targets, Object requestKey) {
+        for (Request candidate : targets.iterator().next().pending) {
+            if (candidate.requestKey.equals(requestKey) && candidate.queues.equals(targets)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static Set<Request> findSubsumed(Set<Queue> targets, Object requestKey) {
+        Set<Request> results = new LinkedHashSet<>();
+        for (Queue queue : targets) {
+            for (Request candidate : queue.pending) {
+                if (candidate.requestKey.equals(requestKey) && targets.containsAll(candidate.queues)) {
+                    results.add(candidate);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Cancels the pending request, so that its observers are notified without running it.
+     * @return the queues which contained the request
+     */
+    private static Set<Queue> supersede(Request request) {
+        LogUtil.debug("Superseded pending build request: {0}", request.requestKey); //$NON-NLS-1$
+        for (Queue queue : request.queues) {
+            queue.pending.remove(request);
+        }
+        request.superseded = true;
+        request.job.schedule();
+        request.job.cancel();
+        return request.queues;
+    }
+
+    private void startPending(Collection<Queue> targets) {
+        Set<Request> candidates = new LinkedHashSet<>();
+        for (Queue queue : targets) {
+            if (queue.running == null && queue.pending.isEmpty() == false) {
+                candidates.add(queue.pending.getFirst());
+            }
+        }
+        for (Request candidate : candidates) {
+            tryStart(candidate);
+        }
+    }
+
+    private static void tryStart(Request request) {
+        for (Queue queue : request.queues) {
+            if (queue.running != null || queue.pending.peekFirst() != request) {
+                return;
+            }
+        }
+        for (Queue queue : request.queues) {
+            queue.pending.removeFirst();
+            queue.running = request;
+        }
+        request.job.schedule();
+    }
+
+    synchronized void finished(Request request) {
+        List<Queue> released = new ArrayList<>();
+        for (Queue queue : request.queues) {
+            if (queue.running != request) {
+                continue;
+            }
+            queue.running = null;
+            if (queue.pending.isEmpty()) {
+                queues.remove(queue.key);
+            } else {
+                released.add(queue);
+            }
+        }
+        startPending(released);
+    }
+
+    private static final class Queue {
+
+        final Object key;
+
+        final LinkedList<Request> pending = new LinkedList<>();
+
+        Request running;
+
+        Queue(Object key) {
+            this.key = key;
+        }
+    }
+
+    private final class Request extends JobChangeAdapter {
+
+        final Set<Queue> queues;
+
+        final Object requestKey;
+
+        final Job job;
+
+        volatile boolean superseded;
+
+        Request(Set<Queue> queues, Object requestKey, String name, final IRunnable runnable) {
+            this.queues = queues;
+            this.requestKey = requestKey;
+            this.job = RunnableBuilder.toWorkspaceJob(name, new IRunnable() {
+                @Override
+                public void run(IProgressMonitor monitor) throws CoreException {
+                    if (superseded) {
+                        throw new CoreException(Status.CANCEL_STATUS);
+                    }
+                    runnable.run(monitor);
+                }
+            });
+            job.addJobChangeListener(this);
+        }
+
+        @Override
+        public void done(IJobChangeEvent event) {
+            finished(this);
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.asakusafw.shafu.core.gradle;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
 import org.eclipse.core.runtime.CoreException;
@@ -26,9 +27,11 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.gradle.tooling.BuildLauncher;
 import org.gradle.tooling.ProjectConnection;
-import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.OperationType;
 import org.gradle.tooling.model.build.BuildEnvironment;
 
+import com.asakusafw.shafu.core.gradle.BuildMetrics.Phase;
+import com.asakusafw.shafu.core.gradle.GradleConnectionPool.Lease;
 import com.asakusafw.shafu.core.gradle.GradleUtil.OperationHandler;
 import com.asakusafw.shafu.core.util.IRunnable;
 import com.asakusafw.shafu.internal.core.Activator;
@@ -36,7 +39,7 @@ import com.asakusafw.shafu.internal.core.Activator;
 /**
  * Launches Gradle and build the target project.
  * @see GradleException
- * @version 0.2.2
+ * @version 0.8.0
  */
 public class GradleBuildTask implements IRunnable {
 
@@ -56,18 +59,67 @@ public class GradleBuildTask implements IRunnable {
      */
     public static final String TASK_CONFIGURE_ECLIPSE = "eclipse"; //$NON-NLS-1$
 
+    /**
+     * The Gradle option of continuous build.
+     * @since 0.8.0
+     */
+    public static final String OPTION_CONTINUOUS = "--continuous"; //$NON-NLS-1$
+
     private final GradleContext configuration;
 
     private final List<String> tasks;
 
+    private final IBuildCycleListener cycleListener;
+
+    private boolean publishMetrics = true;
+
+    private volatile BuildMetrics metrics;
+
     /**
      * Creates a new instance.
      * @param configuration the task configuration
      * @param tasks the task names
      */
     public GradleBuildTask(GradleContext configuration, List<String> tasks) {
+        this(configuration, tasks, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * If the cycle listener is specified, this task performs a continuous build,
+     * and it runs until the task is canceled.
+     * @param configuration the task configuration
+     * @param tasks the task names
+     * @param cycleListener the listener which receives each build cycle, or {@code null} for a one-shot build
+     * @since 0.8.0
+     */
+    public GradleBuildTask(GradleContext configuration, List<String> tasks, IBuildCycleListener cycleListener) {
         this.configuration = configuration;
         this.tasks = new ArrayList<>(tasks);
+        this.cycleListener = cycleListener;
+    }
+
+    /**
+     * Sets whether or not this task publishes its build metrics when the build was finished.
+     * If this is disabled, clients must {@link BuildMetrics#publish(GradleContext) publish}
+     * {@link #getMetrics() the metrics} by themselves, so that they can record the subsequent phases
+     * (e.g. {@link Phase#REFRESH}) into the same record.
+     * @param publish {@code true} to publish the metrics, otherwise {@code false}
+     * @return this
+     * @since 0.8.0
+     */
+    public GradleBuildTask withPublishMetrics(boolean publish) {
+        this.publishMetrics = publish;
+        return this;
+    }
+
+    /**
+     * Returns the build metrics of the last run.
+     * @return the build metrics, or {@code null} if this task has not been started
+     * @since 0.8.0
+     */
+    public BuildMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -77,46 +129,71 @@ public class GradleBuildTask implements IRunnable {
     @Override
     public void run(IProgressMonitor monitor) throws GradleException, CoreException {
         SubMonitor sub = SubMonitor.convert(monitor, Messages.GradleBuildTask_monitorRun, 100);
+        BuildMetrics metrics = new BuildMetrics(configuration.projectDirectory, tasks);
+        this.metrics = metrics;
         try {
             try {
+                long mark = System.nanoTime();
                 GradleUtil.enhance(sub.newChild(10, SubMonitor.SUPPRESS_NONE), configuration);
-                ProjectConnection connection = createProjectConnection(sub.newChild(10, SubMonitor.SUPPRESS_NONE));
+                mark = metrics.record(Phase.ENHANCE, mark);
+                Lease lease = createProjectConnection(sub.newChild(10, SubMonitor.SUPPRESS_NONE));
+                metrics.record(Phase.CONNECT, mark);
                 try {
-                    buildProject(sub.newChild(60, SubMonitor.SUPPRESS_NONE), connection);
+                    buildProject(sub.newChild(60, SubMonitor.SUPPRESS_NONE), lease.getConnection(), metrics);
+                    metrics.setSucceeded(true);
                 } finally {
-                    disconnectProject(sub.newChild(10, SubMonitor.SUPPRESS_NONE), connection);
+                    long start = System.nanoTime();
+                    disconnectProject(sub.newChild(10, SubMonitor.SUPPRESS_NONE), lease);
+                    metrics.record(Phase.DISCONNECT, start);
                 }
             } finally {
+                long start = System.nanoTime();
                 GradleUtil.dispose(sub.newChild(10, SubMonitor.SUPPRESS_NONE), configuration);
+                metrics.record(Phase.DISPOSE, start);
             }
         } finally {
+            if (publishMetrics) {
+                metrics.publish(configuration);
+            }
             monitor.done();
         }
     }
 
-    private ProjectConnection createProjectConnection(SubMonitor monitor) {
+    private Lease createProjectConnection(SubMonitor monitor) {
         monitor.beginTask(Messages.GradleBuildTask_monitorConnect, 100);
-        return GradleUtil.createConnector(configuration).connect();
+        return Activator.getConnectionPool().acquire(configuration);
     }
 
-    private void buildProject(SubMonitor monitor, ProjectConnection connection) throws CoreException {
+    private void buildProject(
+            SubMonitor monitor,
+            ProjectConnection connection, BuildMetrics metrics) throws CoreException {
         monitor.beginTask(Messages.GradleBuildTask_monitorBuild, 100);
         try {
             GradleUtil.checkCancel(monitor);
-            BuildEnvironment environment = GradleUtil.getEnvironment(connection);
+            long mark = System.nanoTime();
+            BuildEnvironment environment = GradleUtil.getEnvironment(configuration, connection);
+            mark = metrics.record(Phase.ENVIRONMENT, mark);
             BuildLauncher builder = connection.newBuild();
             builder.forTasks(tasks.toArray(new String[tasks.size()]));
-            OperationHandler<Void> handler = GradleUtil.configureOperation(environment, builder, configuration);
+            List<String> extraArguments = new ArrayList<>();
+            if (cycleListener != null) {
+                builder.addProgressListener(
+                        new BuildCycleTracker(cycleListener),
+                        BuildCycleTracker.OPERATION_TYPES);
+                if (configuration.getGradleArguments().contains(OPTION_CONTINUOUS) == false) {
+                    extraArguments.add(OPTION_CONTINUOUS);
+                }
+            }
+            OperationHandler<Void> handler = GradleUtil.configureOperation(
+                    environment, builder, configuration, EnumSet.of(OperationType.TASK), extraArguments);
             try {
                 builder.run(handler);
-                while (handler.await() == false) {
+                while (handler.await(monitor) == false) {
                     GradleUtil.checkCancel(monitor, handler);
-                    ProgressEvent event = handler.takeProgressEvent();
-                    if (event != null) {
-                        monitor.setTaskName(String.format("[Gradle] %s", event.getDescriptor())); //$NON-NLS-1$
-                    }
-                    monitor.worked(1);
-                    monitor.setWorkRemaining(100);
+                }
+                if (cycleListener != null && monitor.isCanceled()) {
+                    // continuous builds are always finished by cancellation
+                    throw new CoreException(Status.CANCEL_STATUS);
                 }
                 if (handler.hasException()) {
                     GradleUtil.reportException(configuration, handler.getException());
@@ -130,14 +207,15 @@ public class GradleBuildTask implements IRunnable {
                 }
             } finally {
                 handler.close();
+                metrics.record(Phase.BUILD, mark);
             }
         } catch (InterruptedException e) {
             throw new CoreException(Status.CANCEL_STATUS);
         }
     }
 
-    private void disconnectProject(SubMonitor monitor, ProjectConnection connection) {
+    private void disconnectProject(SubMonitor monitor, Lease lease) {
         monitor.beginTask(Messages.GradleBuildTask_monitorDisconnect, 100);
-        connection.close();
+        lease.close();
     }
 }
@@ -0,0 +1,464 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.io.Closeable;
+import java.io.File;
+import java.net.URI;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.model.build.BuildEnvironment;
+import org.gradle.util.GradleVersion;
+
+import com.asakusafw.shafu.internal.core.Activator;
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * A pool of Gradle {@link ProjectConnection}s.
+ * Connections are shared between tasks which have the same project directory, Gradle distribution,
+ * Gradle user home, and Java home.
+ * Idle connections are closed in background after {@link #KEY_IDLE_TIMEOUT the idle timeout}, or are evicted from
+ * the least recently used one if the pool exceeds {@link #KEY_POOL_SIZE its capacity}.
+ * This also caches {@link BuildEnvironment} models per Gradle distribution, Gradle user home, and Java home.
+ * @since 0.8.0
+ */
+public final class GradleConnectionPool implements Closeable {
+
+    /**
+     * The system property key of the idle timeout in milliseconds.
+     * Connections are closed immediately after use if this is {@code 0}.
+     */
+    public static final String KEY_IDLE_TIMEOUT = "com.asakusafw.shafu.core.connection.idleTimeout"; //$NON-NLS-1$
+
+    /**
+     * The system property key of the maximum number of pooled connections.
+     */
+    public static final String KEY_POOL_SIZE = "com.asakusafw.shafu.core.connection.limit"; //$NON-NLS-1$
+
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    static final int DEFAULT_POOL_SIZE = 8;
+
+    private final long idleTimeoutMillis;
+
+    private final int poolSize;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<Key, BuildEnvironment> environments = new HashMap<>();
+
+    private final Job reaper = new Job(Messages.GradleConnectionPool_jobReaper) {
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            reap();
+            return Status.OK_STATUS;
+        }
+    };
+
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance with the default settings.
+     */
+    public GradleConnectionPool() {
+        this(Lazy.IDLE_TIMEOUT_MILLIS, Lazy.POOL_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param idleTimeoutMillis the idle timeout in milliseconds, or {@code 0} to disable pooling
+     * @param poolSize the maximum number of pooled connections
+     */
+    public GradleConnectionPool(long idleTimeoutMillis, int poolSize) {
+        this.idleTimeoutMillis = Math.max(idleTimeoutMillis, 0L);
+        this.poolSize = Math.max(poolSize, 1);
+        reaper.setSystem(true);
+    }
+
+    /**
+     * Returns the shared instance.
+     * @return the shared instance
+     */
+    public static GradleConnectionPool getDefault() {
+        return Activator.getConnectionPool();
+    }
+
+    /**
+     * Acquires a connection for the target context.
+     * The returned lease must be closed after use.
+     * @param context the target context
+     * @return the acquired connection lease
+     * @throws IllegalStateException if this pool is already closed
+     */
+    Lease acquire(GradleContext context) {
+        Key key = new Key(context, true);
+        Entry entry = tryAcquire(key, null);
+        if (entry == null) {
+            // connects outside of the lock, because it may take a while
+            ProjectConnection connection = GradleUtil.createConnector(context).connect();
+            entry = tryAcquire(key, new Entry(key, connection));
+        }
+        return new Lease(entry);
+    }
+
+    private Entry tryAcquire(Key key, Entry created) {
+        List<Entry> evicted = new ArrayList<>();
+        try {
+            synchronized (this) {
+                if (closed) {
+                    if (created != null) {
+                        evicted.add(created);
+                    }
+                    throw new IllegalStateException();
+                }
+                collectExpired(evicted);
+                Entry entry = entries.get(key);
+                if (entry == null) {
+                    if (created == null) {
+                        return null;
+                    }
+                    entry = created;
+                    entries.put(key, entry);
+                    LogUtil.debug("Opened Gradle connection: {0}", key); //$NON-NLS-1$
+                } else {
+                    if (created != null) {
+                        // another thread has already opened a connection for the same key
+                        evicted.add(created);
+                    }
+                    LogUtil.debug("Reusing Gradle connection: {0}", key); //$NON-NLS-1$
+                }
+                entry.references++;
+                collectOverflow(evicted);
+                return entry;
+            }
+        } finally {
+            closeAll(evicted);
+        }
+    }
+
+    /**
+     * Returns the build environment for the target context.
+     * This may return a cached one which was obtained from another project with the same Gradle distribution,
+     * Gradle user home, and Java home.
+     * @param context the target context
+     * @param connection the connection for the target context
+     * @return the build environment
+     */
+    BuildEnvironment getEnvironment(GradleContext context, ProjectConnection connection) {
+        Key key = new Key(context, false);
+        synchronized (environments) {
+            BuildEnvironment cached = environments.get(key);
+            if (cached != null) {
+                LogUtil.debug("Reusing Gradle build environment: {0}", key); //$NON-NLS-1$
+                return cached;
+            }
+        }
+        BuildEnvironment environment = connection.getModel(BuildEnvironment.class);
+        synchronized (environments) {
+            environments.put(key, environment);
+        }
+        return environment;
+    }
+
+    /**
+     * Discards the cached build environments.
+     * This should be invoked when Gradle distributions or their settings may be changed.
+     */
+    public void invalidate() {
+        synchronized (environments) {
+            LogUtil.debug("Invalidating Gradle build environments: {0}", environments.keySet()); //$NON-NLS-1$
+            environments.clear();
+        }
+    }
+
+    void release(Entry entry) {
+        List<Entry> evicted = new ArrayList<>();
+        try {
+            synchronized (this) {
+                assert entry.references > 0;
+                entry.references--;
+                entry.lastUsed = System.nanoTime();
+                if (entry.references == 0 && (closed || idleTimeoutMillis == 0L)) {
+                    if (entries.get(entry.key) == entry) {
+                        entries.remove(entry.key);
+                    }
+                    evicted.add(entry);
+                }
+                collectExpired(evicted);
+                collectOverflow(evicted);
+                if (entry.references == 0 && closed == false && idleTimeoutMillis > 0L) {
+                    scheduleReaper();
+                }
+            }
+        } finally {
+            closeAll(evicted);
+        }
+    }
+
+    private void scheduleReaper() {
+        int state = reaper.getState();
+        if (state != Job.WAITING && state != Job.SLEEPING) {
+            reaper.schedule(idleTimeoutMillis);
+        }
+    }
+
+    /**
+     * Closes the expired idle connections, and schedules the next check if there are more idle connections.
+     */
+    void reap() {
+        List<Entry> evicted = new ArrayList<>();
+        try {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                collectExpired(evicted);
+                long next = Long.MAX_VALUE;
+                for (Entry entry : entries.values()) {
+                    if (entry.references == 0) {
+                        next = Math.min(next, entry.lastUsed);
+                    }
+                }
+                if (next != Long.MAX_VALUE) {
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - next);
+                    reaper.schedule(Math.max(idleTimeoutMillis - elapsed, 0L) + 1L);
+                }
+            }
+        } finally {
+            closeAll(evicted);
+        }
+    }
+
+    private void collectExpired(List<Entry> results) {
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        for (Iterator<Entry> iter = entries.values().iterator(); iter.hasNext();) {
+            Entry entry = iter.next();
+            if (entry.references == 0 && now - entry.lastUsed >= timeout) {
+                iter.remove();
+                results.add(entry);
+            }
+        }
+    }
+
+    private void collectOverflow(List<Entry> results) {
+        // iterates from the least recently used one
+        for (Iterator<Entry> iter = entries.values().iterator(); iter.hasNext();) {
+            if (entries.size() <= poolSize) {
+                break;
+            }
+            Entry entry = iter.next();
+            if (entry.references == 0) {
+                iter.remove();
+                results.add(entry);
+            }
+        }
+    }
+
+    private static void closeAll(List<Entry> evicted) {
+        for (Entry entry : evicted) {
+            LogUtil.debug("Closing Gradle connection: {0}", entry.key); //$NON-NLS-1$
+            try {
+                entry.connection.close();
+            } catch (RuntimeException e) {
+                LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                        Messages.GradleConnectionPool_warnFailedToCloseConnection,
+                        entry.key.projectDirectory), e);
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections in this pool.
+     * Connections in use will be closed after they are released.
+     */
+    @Override
+    public void close() {
+        reaper.cancel();
+        invalidate();
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (Iterator<Entry> iter = entries.values().iterator(); iter.hasNext();) {
+                Entry entry = iter.next();
+                if (entry.references == 0) {
+                    evicted.add(entry);
+                }
+                iter.remove();
+            }
+        }
+        closeAll(evicted);
+    }
+
+    /**
+     * A lease of pooled {@link ProjectConnection}.
+     */
+    final class Lease implements Closeable {
+
+        private final Entry entry;
+
+        private boolean released = false;
+
+        Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Returns the leased connection.
+         * @return the leased connection
+         */
+        ProjectConnection getConnection() {
+            return entry.connection;
+        }
+
+        /**
+         * Returns the connection back to the pool.
+         */
+        @Override
+        public void close() {
+            if (released == false) {
+                released = true;
+                release(entry);
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        final Key key;
+
+        final ProjectConnection connection;
+
+        int references;
+
+        long lastUsed;
+
+        Entry(Key key, ProjectConnection connection) {
+            this.key = key;
+            this.connection = connection;
+            this.lastUsed = System.nanoTime();
+        }
+    }
+
+    private static final class Key {
+
+        final File projectDirectory;
+
+        final URI gradleDistribution;
+
+        final String gradleVersion;
+
+        final boolean useHttps;
+
+        final File gradleUserHomeDir;
+
+        final File javaHomeDir;
+
+        Key(GradleContext context, boolean project) {
+            this.projectDirectory = project ? context.getProjectDirectory().getAbsoluteFile() : null;
+            this.gradleDistribution = context.getGradleDistribution();
+            if (gradleDistribution == null) {
+                String version = context.getGradleVersion();
+                this.gradleVersion = version == null ? GradleVersion.current().getVersion() : version;
+                this.useHttps = context.isUseHttps();
+            } else {
+                this.gradleVersion = null;
+                this.useHttps = false;
+            }
+            this.gradleUserHomeDir = absolute(context.getGradleUserHomeDir());
+            this.javaHomeDir = absolute(context.getJavaHomeDir());
+        }
+
+        private static File absolute(File file) {
+            return file == null ? null : file.getAbsoluteFile();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                    projectDirectory, gradleDistribution, gradleVersion, useHttps,
+                    gradleUserHomeDir, javaHomeDir);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return Objects.equals(projectDirectory, other.projectDirectory)
+                    && Objects.equals(gradleDistribution, other.gradleDistribution)
+                    && Objects.equals(gradleVersion, other.gradleVersion)
+                    && useHttps == other.useHttps
+                    && Objects.equals(gradleUserHomeDir, other.gradleUserHomeDir)
+                    && Objects.equals(javaHomeDir, other.javaHomeDir);
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format(
+                    "{0} (gradle={1}, userHome={2}, javaHome={3})", //$NON-NLS-1$
+                    projectDirectory,
+                    gradleDistribution != null ? gradleDistribution : gradleVersion,
+                    gradleUserHomeDir,
+                    javaHomeDir);
+        }
+    }
+
+    private static final class Lazy {
+
+        static final long IDLE_TIMEOUT_MILLIS = getLong(KEY_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+        static final int POOL_SIZE = (int) getLong(KEY_POOL_SIZE, DEFAULT_POOL_SIZE);
+
+        private static long getLong(String key, long defaultValue) {
+            String value = System.getProperty(key);
+            if (value != null && value.trim().isEmpty() == false) {
+                try {
+                    return Long.parseLong(value.trim());
+                } catch (NumberFormatException e) {
+                    LogUtil.log(IStatus.ERROR,
+                            MessageFormat.format(
+                                    "Invalid connection pool setting: {0}={1}", //$NON-NLS-1$
+                                    key,
+                                    value),
+                            e);
+                }
+            }
+            return defaultValue;
+        }
+
+        private Lazy() {
+            return;
+        }
+    }
+}
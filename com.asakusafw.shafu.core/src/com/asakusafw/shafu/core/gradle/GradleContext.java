@@ -34,7 +34,7 @@ import com.asakusafw.shafu.internal.core.LogUtil;
 /**
  * Represents a Gradle context.
  * @since 0.1.0
- * @version 0.5.2
+ * @version 0.8.0
  */
 public final class GradleContext {
 
@@ -49,6 +49,8 @@ public final class GradleContext {
 
     volatile boolean useHttps;
 
+    volatile boolean downloadSources = true;
+
     volatile URI gradleDistributionOrNull;
 
     volatile File gradleUserHomeDirOrNull;
@@ -225,6 +227,26 @@ public final class GradleContext {
         this.environmentVariables = new LinkedHashMap<>(variables);
     }
 
+    /**
+     * Returns whether the IDE plug-ins of Gradle download source artifacts of the dependencies or not.
+     * @return {@code true} to download source artifacts, otherwise {@code false}
+     * @since 0.8.0
+     */
+    public boolean isDownloadSources() {
+        return downloadSources;
+    }
+
+    /**
+     * Sets whether the IDE plug-ins of Gradle download source artifacts of the dependencies or not.
+     * If this is {@code false}, the Eclipse classpath will be configured with only binary artifacts,
+     * and their source attachments can be resolved later by {@link SourceAttachmentTask}.
+     * @param download {@code true} to download source artifacts, otherwise {@code false}
+     * @since 0.8.0
+     */
+    public void setDownloadSources(boolean download) {
+        this.downloadSources = download;
+    }
+
     /**
      * Sets the gradle distribution URI.
      * @param uri the distribution URI
@@ -296,6 +318,16 @@ public final class GradleContext {
         return this;
     }
 
+    /**
+     * Returns whether or not this context has the information output.
+     * @return {@code true} if it has the information output, otherwise {@code false}
+     * @since 0.8.0
+     * @see #withInformationOutput(PrintWriter)
+     */
+    public boolean hasInformationOutput() {
+        return informationOutputOrNull != null;
+    }
+
     /**
      * Print information message into the current context console.
      * @param message the information message
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.core.runtime.IStatus;
+
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * Builds {@link GradleContext} from preference-equivalent settings.
+ * This does not depend on any workbench services, so that it is also available in headless environments.
+ * @since 0.8.0
+ */
+public final class GradleContextBuilder {
+
+    /**
+     * The default paths of Gradle wrapper configuration files.
+     */
+    public static final List<String> DEFAULT_WRAPPER_CONFIGURATION_PATHS = Collections.unmodifiableList(Arrays.asList(
+            ".buildtools/gradlew.properties", //$NON-NLS-1$
+            "gradle/wrapper/gradle-wrapper.properties")); //$NON-NLS-1$
+
+    private static final String PATH_FLAT_ROOT_PROJECT = "master"; //$NON-NLS-1$
+
+    private static final String PATH_GRADLE_PROJECT_SETTINGS = "settings.gradle"; //$NON-NLS-1$
+
+    private static final String KEY_DISTRIBUTION_URL = "distributionUrl"; //$NON-NLS-1$
+
+    private final List<String> gradleArguments = new ArrayList<>();
+
+    private final List<String> jvmArguments = new ArrayList<>();
+
+    private final Map<String, String> projectProperties = new LinkedHashMap<>();
+
+    private final Map<String, String> systemProperties = new LinkedHashMap<>();
+
+    private final Map<String, String> environmentVariables = new LinkedHashMap<>();
+
+    private File gradleUserHomeDir;
+
+    private File javaHomeDir;
+
+    private String gradleVersion;
+
+    private URI gradleDistribution;
+
+    private boolean useHttps = true;
+
+    private boolean useWrapper = true;
+
+    private List<String> wrapperConfigurationPaths = DEFAULT_WRAPPER_CONFIGURATION_PATHS;
+
+    private boolean downloadSources = true;
+
+    /**
+     * Adds Gradle arguments.
+     * @param arguments the arguments
+     * @return this
+     */
+    public GradleContextBuilder withGradleArguments(List<String> arguments) {
+        this.gradleArguments.addAll(arguments);
+        return this;
+    }
+
+    /**
+     * Adds Gradle arguments.
+     * @param arguments the arguments
+     * @return this
+     */
+    public GradleContextBuilder withGradleArguments(String... arguments) {
+        return withGradleArguments(Arrays.asList(arguments));
+    }
+
+    /**
+     * Adds Java VM arguments for Gradle daemons.
+     * @param arguments the arguments
+     * @return this
+     */
+    public GradleContextBuilder withJvmArguments(List<String> arguments) {
+        this.jvmArguments.addAll(arguments);
+        return this;
+    }
+
+    /**
+     * Adds Gradle project properties.
+     * @param properties the properties
+     * @return this
+     */
+    public GradleContextBuilder withProjectProperties(Map<String, String> properties) {
+        this.projectProperties.putAll(properties);
+        return this;
+    }
+
+    /**
+     * Adds system properties for Gradle daemons.
+     * @param properties the properties
+     * @return this
+     */
+    public GradleContextBuilder withSystemProperties(Map<String, String> properties) {
+        this.systemProperties.putAll(properties);
+        return this;
+    }
+
+    /**
+     * Adds environment variables for Gradle builds.
+     * @param variables the environment variables
+     * @return this
+     */
+    public GradleContextBuilder withEnvironmentVariables(Map<String, String> variables) {
+        this.environmentVariables.putAll(variables);
+        return this;
+    }
+
+    /**
+     * Sets the Gradle user home directory.
+     * @param directory the directory, or {@code null} to use the default one
+     * @return this
+     */
+    public GradleContextBuilder withGradleUserHome(File directory) {
+        this.gradleUserHomeDir = directory;
+        return this;
+    }
+
+    /**
+     * Sets the Java home directory for Gradle daemons.
+     * @param directory the directory, or {@code null} to use the default one
+     * @return this
+     */
+    public GradleContextBuilder withJavaHome(File directory) {
+        this.javaHomeDir = directory;
+        return this;
+    }
+
+    /**
+     * Sets the Gradle version.
+     * This will be used only if neither the Gradle distribution nor wrapper configuration is available.
+     * @param version the version, or {@code null} to use the default one
+     * @return this
+     */
+    public GradleContextBuilder withGradleVersion(String version) {
+        this.gradleVersion = version;
+        return this;
+    }
+
+    /**
+     * Sets the Gradle distribution URI.
+     * @param uri the distribution URI, or {@code null} to use the wrapper configuration or Gradle version
+     * @return this
+     */
+    public GradleContextBuilder withGradleDistribution(URI uri) {
+        this.gradleDistribution = uri;
+        return this;
+    }
+
+    /**
+     * Sets whether the Tooling API uses HTTPS on downloading Gradle distributions or not.
+     * @param use {@code true} to use HTTPS, otherwise {@code false}
+     * @return this
+     */
+    public GradleContextBuilder withUseHttps(boolean use) {
+        this.useHttps = use;
+        return this;
+    }
+
+    /**
+     * Sets whether or not the Gradle distribution is detected from the wrapper configuration files.
+     * @param use {@code true} to detect it, otherwise {@code false}
+     * @param paths the relative paths of the wrapper configuration files from the project directory
+     * @return this
+     */
+    public GradleContextBuilder withWrapperConfiguration(boolean use, List<String> paths) {
+        this.useWrapper = use;
+        this.wrapperConfigurationPaths = new ArrayList<>(paths);
+        return this;
+    }
+
+    /**
+     * Sets whether the IDE plug-ins of Gradle download source artifacts or not.
+     * @param download {@code true} to download source artifacts, otherwise {@code false}
+     * @return this
+     * @see GradleContext#setDownloadSources(boolean)
+     */
+    public GradleContextBuilder withDownloadSources(boolean download) {
+        this.downloadSources = download;
+        return this;
+    }
+
+    /**
+     * Creates a new {@link GradleContext} for the target project.
+     * @param projectDirectory the target project directory
+     * @return the created context
+     */
+    public GradleContext build(File projectDirectory) {
+        GradleContext context = new GradleContext(projectDirectory);
+        for (Map.Entry<String, String> entry : projectProperties.entrySet()) {
+            context.withGradleArguments(String.format("-P%s=%s", entry.getKey(), entry.getValue())); //$NON-NLS-1$
+        }
+        context.withGradleArguments(gradleArguments);
+        for (Map.Entry<String, String> entry : systemProperties.entrySet()) {
+            context.withJvmArguments(String.format("-D%s=%s", entry.getKey(), entry.getValue())); //$NON-NLS-1$
+        }
+        context.withJvmArguments(jvmArguments);
+        context.withEnvironmentVariables(environmentVariables);
+
+        context.setGradleUserHomeDir(gradleUserHomeDir);
+        context.setJavaHomeDir(javaHomeDir);
+        context.setGradleVersion(gradleVersion);
+        context.setUseHttps(useHttps);
+        context.setDownloadSources(downloadSources);
+        if (gradleDistribution != null) {
+            context.setGradleDistribution(gradleDistribution);
+        } else if (useWrapper) {
+            context.setGradleDistribution(findGradleDistributionFromWrapper(projectDirectory));
+        } else {
+            context.setGradleDistribution(null);
+        }
+        return context;
+    }
+
+    private URI findGradleDistributionFromWrapper(File projectDirectory) {
+        URI candidate = findGradleDistributionFromWrapper0(projectDirectory);
+        if (candidate != null) {
+            return candidate;
+        }
+        File rootProjectDirectory = findRootProjectDirectory(projectDirectory);
+        if (rootProjectDirectory != null && rootProjectDirectory.equals(projectDirectory) == false) {
+            return findGradleDistributionFromWrapper0(rootProjectDirectory);
+        }
+        return null;
+    }
+
+    private URI findGradleDistributionFromWrapper0(File baseDirectory) {
+        for (String path : wrapperConfigurationPaths) {
+            String p = path.trim();
+            if (p.isEmpty()) {
+                continue;
+            }
+            File confFile = new File(baseDirectory, p);
+            if (confFile.isFile() == false || confFile.canRead() == false) {
+                continue;
+            }
+            Properties properties = new Properties();
+            try (InputStream input = new FileInputStream(confFile)) {
+                properties.load(input);
+            } catch (IOException e) {
+                LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                        "Invalid Gradle wrapper configuration file: {0}", //$NON-NLS-1$
+                        confFile), e);
+                return null;
+            }
+            URI uri = toUri(properties.getProperty(KEY_DISTRIBUTION_URL));
+            if (uri == null) {
+                continue;
+            }
+            LogUtil.debug("found wrapper: {0} (->{1})", confFile, uri); //$NON-NLS-1$
+            return uri;
+        }
+        return null;
+    }
+
+    private static URI toUri(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return new URI(value);
+        } catch (URISyntaxException e) {
+            LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                    "Invalid URI: {0}", //$NON-NLS-1$
+                    value), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the root project directory of the Gradle build which contains the target project.
+     * @param projectDirectory the target project directory
+     * @return the root project directory, or the target project directory if it is not a part of multi-project
+     */
+    public static File findRootProjectDirectory(File projectDirectory) {
+        if (hasSettingsFile(projectDirectory)) {
+            LogUtil.debug("found settings.gradle: {0}", projectDirectory); //$NON-NLS-1$
+            return projectDirectory;
+        }
+
+        // https://docs.gradle.org/4.4/userguide/build_lifecycle.html#sec:initialization
+        File parentDirectory = projectDirectory.getParentFile();
+        // It looks in a directory called 'master' which has the same nesting level as the current dir.
+        if (parentDirectory != null && parentDirectory.isDirectory()) {
+            File masterDirectory = new File(parentDirectory, PATH_FLAT_ROOT_PROJECT);
+            if (hasSettingsFile(masterDirectory)) {
+                LogUtil.debug("found master: {0}", masterDirectory); //$NON-NLS-1$
+                return masterDirectory;
+            }
+        }
+
+        // If not found yet, it searches parent directories.
+        for (File dir = parentDirectory; dir != null && dir.isDirectory(); dir = dir.getParentFile()) {
+            if (hasSettingsFile(dir)) {
+                LogUtil.debug("found root project: {0}", dir); //$NON-NLS-1$
+                return dir;
+            }
+        }
+
+        // If not found yet, the build is executed as a single project build.
+        LogUtil.debug("settings.gradle is not found: {0}", projectDirectory); //$NON-NLS-1$
+        return projectDirectory;
+    }
+
+    private static boolean hasSettingsFile(File directory) {
+        return directory.isDirectory() && new File(directory, PATH_GRADLE_PROJECT_SETTINGS).isFile();
+    }
+}
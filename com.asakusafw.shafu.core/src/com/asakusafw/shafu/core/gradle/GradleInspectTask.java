@@ -16,17 +16,22 @@
 package com.asakusafw.shafu.core.gradle;
 
 import java.text.MessageFormat;
+import java.util.EnumSet;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
+import org.gradle.tooling.BuildAction;
+import org.gradle.tooling.BuildActionExecuter;
+import org.gradle.tooling.LongRunningOperation;
 import org.gradle.tooling.ModelBuilder;
 import org.gradle.tooling.ProjectConnection;
-import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.OperationType;
 import org.gradle.tooling.model.build.BuildEnvironment;
 
+import com.asakusafw.shafu.core.gradle.GradleConnectionPool.Lease;
 import com.asakusafw.shafu.core.gradle.GradleUtil.OperationHandler;
 import com.asakusafw.shafu.core.util.ICallable;
 import com.asakusafw.shafu.internal.core.Activator;
@@ -35,6 +40,7 @@ import com.asakusafw.shafu.internal.core.Activator;
  * Launches Gradle and inspect the target project.
  * @param <T> the model type
  * @see GradleException
+ * @version 0.8.0
  */
 public class GradleInspectTask<T> implements ICallable<T> {
 
@@ -42,6 +48,8 @@ public class GradleInspectTask<T> implements ICallable<T> {
 
     private final Class<T> modelClass;
 
+    private final BuildAction<T> action;
+
     /**
      * Creates a new instance.
      * @param configuration the task configuration
@@ -50,6 +58,20 @@ public class GradleInspectTask<T> implements ICallable<T> {
     public GradleInspectTask(GradleContext configuration, Class<T> modelClass) {
         this.configuration = configuration;
         this.modelClass = modelClass;
+        this.action = null;
+    }
+
+    /**
+     * Creates a new instance, which runs the action inside the Gradle build.
+     * @param configuration the task configuration
+     * @param action the build action
+     * @see GradleModelsAction
+     * @since 0.8.0
+     */
+    public GradleInspectTask(GradleContext configuration, BuildAction<T> action) {
+        this.configuration = configuration;
+        this.modelClass = null;
+        this.action = action;
     }
 
     /**
@@ -63,6 +85,19 @@ public class GradleInspectTask<T> implements ICallable<T> {
         return new GradleInspectTask<>(configuration, modelClass);
     }
 
+    /**
+     * Creates a new instance, which runs the action inside the Gradle build.
+     * @param configuration the task configuration
+     * @param action the build action
+     * @param <T> the action result type
+     * @return the created instance
+     * @see GradleModelsAction
+     * @since 0.8.0
+     */
+    public static <T> GradleInspectTask<T> newInstance(GradleContext configuration, BuildAction<T> action) {
+        return new GradleInspectTask<>(configuration, action);
+    }
+
     /**
      * Performs this task.
      * @throws GradleException if and only if the build was failed
@@ -73,11 +108,11 @@ public class GradleInspectTask<T> implements ICallable<T> {
         try {
             try {
                 GradleUtil.enhance(sub.newChild(10, SubMonitor.SUPPRESS_NONE), configuration);
-                ProjectConnection connection = createProjectConnection(sub.newChild(10, SubMonitor.SUPPRESS_NONE));
+                Lease lease = createProjectConnection(sub.newChild(10, SubMonitor.SUPPRESS_NONE));
                 try {
-                    return inspectProject(sub.newChild(60, SubMonitor.SUPPRESS_NONE), connection);
+                    return inspectProject(sub.newChild(60, SubMonitor.SUPPRESS_NONE), lease.getConnection());
                 } finally {
-                    disconnectProject(sub.newChild(10, SubMonitor.SUPPRESS_NONE), connection);
+                    disconnectProject(sub.newChild(10, SubMonitor.SUPPRESS_NONE), lease);
                 }
             } finally {
                 GradleUtil.dispose(sub.newChild(10, SubMonitor.SUPPRESS_NONE), configuration);
@@ -87,28 +122,29 @@ public class GradleInspectTask<T> implements ICallable<T> {
         }
     }
 
-    private ProjectConnection createProjectConnection(SubMonitor monitor) {
+    private Lease createProjectConnection(SubMonitor monitor) {
         monitor.beginTask(Messages.GradleInspectTask_monitorConnect, 100);
-        return GradleUtil.createConnector(configuration).connect();
+        return Activator.getConnectionPool().acquire(configuration);
     }
 
     private T inspectProject(SubMonitor monitor, ProjectConnection connection) throws CoreException {
         monitor.beginTask(Messages.GradleInspectTask_monitorInspect, 100);
         try {
             GradleUtil.checkCancel(monitor);
-            BuildEnvironment environment = GradleUtil.getEnvironment(connection);
-            ModelBuilder<T> builder = connection.model(modelClass);
-            OperationHandler<T> handler = GradleUtil.configureOperation(environment, builder, configuration);
+            BuildEnvironment environment = GradleUtil.getEnvironment(configuration, connection);
+            ModelBuilder<T> builder = action == null ? connection.model(modelClass) : null;
+            BuildActionExecuter<T> executer = action == null ? null : connection.action(action);
+            LongRunningOperation operation = builder != null ? builder : executer;
+            OperationHandler<T> handler = GradleUtil.configureOperation(
+                    environment, operation, configuration, EnumSet.of(OperationType.GENERIC));
             try {
-                builder.get(handler);
-                while (handler.await() == false) {
+                if (builder != null) {
+                    builder.get(handler);
+                } else {
+                    executer.run(handler);
+                }
+                while (handler.await(monitor) == false) {
                     GradleUtil.checkCancel(monitor, handler);
-                    ProgressEvent event = handler.takeProgressEvent();
-                    if (event != null) {
-                        monitor.setTaskName(String.format("[Gradle] %s", event.getDescriptor())); //$NON-NLS-1$
-                    }
-                    monitor.worked(1);
-                    monitor.setWorkRemaining(100);
                 }
                 if (handler.hasException()) {
                     GradleUtil.reportException(configuration, handler.getException());
@@ -131,8 +167,8 @@ public class GradleInspectTask<T> implements ICallable<T> {
         }
     }
 
-    private void disconnectProject(SubMonitor monitor, ProjectConnection connection) {
+    private void disconnectProject(SubMonitor monitor, Lease lease) {
         monitor.beginTask(Messages.GradleInspectTask_monitorDisconnect, 100);
-        connection.close();
+        lease.close();
     }
 }
@@ -0,0 +1,383 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.eclipse.core.runtime.IStatus;
+
+import com.asakusafw.shafu.internal.core.Activator;
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * A persistent cache of Gradle models.
+ * Each entry is stored with a fingerprint of the build scripts and the Gradle settings in the context,
+ * and it is available only if the fingerprint is not changed.
+ * The fingerprint consists of the Gradle settings and the Java home in the context,
+ * all Gradle scripts ({@code *.gradle} and {@code *.gradle.kts}), {@code gradle.properties}
+ * (including the one in the Gradle user home), and the whole contents of {@code buildSrc} and {@code gradle/wrapper}.
+ * The project tree is not scanned under the output, source, and VCS directories except {@code buildSrc}.
+ *
+ * <p>
+ * Note that the Gradle tooling API models cannot be restored without the originating Gradle connection,
+ * so that clients should convert them into their own {@link Serializable} objects before caching.
+ * Such objects are restored by the class loader of the requested type.
+ * </p>
+ * @since 0.8.0
+ */
+public final class GradleModelCache {
+
+    private static final String EXTENSION_ENTRY = ".bin"; //$NON-NLS-1$
+
+    private static final Charset ENCODING = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private static final Set<String> FINGERPRINT_FILE_NAMES = new HashSet<>(Arrays.asList(new String[] {
+            "gradle.properties", //$NON-NLS-1$
+            "gradle-wrapper.properties", //$NON-NLS-1$
+            "gradlew.properties", //$NON-NLS-1$
+    }));
+
+    private static final List<String> FINGERPRINT_FILE_EXTENSIONS = Arrays.asList(new String[] {
+            ".gradle", //$NON-NLS-1$
+            ".gradle.kts", //$NON-NLS-1$
+    });
+
+    private static final String PATH_BUILD_SRC = "buildSrc"; //$NON-NLS-1$
+
+    private static final List<String> FINGERPRINT_TREE_PATHS = Arrays.asList(new String[] {
+            PATH_BUILD_SRC,
+            "gradle/wrapper", //$NON-NLS-1$
+    });
+
+    private static final Set<String> SETTINGS_FILE_NAMES = new HashSet<>(Arrays.asList(new String[] {
+            "settings.gradle", //$NON-NLS-1$
+            "settings.gradle.kts", //$NON-NLS-1$
+            "gradle.properties", //$NON-NLS-1$
+    }));
+
+    private static final Set<String> EXCLUDE_DIRECTORY_NAMES = new HashSet<>(Arrays.asList(new String[] {
+            "build", //$NON-NLS-1$
+            "bin", //$NON-NLS-1$
+            "out", //$NON-NLS-1$
+            "target", //$NON-NLS-1$
+            "src", //$NON-NLS-1$
+            "node_modules", //$NON-NLS-1$
+            "CVS", //$NON-NLS-1$
+    }));
+
+    private static final Set<String> INCLUDE_HIDDEN_DIRECTORY_NAMES = new HashSet<>(Arrays.asList(new String[] {
+            ".buildtools", //$NON-NLS-1$
+    }));
+
+    private final File directory;
+
+    /**
+     * Creates a new instance.
+     * @param directory the cache directory, or {@code null} to disable caching
+     */
+    public GradleModelCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the shared instance.
+     * @return the shared instance
+     */
+    public static GradleModelCache getDefault() {
+        return Activator.getModelCache();
+    }
+
+    /**
+     * Returns the cached model.
+     * @param context the target context
+     * @param id the model ID
+     * @param type the model type
+     * @param <T> the model type
+     * @return the cached model, or {@code null} if it is not cached or is already out of date
+     */
+    public <T extends Serializable> T find(GradleContext context, String id, Class<T> type) {
+        File file = getEntryFile(context, id);
+        if (file == null || file.isFile() == false) {
+            return null;
+        }
+        try {
+            String fingerprint = computeFingerprint(context);
+            try (ObjectInputStream input = new ModelInputStream(
+                    new BufferedInputStream(new FileInputStream(file)), type.getClassLoader())) {
+                String stored = input.readUTF();
+                if (stored.equals(fingerprint) == false) {
+                    LogUtil.debug("Gradle model cache is out of date: {0} ({1})", //$NON-NLS-1$
+                            context.getProjectDirectory(), id);
+                    return null;
+                }
+                Object value = input.readObject();
+                LogUtil.debug("Gradle model cache hit: {0} ({1})", //$NON-NLS-1$
+                        context.getProjectDirectory(), id);
+                return type.isInstance(value) ? type.cast(value) : null;
+            }
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                    Messages.GradleModelCache_warnFailedToLoadEntry,
+                    file), e);
+            return null;
+        }
+    }
+
+    /**
+     * Puts a model into this cache.
+     * @param context the target context
+     * @param id the model ID
+     * @param model the model to cache
+     */
+    public void put(GradleContext context, String id, Serializable model) {
+        File file = getEntryFile(context, id);
+        if (file == null) {
+            return;
+        }
+        File temporary = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+        try {
+            String fingerprint = computeFingerprint(context);
+            if (file.getParentFile().mkdirs() == false && file.getParentFile().isDirectory() == false) {
+                throw new IOException(file.getParentFile().getPath());
+            }
+            try (ObjectOutputStream output = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                output.writeUTF(fingerprint);
+                output.writeObject(model);
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                    Messages.GradleModelCache_warnFailedToStoreEntry,
+                    file), e);
+            if (temporary.delete() == false && temporary.exists()) {
+                LogUtil.debug("Failed to delete a temporary file: {0}", temporary); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * Removes the cached model.
+     * @param context the target context
+     * @param id the model ID
+     */
+    public void remove(GradleContext context, String id) {
+        File file = getEntryFile(context, id);
+        if (file != null && file.delete() == false && file.exists()) {
+            LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                    Messages.GradleModelCache_warnFailedToDeleteEntry,
+                    file));
+        }
+    }
+
+    private File getEntryFile(GradleContext context, String id) {
+        if (directory == null) {
+            return null;
+        }
+        String key = id + '\0' + context.getProjectDirectory().getAbsolutePath();
+        return new File(directory, DigestUtils.sha1Hex(key.getBytes(ENCODING)) + EXTENSION_ENTRY);
+    }
+
+    private static String computeFingerprint(GradleContext context) throws IOException {
+        MessageDigest digest = DigestUtils.getSha1Digest();
+        update(digest, String.valueOf(context.getGradleDistribution()));
+        update(digest, String.valueOf(context.getGradleVersion()));
+        update(digest, String.valueOf(context.getGradleArguments()));
+        update(digest, String.valueOf(context.getJvmArguments()));
+        update(digest, String.valueOf(new TreeMap<>(context.getEnvironmentVariables())));
+        update(digest, String.valueOf(getJavaHomeDir(context)));
+        File base = context.getProjectDirectory().getAbsoluteFile();
+        List<File> files = new ArrayList<>();
+        for (File current = base.getParentFile(); current != null; current = current.getParentFile()) {
+            // settings may be placed in the ancestors
+            collectSettings(current, files);
+        }
+        File userProperties = new File(getGradleUserHomeDir(context), "gradle.properties"); //$NON-NLS-1$
+        if (userProperties.isFile()) {
+            files.add(userProperties);
+        }
+        collectBuildScripts(base, files);
+        List<File> trees = new ArrayList<>();
+        for (String path : FINGERPRINT_TREE_PATHS) {
+            collectTree(new File(base, path), trees);
+        }
+        Collections.sort(files);
+        for (File file : files) {
+            update(digest, file.getPath());
+            update(digest, Files.readAllBytes(file.toPath()));
+        }
+        // only uses the file attributes, because these trees may contain large (or binary) files
+        Collections.sort(trees);
+        for (File file : trees) {
+            update(digest, file.getPath());
+            update(digest, String.valueOf(file.length()));
+            update(digest, String.valueOf(file.lastModified()));
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static File getJavaHomeDir(GradleContext context) {
+        File javaHome = context.getJavaHomeDir();
+        if (javaHome != null) {
+            return javaHome.getAbsoluteFile();
+        }
+        return new File(System.getProperty("java.home")).getAbsoluteFile(); //$NON-NLS-1$
+    }
+
+    private static File getGradleUserHomeDir(GradleContext context) {
+        File userHome = context.getGradleUserHomeDir();
+        if (userHome != null) {
+            return userHome;
+        }
+        String env = System.getenv("GRADLE_USER_HOME"); //$NON-NLS-1$
+        if (env != null && env.isEmpty() == false) {
+            return new File(env);
+        }
+        return new File(System.getProperty("user.home"), ".gradle"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static void collectSettings(File current, List<File> results) {
+        for (String name : SETTINGS_FILE_NAMES) {
+            File file = new File(current, name);
+            if (file.isFile()) {
+                results.add(file);
+            }
+        }
+        File master = new File(current, "master"); //$NON-NLS-1$
+        File settings = new File(master, "settings.gradle"); //$NON-NLS-1$
+        if (settings.isFile()) {
+            results.add(settings);
+        }
+    }
+
+    private static void collectBuildScripts(File current, List<File> results) {
+        File[] members = current.listFiles();
+        if (members == null) {
+            return;
+        }
+        for (File member : members) {
+            String name = member.getName();
+            if (member.isDirectory()) {
+                if (isExcluded(name) || name.equals(PATH_BUILD_SRC)) {
+                    continue;
+                }
+                if (Files.isSymbolicLink(member.toPath()) == false) {
+                    collectBuildScripts(member, results);
+                }
+            } else if (isFingerprintFile(name)) {
+                results.add(member);
+            }
+        }
+    }
+
+    private static void collectTree(File current, List<File> results) {
+        File[] members = current.listFiles();
+        if (members == null) {
+            return;
+        }
+        for (File member : members) {
+            if (member.isDirectory()) {
+                // buildSrc has its own output directories, but its sources must be included
+                String name = member.getName();
+                if (name.equals("build") || (name.startsWith(".") && name.equals(".buildtools") == false)) { //$NON-NLS-1$ //$NON-NLS-2$
+                    continue;
+                }
+                if (Files.isSymbolicLink(member.toPath()) == false) {
+                    collectTree(member, results);
+                }
+            } else {
+                results.add(member);
+            }
+        }
+    }
+
+    private static boolean isExcluded(String directoryName) {
+        if (EXCLUDE_DIRECTORY_NAMES.contains(directoryName)) {
+            return true;
+        }
+        // also excludes VCS directories (e.g. .git) and Gradle working directories (e.g. .gradle)
+        return directoryName.startsWith(".") //$NON-NLS-1$
+                && INCLUDE_HIDDEN_DIRECTORY_NAMES.contains(directoryName) == false;
+    }
+
+    private static boolean isFingerprintFile(String fileName) {
+        if (FINGERPRINT_FILE_NAMES.contains(fileName)) {
+            return true;
+        }
+        for (String extension : FINGERPRINT_FILE_EXTENSIONS) {
+            if (fileName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        update(digest, value.getBytes(ENCODING));
+    }
+
+    private static void update(MessageDigest digest, byte[] value) {
+        digest.update(String.valueOf(value.length).getBytes(ENCODING));
+        digest.update((byte) 0);
+        digest.update(value);
+    }
+
+    private static final class ModelInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        ModelInputStream(InputStream input, ClassLoader classLoader) throws IOException {
+            super(input);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    // fall through
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of Gradle models which were obtained in a single build.
+ * @see GradleModelsAction
+ * @since 0.8.0
+ */
+public final class GradleModels implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Object> buildModels = new HashMap<>();
+
+    private final Map<String, Map<String, Object>> projectModels = new HashMap<>();
+
+    GradleModels() {
+        return;
+    }
+
+    void putBuildModel(Class<?> modelType, Object model) {
+        buildModels.put(modelType.getName(), model);
+    }
+
+    void putProjectModel(Class<?> modelType, String projectPath, Object model) {
+        Map<String, Object> models = projectModels.get(modelType.getName());
+        if (models == null) {
+            models = new LinkedHashMap<>();
+            projectModels.put(modelType.getName(), models);
+        }
+        models.put(projectPath, model);
+    }
+
+    /**
+     * Returns the model of the whole build.
+     * @param modelType the model type
+     * @param <T> the model type
+     * @return the model, or {@code null} if it is not obtained
+     */
+    public <T> T getBuildModel(Class<T> modelType) {
+        return modelType.cast(buildModels.get(modelType.getName()));
+    }
+
+    /**
+     * Returns the models of the individual projects.
+     * @param modelType the model type
+     * @param <T> the model type
+     * @return the models (project path -&gt; model), or an empty map if they are not obtained
+     */
+    public <T> Map<String, T> getProjectModels(Class<T> modelType) {
+        Map<String, Object> models = projectModels.get(modelType.getName());
+        if (models == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, T> results = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : models.entrySet()) {
+            results.put(entry.getKey(), modelType.cast(entry.getValue()));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gradle.tooling.BuildAction;
+import org.gradle.tooling.BuildController;
+import org.gradle.tooling.model.gradle.BasicGradleProject;
+import org.gradle.tooling.model.gradle.GradleBuild;
+
+/**
+ * A {@link BuildAction} which obtains several Gradle models in a single build.
+ * This action runs inside the Gradle daemon, so that the build is configured only once for all models.
+<pre><code>
+GradleModels models = GradleInspectTask.newInstance(context, new GradleModelsAction()
+        .withBuildModel(EclipseProject.class)
+        .withProjectModel(GradleProject.class)).call(monitor);
+</code></pre>
+ * @see GradleInspectTask#newInstance(GradleContext, BuildAction)
+ * @since 0.8.0
+ */
+public class GradleModelsAction implements BuildAction<GradleModels> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Class<?>> buildModelTypes = new ArrayList<>();
+
+    private final List<Class<?>> projectModelTypes = new ArrayList<>();
+
+    /**
+     * Adds a model type of the whole build (obtained from the root project).
+     * @param modelType the model type
+     * @return this
+     */
+    public GradleModelsAction withBuildModel(Class<?> modelType) {
+        buildModelTypes.add(modelType);
+        return this;
+    }
+
+    /**
+     * Adds a model type of the individual projects.
+     * Projects which do not support the model are just ignored.
+     * @param modelType the model type
+     * @return this
+     */
+    public GradleModelsAction withProjectModel(Class<?> modelType) {
+        projectModelTypes.add(modelType);
+        return this;
+    }
+
+    @Override
+    public GradleModels execute(BuildController controller) {
+        GradleModels results = new GradleModels();
+        for (Class<?> modelType : buildModelTypes) {
+            results.putBuildModel(modelType, controller.getModel(modelType));
+        }
+        if (projectModelTypes.isEmpty() == false) {
+            GradleBuild build = controller.getBuildModel();
+            for (BasicGradleProject project : build.getProjects()) {
+                for (Class<?> modelType : projectModelTypes) {
+                    Object model = controller.findModel(project, modelType);
+                    if (model != null) {
+                        results.putProjectModel(modelType, project.getPath(), model);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.gradle.tooling.UnsupportedVersionException;
+import org.gradle.tooling.model.GradleProject;
+import org.gradle.tooling.model.UnsupportedMethodException;
+
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * Mapping between Gradle project paths and their project directories, obtained from the Gradle model.
+ * Project paths cannot be inferred from directory names, because build scripts may relocate or rename projects
+ * (e.g. {@code project(':x').projectDir = ...} in {@code settings.gradle}).
+ * @since 0.8.0
+ */
+public final class GradleProjectLayout implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The model ID of project layouts in {@link GradleModelCache}.
+     */
+    public static final String CACHE_ID = GradleProjectLayout.class.getName();
+
+    private final Map<String, File> directories;
+
+    private final Map<File, String> paths;
+
+    private GradleProjectLayout(Map<String, File> directories) {
+        this.directories = Collections.unmodifiableMap(new LinkedHashMap<>(directories));
+        Map<File, String> reverse = new HashMap<>();
+        for (Map.Entry<String, File> entry : directories.entrySet()) {
+            reverse.put(entry.getValue(), entry.getKey());
+        }
+        this.paths = Collections.unmodifiableMap(reverse);
+    }
+
+    /**
+     * Creates a new instance from the Gradle project model.
+     * @param model the Gradle project model of any project in the build
+     * @return the created instance, or {@code null} if the Gradle version does not provide project directories
+     */
+    public static GradleProjectLayout of(GradleProject model) {
+        GradleProject root = model;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Map<String, File> directories = new LinkedHashMap<>();
+        LinkedList<GradleProject> work = new LinkedList<>();
+        work.add(root);
+        try {
+            while (work.isEmpty() == false) {
+                GradleProject next = work.removeFirst();
+                directories.put(next.getPath(), next.getProjectDirectory().getAbsoluteFile());
+                work.addAll(next.getChildren());
+            }
+        } catch (UnsupportedMethodException e) {
+            LogUtil.debug("Gradle project directories are not available: {0}", e); //$NON-NLS-1$
+            return null;
+        }
+        return new GradleProjectLayout(directories);
+    }
+
+    /**
+     * Returns the cached layout of the Gradle build.
+     * This never launches Gradle.
+     * @param context the context of the root project
+     * @return the cached layout, or {@code null} if it is not cached or is already out of date
+     */
+    public static GradleProjectLayout find(GradleContext context) {
+        return GradleModelCache.getDefault().find(context, CACHE_ID, GradleProjectLayout.class);
+    }
+
+    /**
+     * Returns the layout of the Gradle build.
+     * This returns the cached one if it is available, or inspects the build and then caches the result.
+     * @param monitor the progress monitor
+     * @param context the context of the root project
+     * @return the layout, or {@code null} if it is not available
+     * @throws CoreException if the operation was canceled
+     */
+    public static GradleProjectLayout load(IProgressMonitor monitor, GradleContext context) throws CoreException {
+        GradleProjectLayout cached = find(context);
+        if (cached != null) {
+            return cached;
+        }
+        GradleProject model;
+        try {
+            model = GradleInspectTask.newInstance(context, GradleProject.class).call(monitor);
+        } catch (GradleException | UnsupportedVersionException e) {
+            LogUtil.debug("Failed to inspect Gradle project layout: {0} ({1})", //$NON-NLS-1$
+                    context.getProjectDirectory(), e);
+            return null;
+        }
+        GradleProjectLayout result = of(model);
+        if (result != null) {
+            put(context, result);
+        }
+        return result;
+    }
+
+    /**
+     * Puts the layout into the model cache.
+     * @param context the context of the root project
+     * @param layout the layout
+     */
+    public static void put(GradleContext context, GradleProjectLayout layout) {
+        GradleModelCache.getDefault().put(context, CACHE_ID, layout);
+    }
+
+    /**
+     * Returns the root project directory.
+     * @return the root project directory
+     */
+    public File getRootProjectDirectory() {
+        return directories.values().iterator().next();
+    }
+
+    /**
+     * Returns the project path of the project directory.
+     * @param projectDirectory the project directory
+     * @return the project path ({@code ":"} for the root project), or {@code null} if it is not a Gradle project
+     *     in this build
+     */
+    public String getProjectPath(File projectDirectory) {
+        return paths.get(projectDirectory.getAbsoluteFile());
+    }
+
+    /**
+     * Returns the project directory of the project path.
+     * @param projectPath the project path
+     * @return the project directory, or {@code null} if there is no such a project in this build
+     */
+    public File getProjectDirectory(String projectPath) {
+        return directories.get(projectPath);
+    }
+
+    @Override
+    public String toString() {
+        return directories.toString();
+    }
+}
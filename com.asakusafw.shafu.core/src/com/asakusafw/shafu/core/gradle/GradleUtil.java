@@ -27,11 +27,12 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.concurrent.CountDownLatch;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -52,8 +53,11 @@ import org.gradle.tooling.GradleConnector;
 import org.gradle.tooling.LongRunningOperation;
 import org.gradle.tooling.ProjectConnection;
 import org.gradle.tooling.ResultHandler;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationType;
 import org.gradle.tooling.events.ProgressEvent;
 import org.gradle.tooling.events.ProgressListener;
+import org.gradle.tooling.events.StartEvent;
 import org.gradle.tooling.model.build.BuildEnvironment;
 import org.gradle.tooling.model.build.GradleEnvironment;
 import org.gradle.util.DistributionLocator;
@@ -80,8 +84,12 @@ final class GradleUtil {
 
     private static final String KEY_CANCEL_FILE = "com.asakusafw.shafu.core.cancelFile"; //$NON-NLS-1$
 
+    private static final String KEY_DOWNLOAD_SOURCES = "com.asakusafw.shafu.core.downloadSources"; //$NON-NLS-1$
+
     static final long DEFAULT_SOFT_CANCELLATION_TIMEOUT_MILLIS = 3000L;
 
+    static final long DEFAULT_FALLBACK_CANCELLATION_TIMEOUT_MILLIS = 5000L;
+
     private static final GradleVersion MIN_ENVIRONMENT_VARIABLES_VERSION = GradleVersion.version("3.5"); //$NON-NLS-1$
 
     private GradleUtil() {
@@ -235,6 +243,21 @@ final class GradleUtil {
         return connection.getModel(BuildEnvironment.class);
     }
 
+    /**
+     * Returns the build environment only if it is required to configure operations for the context.
+     * @param context the target context
+     * @param connection the connection
+     * @return the current environment, or {@code null} if it is not required
+     * @see #configureOperation(BuildEnvironment, LongRunningOperation, GradleContext)
+     * @since 0.8.0
+     */
+    public static BuildEnvironment getEnvironment(GradleContext context, ProjectConnection connection) {
+        if (context.environmentVariables.isEmpty()) {
+            return null;
+        }
+        return GradleConnectionPool.getDefault().getEnvironment(context, connection);
+    }
+
     /**
      * Configures the operation and creates an {@link OperationHandler} for it.
      * @param operation the target operation
@@ -263,6 +286,52 @@ final class GradleUtil {
             BuildEnvironment environment,
             LongRunningOperation operation,
             GradleContext context) {
+        return configureOperation(environment, operation, context, EnumSet.allOf(OperationType.class));
+    }
+
+    /**
+     * Configures the operation and creates an {@link OperationHandler} for it.
+     * @param operation the target operation
+     * @param context the target context
+     * @param <T> the operation result type
+     * @param environment the current environment
+     * @param progressTypes the operation types to track their progress
+     * @return the created handler
+     * @since 0.8.0
+     */
+    public static <T> OperationHandler<T> configureOperation(
+            BuildEnvironment environment,
+            LongRunningOperation operation,
+            GradleContext context,
+            Set<OperationType> progressTypes) {
+        return configureOperation(environment, operation, context, progressTypes, Collections.<String>emptyList());
+    }
+
+    /**
+     * Configures the operation and creates an {@link OperationHandler} for it.
+     * <p>
+     * The {@code user.dir} and the system properties of the context are passed to the build as {@code -D}
+     * Gradle arguments, instead of being installed into the system properties of this JVM, so that concurrent
+     * operations never observe each other's values.
+     * Build scripts still see them via {@code System.getProperty()}, but they now also appear in
+     * {@code gradle.startParameter.systemPropertiesArgs}, and take precedence over {@code systemProp.*} entries in
+     * {@code gradle.properties} as same as other command line properties.
+     * </p>
+     * @param operation the target operation
+     * @param context the target context
+     * @param <T> the operation result type
+     * @param environment the current environment
+     * @param progressTypes the operation types to track their progress
+     * @param extraArguments the extra Gradle arguments only for this operation
+     * @return the created handler
+     * @since 0.8.0
+     */
+    public static <T> OperationHandler<T> configureOperation(
+            BuildEnvironment environment,
+            LongRunningOperation operation,
+            GradleContext context,
+            Set<OperationType> progressTypes,
+            List<String> extraArguments) {
         if (context.getJavaHomeDir() != null) {
             operation.setJavaHome(context.getJavaHomeDir().getAbsoluteFile());
         }
@@ -285,31 +354,23 @@ final class GradleUtil {
                         MIN_ENVIRONMENT_VARIABLES_VERSION.getVersion()));
             }
         }
-        Properties properties = AccessController.doPrivileged(new PrivilegedAction<Properties>() {
-            @Override
-            public Properties run() {
-                return System.getProperties();
-            }
-        });
-
-        File cancelFile = prepareCancelFile(context);
+        // NOTE: never modify the global system properties here, because multiple operations may run concurrently
+        List<String> arguments = new ArrayList<>();
+        File cancelFile = prepareCancelFile(arguments);
         boolean succeed = false;
         try {
+            arguments.add(toSystemPropertyArgument("user.dir", context.getProjectDirectory().getAbsolutePath())); //$NON-NLS-1$
+            if (context.isDownloadSources() == false) {
+                arguments.add(toSystemPropertyArgument(KEY_DOWNLOAD_SOURCES, String.valueOf(false)));
+            }
+            for (Map.Entry<String, String> entry : extractSystemProperties(context).entrySet()) {
+                arguments.add(toSystemPropertyArgument(entry.getKey(), entry.getValue()));
+            }
+            arguments.addAll(context.getGradleArguments());
+            arguments.addAll(extraArguments);
             operation.setJvmArguments(toArray(context.getJvmArguments()));
-            operation.withArguments(toArray(context.getGradleArguments()));
-            final Properties newProperties = copyProperties(properties);
-            newProperties.put("user.dir", context.getProjectDirectory().getAbsolutePath()); //$NON-NLS-1$
-            newProperties.putAll(extractSystemProperties(context));
-            OperationHandler<T> results = new OperationHandler<>(operation, properties, cancelFile);
-
-            // install modified properties
-            AccessController.doPrivileged(new PrivilegedAction<Void>() {
-                @Override
-                public Void run() {
-                    System.setProperties(newProperties);
-                    return null;
-                }
-            });
+            operation.withArguments(toArray(arguments));
+            OperationHandler<T> results = new OperationHandler<>(context, operation, progressTypes, cancelFile);
             succeed = true;
             return results;
         } finally {
@@ -387,31 +448,8 @@ final class GradleUtil {
         return exception;
     }
 
-    private static Properties copyProperties(Properties properties) {
-        Properties newProperties = new Properties();
-        for (Map.Entry<?, ?> entry : properties.entrySet()) {
-            if (checkPropertyEntry(entry)) {
-                newProperties.put(entry.getKey(), entry.getValue());
-            }
-        }
-        return newProperties;
-    }
-
-    private static boolean checkPropertyEntry(Map.Entry<?, ?> entry) {
-        Object key = entry.getKey();
-        Object value = entry.getValue();
-        if (key instanceof String && (value == null || value instanceof String)) {
-            return true;
-        }
-        LogUtil.debug("Invalid System property: {0}={1} ({2})", //$NON-NLS-1$
-                key,
-                value,
-                value == null ? "null" : value.getClass().getName()); //$NON-NLS-1$
-        return false;
-    }
-
-    private static Properties extractSystemProperties(GradleContext context) {
-        Properties properties = new Properties();
+    private static Map<String, String> extractSystemProperties(GradleContext context) {
+        Map<String, String> properties = new LinkedHashMap<>();
         for (String argument : context.getJvmArguments()) {
             if (argument.startsWith(SYSTEM_PROPERTY_PREFIX) == false) {
                 continue;
@@ -426,17 +464,20 @@ final class GradleUtil {
                 key = argument.substring(SYSTEM_PROPERTY_PREFIX.length());
                 value = ""; //$NON-NLS-1$
             }
-            properties.setProperty(key, value);
+            properties.put(key, value);
         }
         return properties;
     }
 
+    private static String toSystemPropertyArgument(String key, String value) {
+        return SYSTEM_PROPERTY_PREFIX + key + SYSTEM_PROPERTY_FIELD_SEPARATOR + value;
+    }
+
     private static String[] toArray(List<String> list) {
         return list.toArray(new String[list.size()]);
     }
 
-    private static File prepareCancelFile(GradleContext context) {
-        List<String> newArguments = new ArrayList<>();
+    private static File prepareCancelFile(List<String> newArguments) {
         try {
             IPath scriptPath = resolveBuiltinPath(Activator.getDefault().getBundle(), SCRIPT_PATH);
             newArguments.add("--init-script"); //$NON-NLS-1$
@@ -444,10 +485,7 @@ final class GradleUtil {
 
             // pass -D... into Gradle args (not JVM args)
             File cancelFile = File.createTempFile("gradle", ".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
-            newArguments.add(String.format("-D%s=%s", KEY_CANCEL_FILE, cancelFile.getAbsolutePath())); //$NON-NLS-1$
-
-            newArguments.addAll(context.getGradleArguments());
-            context.setGradleArguments(newArguments);
+            newArguments.add(toSystemPropertyArgument(KEY_CANCEL_FILE, cancelFile.getAbsolutePath()));
             return cancelFile;
         } catch (IOException e) {
             LogUtil.log(IStatus.WARNING, Messages.GradleUtil_errorFailedToCreateCancelMarker);
@@ -505,58 +543,172 @@ final class GradleUtil {
 
     /**
      * Handles Gradle operations.
+     * Progress events are pushed from Gradle and reflected into the waiting {@link IProgressMonitor},
+     * which are coalesced at most every {@link #PROGRESS_INTERVAL_MILLIS}.
      * @param <T> the operation result type
+     * @version 0.8.0
      */
     public static class OperationHandler<T> implements ResultHandler<T>, Closeable {
 
-        private final CountDownLatch latch = new CountDownLatch(1);
+        static final long PROGRESS_INTERVAL_MILLIS = 100L;
 
-        final AtomicReference<ProgressEvent> eventRef = new AtomicReference<>();
+        static final long CANCEL_CHECK_INTERVAL_MILLIS = 250L;
+
+        private final Object lock = new Object();
+
+        private boolean done = false;
+
+        private boolean dirty = false;
+
+        private String pendingStatus;
+
+        private int pendingWork;
+
+        private long nextProgress = System.nanoTime();
 
         private final AtomicReference<T> resultRef = new AtomicReference<>();
 
         private final AtomicReference<GradleConnectionException> exceptionRef =
                 new AtomicReference<>();
 
-        private final CancellationTokenSource cancellator;
+        private final GradleContext context;
 
-        final Properties systemProperties;
+        private final CancellationTokenSource cancellator;
 
         private final File cancelFile;
 
         /**
          * Creates a new instance.
+         * @param context the current context
          * @param operation the target operation
-         * @param systemProperties the original system properties
+         * @param progressTypes the operation types to track their progress
          * @param cancelFile cancel marker file
          */
         public OperationHandler(
+                GradleContext context,
                 LongRunningOperation operation,
-                Properties systemProperties,
+                Set<OperationType> progressTypes,
                 File cancelFile) {
+            this.context = context;
             this.cancellator = GradleConnector.newCancellationTokenSource();
-            operation.addProgressListener(new ProgressListener() {
-                @Override
-                public void statusChanged(ProgressEvent event) {
-                    eventRef.set(event);
-                }
-            });
+            if (progressTypes.isEmpty() == false) {
+                operation.addProgressListener(new ProgressListener() {
+                    @Override
+                    public void statusChanged(ProgressEvent event) {
+                        onProgress(event);
+                    }
+                }, progressTypes);
+            }
             operation.withCancellationToken(cancellator.token());
-            this.systemProperties = systemProperties;
             this.cancelFile = cancelFile;
         }
 
-        public boolean await() throws InterruptedException {
-            return latch.await(100, TimeUnit.MILLISECONDS);
+        void onProgress(ProgressEvent event) {
+            synchronized (lock) {
+                if (event instanceof StartEvent) {
+                    pendingStatus = event.getDescriptor().getDisplayName();
+                } else if (event instanceof FinishEvent) {
+                    pendingWork++;
+                } else {
+                    return;
+                }
+                if (dirty == false) {
+                    dirty = true;
+                    lock.notifyAll();
+                }
+            }
         }
 
-        public boolean cancel() throws InterruptedException {
-            cancellator.cancel();
-            return latch.await(DEFAULT_SOFT_CANCELLATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        /**
+         * Waits for the operation is finished, and reflects its progress into the given monitor.
+         * This returns {@code false} if the operation is still running, and then the caller should check
+         * whether the operation was canceled or not before waiting again.
+         * @param monitor the target monitor
+         * @return {@code true} if the operation was finished, otherwise {@code false}
+         * @throws InterruptedException if interrupted while waiting for the operation
+         */
+        public boolean await(IProgressMonitor monitor) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CANCEL_CHECK_INTERVAL_MILLIS);
+            String status;
+            int work;
+            synchronized (lock) {
+                while (true) {
+                    if (done) {
+                        return true;
+                    }
+                    long now = System.nanoTime();
+                    if (dirty && now - nextProgress >= 0) {
+                        break;
+                    }
+                    long until = dirty && nextProgress - deadline < 0 ? nextProgress : deadline;
+                    long waitMillis = TimeUnit.NANOSECONDS.toMillis(until - now);
+                    if (until - now <= 0) {
+                        return false;
+                    }
+                    lock.wait(Math.max(waitMillis, 1L));
+                }
+                status = pendingStatus;
+                work = pendingWork;
+                pendingStatus = null;
+                pendingWork = 0;
+                dirty = false;
+            }
+            nextProgress = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MILLIS);
+            if (status != null) {
+                monitor.setTaskName(String.format("[Gradle] %s", status)); //$NON-NLS-1$
+            }
+            if (work > 0) {
+                monitor.worked(work);
+                monitor.setWorkRemaining(100);
+            }
+            return false;
+        }
+
+        private boolean awaitDone(long timeoutMillis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            synchronized (lock) {
+                while (done == false) {
+                    long rest = deadline - System.nanoTime();
+                    if (rest <= 0) {
+                        return false;
+                    }
+                    lock.wait(Math.max(TimeUnit.NANOSECONDS.toMillis(rest), 1L));
+                }
+                return true;
+            }
+        }
+
+        private void setDone() {
+            synchronized (lock) {
+                done = true;
+                lock.notifyAll();
+            }
         }
 
-        public ProgressEvent takeProgressEvent() {
-            return eventRef.getAndSet(null);
+        /**
+         * Requests to cancel the operation, and waits for it is finished.
+         * This first tries to cancel via Tooling API, and then requests the running build to stop by itself
+         * via the cancel marker file only if the operation is still running.
+         * Neither of them terminates the Gradle daemon process.
+         * @return {@code true} if the operation was finished, otherwise {@code false}
+         * @throws InterruptedException if interrupted while waiting for the operation
+         */
+        public boolean cancel() throws InterruptedException {
+            long start = System.nanoTime();
+            cancellator.cancel();
+            boolean finished = awaitDone(DEFAULT_SOFT_CANCELLATION_TIMEOUT_MILLIS);
+            if (finished == false && cancelFile != null && cancelFile.exists()) {
+                LogUtil.debug("Requesting to cancel Gradle build via marker file: {0}", cancelFile); //$NON-NLS-1$
+                IoUtils.deleteQuietly(cancelFile);
+                finished = awaitDone(DEFAULT_FALLBACK_CANCELLATION_TIMEOUT_MILLIS);
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (finished) {
+                context.information(MessageFormat.format(Messages.GradleUtil_infoCancelCompleted, elapsed));
+            } else {
+                context.information(MessageFormat.format(Messages.GradleUtil_infoCancelTimeout, elapsed));
+            }
+            return finished;
         }
 
         public T getResult() {
@@ -574,13 +726,13 @@ final class GradleUtil {
         @Override
         public void onComplete(T result) {
             resultRef.set(result);
-            latch.countDown();
+            setDone();
         }
 
         @Override
         public void onFailure(GradleConnectionException exception) {
             exceptionRef.set(exception);
-            latch.countDown();
+            setDone();
         }
 
         /**
@@ -588,23 +740,13 @@ final class GradleUtil {
          */
         @Override
         public void close() {
-            try {
-                AccessController.doPrivileged(new PrivilegedAction<Void>() {
-                    @Override
-                    public Void run() {
-                        System.setProperties(systemProperties);
-                        return null;
-                    }
-                });
-            } finally {
-                if (cancelFile != null && cancelFile.exists()) {
-                    try {
-                        IoUtils.delete(cancelFile);
-                    } catch (IOException e) {
-                        LogUtil.log(IStatus.WARNING, MessageFormat.format(
-                                Messages.GradleUtil_errorFailedToDeleteCancelMarker,
-                                cancelFile));
-                    }
+            if (cancelFile != null && cancelFile.exists()) {
+                try {
+                    IoUtils.delete(cancelFile);
+                } catch (IOException e) {
+                    LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                            Messages.GradleUtil_errorFailedToDeleteCancelMarker,
+                            cancelFile));
                 }
             }
         }
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.util.Set;
+
+/**
+ * Receives build cycles of continuous builds.
+ * @see GradleBuildTask#GradleBuildTask(GradleContext, java.util.List, IBuildCycleListener)
+ * @since 0.8.0
+ */
+public interface IBuildCycleListener {
+
+    /**
+     * Invoked when each build cycle was started, before its tasks are executed.
+     * This will be invoked on the thread which receives Gradle progress events,
+     * so that implementations should return as soon as possible.
+     */
+    void cycleStarted();
+
+    /**
+     * Invoked when each build cycle was finished.
+     * This will be invoked on the thread which receives Gradle progress events,
+     * so that implementations should not perform any long running operations directly.
+     * @param executedTaskPaths the paths of tasks which were actually executed (not up-to-date) in the cycle
+     */
+    void cycleFinished(Set<String> executedTaskPaths);
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+/**
+ * Receives {@link BuildMetrics} of Gradle builds.
+ * Clients can contribute implementations via {@code com.asakusafw.shafu.core.buildMetrics} extension point.
+ * @since 0.8.0
+ */
+public interface IBuildMetricsListener {
+
+    /**
+     * Invoked when the metrics of an operation were recorded.
+     * This may be invoked from any threads, and must not block for a long time.
+     * @param context the context of the target operation
+     * @param metrics the recorded metrics
+     */
+    void metricsRecorded(GradleContext context, BuildMetrics metrics);
+}
@@ -19,13 +19,23 @@ import org.eclipse.osgi.util.NLS;
 
 final class Messages extends NLS {
     private static final String BUNDLE_NAME = "com.asakusafw.shafu.core.gradle.messages"; //$NON-NLS-1$
+    public static String BuildMetrics_warnFailedToPublish;
+    public static String EclipseSyncTask_errorMissingProject;
+    public static String EclipseSyncTask_monitorSync;
     public static String GradleBuildTask_errorFailedToBuildProject;
     public static String GradleBuildTask_monitorBuild;
     public static String GradleBuildTask_monitorConnect;
     public static String GradleBuildTask_monitorDisconnect;
     public static String GradleBuildTask_monitorRun;
+    public static String GradleConnectionPool_jobReaper;
+    public static String GradleConnectionPool_warnFailedToCloseConnection;
+    public static String GradleModelCache_warnFailedToDeleteEntry;
+    public static String GradleModelCache_warnFailedToLoadEntry;
+    public static String GradleModelCache_warnFailedToStoreEntry;
     public static String GradleUtil_errorFailedToCreateCancelMarker;
     public static String GradleUtil_errorFailedToDeleteCancelMarker;
+    public static String GradleUtil_infoCancelCompleted;
+    public static String GradleUtil_infoCancelTimeout;
     public static String GradleUtil_infoCustomEnvironmentVariablesDisabled;
     public static String GradleUtil_infoPrepareDaemon;
     public static String GradleUtil_infoReportException;
@@ -39,6 +49,9 @@ final class Messages extends NLS {
     public static String GradleInspectTask_monitorInspect;
     public static String GradleInspectTask_monitorRun;
     public static String RefreshTask_monitor;
+    public static String SourceAttachmentTask_errorFailedToCreateOutput;
+    public static String SourceAttachmentTask_errorFailedToLoadOutput;
+    public static String SourceAttachmentTask_monitorResolve;
     static {
         // initialize resource bundle
         NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -15,29 +15,58 @@
  */
 package com.asakusafw.shafu.core.gradle;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.SubProgressMonitor;
 
 import com.asakusafw.shafu.core.util.IRunnable;
+import com.asakusafw.shafu.internal.core.LogUtil;
 
 /**
  * Refreshes the resources.
+ * If output paths are specified, this only refreshes directories which were actually changed
+ * after {@link #newSnapshotTask() the snapshot} was taken.
+ * @version 0.8.0
  */
 public class RefreshTask implements IRunnable {
 
+    /**
+     * The default relative paths of output and generated source directories.
+     * @since 0.8.0
+     */
+    public static final List<String> DEFAULT_OUTPUT_PATHS = Collections.unmodifiableList(Arrays.asList(
+            "build", //$NON-NLS-1$
+            "bin", //$NON-NLS-1$
+            ".settings", //$NON-NLS-1$
+            ".apt_generated")); //$NON-NLS-1$
+
     private final List<IResource> targets;
 
+    private final List<String> outputPaths;
+
+    private final Map<IResource, ResourceSnapshot> snapshots = new HashMap<>();
+
+    private int scannedCount;
+
     /**
      * Creates a new instance.
      * @param targets the target resources
      */
     public RefreshTask(List<IResource> targets) {
         this.targets = targets;
+        this.outputPaths = null;
     }
 
     /**
@@ -46,6 +75,85 @@ public class RefreshTask implements IRunnable {
      */
     public RefreshTask(IResource... targets) {
         this.targets = Arrays.asList(targets);
+        this.outputPaths = null;
+    }
+
+    /**
+     * Creates a new instance, which refreshes only the changed directories.
+     * Changes are detected in the direct members of the each target container,
+     * and in the whole trees of the output directories.
+     * The other folders are refreshed entirely only if their modification stamps were changed,
+     * so that changes deep inside them may be missed.
+     * Targets without any snapshots are always refreshed entirely.
+     * @param targets the target resources
+     * @param outputPaths the relative paths of output directories from the each target container
+     * @see #newSnapshotTask()
+     * @since 0.8.0
+     */
+    public RefreshTask(List<IResource> targets, List<String> outputPaths) {
+        this.targets = targets;
+        this.outputPaths = new ArrayList<>(outputPaths);
+    }
+
+    /**
+     * Returns a task which takes snapshots of the target resources.
+     * It must be performed before the resources are modified.
+     * @return the snapshot task
+     * @since 0.8.0
+     */
+    public IRunnable newSnapshotTask() {
+        return new IRunnable() {
+            @Override
+            public void run(IProgressMonitor monitor) {
+                if (outputPaths == null) {
+                    return;
+                }
+                synchronized (snapshots) {
+                    snapshots.clear();
+                    for (IResource resource : targets) {
+                        File directory = getDirectory(resource);
+                        if (directory != null) {
+                            snapshots.put(resource, ResourceSnapshot.take(directory, outputPaths));
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a task which refreshes only the given resources, using the snapshots taken by this task.
+     * The snapshots of the given resources are moved to the returned task.
+     * Resources without any snapshots are refreshed entirely.
+     * @param resources the resources to refresh
+     * @return the created task
+     * @since 0.8.0
+     */
+    public RefreshTask subset(List<IResource> resources) {
+        if (outputPaths == null) {
+            return new RefreshTask(resources);
+        }
+        RefreshTask result = new RefreshTask(resources, outputPaths);
+        synchronized (snapshots) {
+            for (IResource resource : resources) {
+                ResourceSnapshot snapshot = snapshots.remove(resource);
+                if (snapshot != null) {
+                    result.snapshots.put(resource, snapshot);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of file system entries which were scanned in the last incremental refresh.
+     * @return the number of scanned entries
+     * @since 0.8.0
+     */
+    public int getScannedCount() {
+        synchronized (snapshots) {
+            return scannedCount;
+        }
     }
 
     @Override
@@ -55,11 +163,79 @@ public class RefreshTask implements IRunnable {
         }
         monitor.beginTask(Messages.RefreshTask_monitor, targets.size());
         try {
-            for (IResource resource : targets) {
-                resource.refreshLocal(IResource.DEPTH_INFINITE, new SubProgressMonitor(monitor, 1));
+            synchronized (snapshots) {
+                scannedCount = 0;
+                for (IResource resource : targets) {
+                    ResourceSnapshot before = snapshots.remove(resource);
+                    if (before == null) {
+                        resource.refreshLocal(IResource.DEPTH_INFINITE, new SubProgressMonitor(monitor, 1));
+                    } else {
+                        refreshIncremental(
+                                new SubProgressMonitor(monitor, 1),
+                                (IContainer) resource, before);
+                    }
+                }
             }
         } finally {
             monitor.done();
         }
     }
+
+    private void refreshIncremental(
+            IProgressMonitor monitor,
+            IContainer container, ResourceSnapshot before) throws CoreException {
+        File base = getDirectory(container);
+        if (base == null) {
+            container.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+            return;
+        }
+        ResourceSnapshot after = ResourceSnapshot.take(base, outputPaths);
+        scannedCount += before.getScannedCount() + after.getScannedCount();
+        List<File> created = new ArrayList<>();
+        List<File> modified = new ArrayList<>();
+        List<File> touched = new ArrayList<>();
+        after.diff(before, created, modified, touched);
+        LogUtil.debug("Incremental refresh: {0} (scanned={1}, created={2}, modified={3}, touched={4})", //$NON-NLS-1$
+                container.getFullPath(),
+                before.getScannedCount() + after.getScannedCount(),
+                created.size(),
+                modified.size(),
+                touched.size());
+        monitor.beginTask(Messages.RefreshTask_monitor, created.size() + modified.size() + touched.size());
+        try {
+            created.addAll(touched);
+            for (File directory : created) {
+                IContainer target = toContainer(container, base, directory);
+                if (target != null) {
+                    target.refreshLocal(IResource.DEPTH_INFINITE, new SubProgressMonitor(monitor, 1));
+                }
+            }
+            for (File directory : modified) {
+                IContainer target = toContainer(container, base, directory);
+                if (target != null) {
+                    target.refreshLocal(IResource.DEPTH_ONE, new SubProgressMonitor(monitor, 1));
+                }
+            }
+        } finally {
+            monitor.done();
+        }
+    }
+
+    private static File getDirectory(IResource resource) {
+        if ((resource instanceof IContainer) == false || resource.getLocation() == null) {
+            return null;
+        }
+        return resource.getLocation().toFile().getAbsoluteFile();
+    }
+
+    private static IContainer toContainer(IContainer container, File base, File directory) {
+        IPath path = Path.fromOSString(directory.getPath()).makeRelativeTo(Path.fromOSString(base.getPath()));
+        if (path.isEmpty()) {
+            return container;
+        }
+        if (path.segmentCount() > 0 && path.segment(0).equals("..")) { //$NON-NLS-1$
+            return null;
+        }
+        return container.getFolder(path);
+    }
 }
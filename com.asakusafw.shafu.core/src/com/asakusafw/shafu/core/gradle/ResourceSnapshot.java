@@ -0,0 +1,153 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of modification stamps of directories on the local file system.
+ * Each directory is recorded as a digest of its direct members, so that this can detect which directories
+ * were actually changed.
+ * @since 0.8.0
+ */
+final class ResourceSnapshot {
+
+    private final Map<File, Long> digests;
+
+    private final Map<File, Long> folders;
+
+    private final int scanned;
+
+    private ResourceSnapshot(Map<File, Long> digests, Map<File, Long> folders, int scanned) {
+        this.digests = digests;
+        this.folders = folders;
+        this.scanned = scanned;
+    }
+
+    /**
+     * Takes a snapshot of the target base directory.
+     * This only records direct members of the base directory, and the whole trees of the output directories.
+     * For the other folders in the base directory, this only records their modification stamps.
+     * @param baseDirectory the base directory
+     * @param outputPaths the relative paths of output directories from the base directory
+     * @return the created snapshot
+     */
+    static ResourceSnapshot take(File baseDirectory, List<String> outputPaths) {
+        Collector collector = new Collector();
+        collector.visit(baseDirectory, false);
+        for (String path : outputPaths) {
+            String p = path.trim();
+            if (p.isEmpty()) {
+                continue;
+            }
+            collector.visit(new File(baseDirectory, p), true);
+        }
+        Map<File, Long> folders = new HashMap<>();
+        File[] members = baseDirectory.listFiles();
+        if (members != null) {
+            for (File member : members) {
+                if (member.isDirectory() && collector.digests.containsKey(member) == false) {
+                    folders.put(member, member.lastModified());
+                }
+            }
+        }
+        return new ResourceSnapshot(collector.digests, folders, collector.scanned);
+    }
+
+    /**
+     * Returns the number of scanned entries.
+     * @return the number of scanned entries
+     */
+    int getScannedCount() {
+        return scanned;
+    }
+
+    /**
+     * Returns the directories which were changed from the previous snapshot.
+     * @param previous the previous snapshot
+     * @param created the sink of the created directories, which are not in the previous snapshot
+     * @param modified the sink of the modified directories, which members were changed
+     * @param touched the sink of the folders out of the output directories, which stamps were changed
+     *     (their whole trees should be refreshed because only their stamps were recorded)
+     */
+    void diff(ResourceSnapshot previous, List<File> created, List<File> modified, List<File> touched) {
+        for (Map.Entry<File, Long> entry : digests.entrySet()) {
+            File directory = entry.getKey();
+            Long last = previous.digests.get(directory);
+            if (last == null) {
+                // the creation is also visible from the parent, we only mark the top-most one
+                if (previous.digests.containsKey(directory.getParentFile())
+                        || digests.containsKey(directory.getParentFile()) == false) {
+                    created.add(directory);
+                }
+            } else if (last.equals(entry.getValue()) == false) {
+                modified.add(directory);
+            }
+        }
+        for (Map.Entry<File, Long> entry : folders.entrySet()) {
+            Long last = previous.folders.get(entry.getKey());
+            if (last != null && last.equals(entry.getValue()) == false) {
+                touched.add(entry.getKey());
+            }
+        }
+    }
+
+    private static final class Collector {
+
+        final Map<File, Long> digests = new HashMap<>();
+
+        int scanned;
+
+        Collector() {
+            return;
+        }
+
+        void visit(File directory, boolean recursive) {
+            if (digests.containsKey(directory) || directory.isDirectory() == false) {
+                return;
+            }
+            File[] members = directory.listFiles();
+            if (members == null) {
+                return;
+            }
+            Arrays.sort(members);
+            List<File> children = new ArrayList<>();
+            long digest = 1;
+            for (File member : members) {
+                scanned++;
+                digest = digest * 31 + member.getName().hashCode();
+                if (member.isDirectory()) {
+                    if (recursive && Files.isSymbolicLink(member.toPath()) == false) {
+                        children.add(member);
+                    }
+                } else {
+                    digest = digest * 31 + member.lastModified();
+                    digest = digest * 31 + member.length();
+                }
+            }
+            digests.put(directory, digest);
+            for (File child : children) {
+                visit(child, true);
+            }
+        }
+    }
+}
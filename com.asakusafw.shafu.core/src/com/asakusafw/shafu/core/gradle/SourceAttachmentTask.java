@@ -0,0 +1,229 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.gradle;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import com.asakusafw.shafu.core.util.IRunnable;
+import com.asakusafw.shafu.core.util.IoUtils;
+import com.asakusafw.shafu.core.util.StatusUtils;
+import com.asakusafw.shafu.internal.core.Activator;
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * Resolves source attachments of the library classpath entries.
+ * This runs {@link #TASK_RESOLVE_SOURCES} in the target Gradle build, and then attaches the resolved
+ * source artifacts only to the library entries which do not have any source attachments yet.
+ * @since 0.8.0
+ * @see GradleContext#setDownloadSources(boolean)
+ */
+public class SourceAttachmentTask implements IRunnable {
+
+    /**
+     * The task name of resolving source artifacts.
+     */
+    public static final String TASK_RESOLVE_SOURCES = "shafuResolveSources"; //$NON-NLS-1$
+
+    private static final String KEY_SOURCES_OUTPUT = "com.asakusafw.shafu.core.sourcesOutput"; //$NON-NLS-1$
+
+    private static final Charset ENCODING = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private static final char FIELD_SEPARATOR = '\t';
+
+    private static final String ARCHIVE_EXTENSION = "jar"; //$NON-NLS-1$
+
+    private final GradleContext context;
+
+    private final List<IJavaProject> projects;
+
+    private final List<String> taskNames;
+
+    private int attachedCount;
+
+    /**
+     * Creates a new instance.
+     * @param context the context of the Gradle build which contains the target projects;
+     *     it will be modified by this task
+     * @param projects the target projects
+     */
+    public SourceAttachmentTask(GradleContext context, List<IJavaProject> projects) {
+        this(context, projects, Collections.singletonList(TASK_RESOLVE_SOURCES));
+    }
+
+    /**
+     * Creates a new instance.
+     * @param context the context of the Gradle build which contains the target projects;
+     *     it will be modified by this task
+     * @param projects the target projects
+     * @param taskNames the {@link #TASK_RESOLVE_SOURCES} task names,
+     *     which may be qualified by the project paths (e.g. {@code :a:shafuResolveSources})
+     */
+    public SourceAttachmentTask(GradleContext context, List<IJavaProject> projects, List<String> taskNames) {
+        this.context = context;
+        this.projects = new ArrayList<>(projects);
+        this.taskNames = new ArrayList<>(taskNames);
+    }
+
+    /**
+     * Returns whether or not the target project has library entries without any source attachments.
+     * @param project the target project
+     * @return {@code true} if the project has such entries, otherwise {@code false}
+     * @throws JavaModelException if failed to obtain the project classpath
+     */
+    public static boolean hasMissingSources(IJavaProject project) throws JavaModelException {
+        for (IClasspathEntry entry : project.getRawClasspath()) {
+            if (isMissingSource(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of attached source artifacts in the last run.
+     * @return the number of attached source artifacts
+     */
+    public int getAttachedCount() {
+        return attachedCount;
+    }
+
+    @Override
+    public void run(IProgressMonitor monitor) throws CoreException {
+        SubMonitor sub = SubMonitor.convert(monitor, Messages.SourceAttachmentTask_monitorResolve, 100);
+        attachedCount = 0;
+        File output = createOutputFile();
+        try {
+            context.withGradleArguments(String.format("-D%s=%s", //$NON-NLS-1$
+                    KEY_SOURCES_OUTPUT,
+                    output.getAbsolutePath()));
+            new GradleBuildTask(context, taskNames).run(sub.newChild(80));
+            Map<IPath, IPath> sources = load(output);
+            LogUtil.debug("Resolved source artifacts: {0} ({1} entries)", //$NON-NLS-1$
+                    context.getProjectDirectory(),
+                    sources.size());
+            SubMonitor attach = sub.newChild(20).setWorkRemaining(projects.size());
+            for (IJavaProject project : projects) {
+                StatusUtils.checkCanceled(attach);
+                attachedCount += attach(attach.newChild(1), project, sources);
+            }
+        } finally {
+            IoUtils.deleteQuietly(output);
+            monitor.done();
+        }
+    }
+
+    private static File createOutputFile() throws CoreException {
+        try {
+            return File.createTempFile("sources", ".txt"); //$NON-NLS-1$ //$NON-NLS-2$
+        } catch (IOException e) {
+            throw new CoreException(new Status(
+                    IStatus.ERROR,
+                    Activator.PLUGIN_ID,
+                    Messages.SourceAttachmentTask_errorFailedToCreateOutput,
+                    e));
+        }
+    }
+
+    private static Map<IPath, IPath> load(File file) throws CoreException {
+        Map<IPath, IPath> results = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING))) {
+            while (true) {
+                String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                int index = line.indexOf(FIELD_SEPARATOR);
+                if (index <= 0) {
+                    continue;
+                }
+                results.put(
+                        Path.fromOSString(line.substring(0, index)),
+                        Path.fromOSString(line.substring(index + 1)));
+            }
+        } catch (IOException e) {
+            throw new CoreException(new Status(
+                    IStatus.ERROR,
+                    Activator.PLUGIN_ID,
+                    MessageFormat.format(
+                            Messages.SourceAttachmentTask_errorFailedToLoadOutput,
+                            file),
+                    e));
+        }
+        return results;
+    }
+
+    private static int attach(SubMonitor monitor, IJavaProject project, Map<IPath, IPath> sources) throws CoreException {
+        if (project.exists() == false) {
+            return 0;
+        }
+        IClasspathEntry[] entries = project.getRawClasspath();
+        int count = 0;
+        for (int i = 0; i < entries.length; i++) {
+            IClasspathEntry entry = entries[i];
+            if (isMissingSource(entry) == false) {
+                continue;
+            }
+            IPath source = sources.get(entry.getPath());
+            if (source == null) {
+                continue;
+            }
+            entries[i] = JavaCore.newLibraryEntry(
+                    entry.getPath(),
+                    source,
+                    null,
+                    entry.getAccessRules(),
+                    entry.getExtraAttributes(),
+                    entry.isExported());
+            count++;
+        }
+        if (count > 0) {
+            LogUtil.debug("Attaching source artifacts: {0} ({1} entries)", //$NON-NLS-1$
+                    project.getElementName(),
+                    count);
+            project.setRawClasspath(entries, monitor);
+        }
+        return count;
+    }
+
+    private static boolean isMissingSource(IClasspathEntry entry) {
+        return entry.getEntryKind() == IClasspathEntry.CPE_LIBRARY
+                && entry.getSourceAttachmentPath() == null
+                && ARCHIVE_EXTENSION.equalsIgnoreCase(entry.getPath().getFileExtension());
+    }
+}
@@ -0,0 +1,657 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+import org.eclipse.core.runtime.IStatus;
+
+import com.asakusafw.shafu.internal.core.Activator;
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * A disk-backed cache of HTTP response bodies.
+ * Each entry keeps its validators ({@code ETag} and {@code Last-Modified}) and freshness lifetime,
+ * so that fresh entries are served without any requests, and the stale ones are revalidated by
+ * conditional requests.
+ * Entries without explicit freshness lifetime ({@code Cache-Control: max-age} or {@code Expires}) are always
+ * revalidated, and responses with {@code Vary} are never cached because this does not keep request headers.
+ * The least recently used entries are evicted if the total size exceeds {@link #KEY_SIZE_LIMIT the limit}.
+ * @since 0.8.0
+ */
+public final class HttpCache {
+
+    /**
+     * The system property key of the maximum total size of cached bodies in bytes.
+     * The cache is disabled if this is {@code 0}.
+     */
+    public static final String KEY_SIZE_LIMIT = "com.asakusafw.shafu.core.http.cacheLimit"; //$NON-NLS-1$
+
+    static final long DEFAULT_SIZE_LIMIT = 256L * 1024 * 1024;
+
+    private static final Charset ENCODING = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String EXTENSION_BODY = ".body"; //$NON-NLS-1$
+
+    private static final String EXTENSION_META = ".meta"; //$NON-NLS-1$
+
+    private static final String EXTENSION_TEMPORARY = ".tmp"; //$NON-NLS-1$
+
+    private static final String META_URI = "uri"; //$NON-NLS-1$
+
+    private static final String META_ETAG = "etag"; //$NON-NLS-1$
+
+    private static final String META_LAST_MODIFIED = "lastModified"; //$NON-NLS-1$
+
+    private static final String META_EXPIRES = "expires"; //$NON-NLS-1$
+
+    private final File directory;
+
+    private final long sizeLimit;
+
+    /**
+     * Creates a new instance with the default size limit.
+     * @param directory the cache directory, or {@code null} to disable caching
+     */
+    public HttpCache(File directory) {
+        this(directory, Lazy.SIZE_LIMIT);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param directory the cache directory, or {@code null} to disable caching
+     * @param sizeLimit the maximum total size of cached bodies in bytes
+     */
+    public HttpCache(File directory, long sizeLimit) {
+        this.directory = sizeLimit > 0 ? directory : null;
+        this.sizeLimit = sizeLimit;
+    }
+
+    /**
+     * Returns the shared instance.
+     * @return the shared instance
+     */
+    public static HttpCache getDefault() {
+        return Activator.getHttpCache();
+    }
+
+    /**
+     * Returns the cached entry.
+     * @param uri the target URI
+     * @return the cached entry, or {@code null} if it is not cached
+     */
+    Entry find(URI uri) {
+        if (directory == null) {
+            return null;
+        }
+        String key = getKey(uri);
+        File body = new File(directory, key + EXTENSION_BODY);
+        File meta = new File(directory, key + EXTENSION_META);
+        synchronized (this) {
+            if (body.isFile() == false || meta.isFile() == false) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream input = new BufferedInputStream(new FileInputStream(meta))) {
+                properties.load(input);
+            } catch (IOException e) {
+                LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                        Messages.HttpCache_warnFailedToLoadEntry,
+                        uri), e);
+                return null;
+            }
+            if (uri.toString().equals(properties.getProperty(META_URI)) == false) {
+                return null;
+            }
+            touch(body);
+            return new Entry(uri, body, meta, properties);
+        }
+    }
+
+    /**
+     * Starts storing the response body.
+     * The returned object must be closed after the body was processed.
+     * @param uri the request URI
+     * @param response the response
+     * @return the storing session, or {@code null} if the response is not cacheable
+     */
+    Store store(URI uri, HttpResponse response) {
+        if (directory == null || isCacheable(response) == false) {
+            return null;
+        }
+        String key = getKey(uri);
+        Properties properties = new Properties();
+        properties.setProperty(META_URI, uri.toString());
+        putIfPresent(properties, META_ETAG, response.getFirstHeader(HttpHeaders.ETAG));
+        putIfPresent(properties, META_LAST_MODIFIED, response.getFirstHeader(HttpHeaders.LAST_MODIFIED));
+        properties.setProperty(META_EXPIRES, String.valueOf(computeExpires(response)));
+        try {
+            if (directory.mkdirs() == false && directory.isDirectory() == false) {
+                throw new IOException(directory.getPath());
+            }
+            File temporary = File.createTempFile(key, EXTENSION_TEMPORARY, directory);
+            OutputStream output;
+            try {
+                output = new BufferedOutputStream(new FileOutputStream(temporary));
+            } catch (IOException e) {
+                delete(temporary);
+                throw e;
+            }
+            return new Store(
+                    new File(directory, key + EXTENSION_BODY),
+                    new File(directory, key + EXTENSION_META),
+                    temporary,
+                    properties,
+                    output);
+        } catch (IOException e) {
+            LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                    Messages.HttpCache_warnFailedToStoreEntry,
+                    uri), e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the downloaded file as the response body.
+     * @param uri the request URI
+     * @param response the response
+     * @param file the downloaded response body
+     */
+    void put(URI uri, HttpResponse response, File file) {
+        Store store = store(uri, response);
+        if (store == null) {
+            return;
+        }
+        try (InputStream input = store.wrap(new FileInputStream(file))) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (input.read(buffer) >= 0) {
+                continue;
+            }
+        } catch (IOException e) {
+            LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                    Messages.HttpCache_warnFailedToStoreEntry,
+                    uri), e);
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Updates the entry by the {@code 304 Not Modified} response.
+     * @param entry the target entry
+     * @param response the response
+     */
+    void revalidated(Entry entry, HttpResponse response) {
+        Properties properties = entry.properties;
+        putIfPresent(properties, META_ETAG, response.getFirstHeader(HttpHeaders.ETAG));
+        putIfPresent(properties, META_LAST_MODIFIED, response.getFirstHeader(HttpHeaders.LAST_MODIFIED));
+        properties.setProperty(META_EXPIRES, String.valueOf(computeExpires(response)));
+        synchronized (this) {
+            try {
+                writeMeta(entry.meta, properties);
+            } catch (IOException e) {
+                LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                        Messages.HttpCache_warnFailedToStoreEntry,
+                        entry.uri), e);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached entries.
+     */
+    public synchronized void clear() {
+        if (directory == null) {
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            delete(file);
+        }
+    }
+
+    synchronized void commit(Store store) throws IOException {
+        File temporaryMeta = new File(store.meta.getPath() + EXTENSION_TEMPORARY);
+        try {
+            writeMeta(temporaryMeta, store.properties);
+            // removes the old metadata first so that the new body is never paired with it
+            delete(store.meta);
+            Files.move(store.temporary.toPath(), store.body.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporaryMeta.toPath(), store.meta.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (temporaryMeta.exists()) {
+                delete(temporaryMeta);
+            }
+        }
+        LogUtil.debug("Stored HTTP cache entry: {0}", store.properties.getProperty(META_URI)); //$NON-NLS-1$
+        evict(store.body);
+    }
+
+    private void evict(File keep) {
+        File[] bodies = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(EXTENSION_BODY) && file.isFile();
+            }
+        });
+        if (bodies == null) {
+            return;
+        }
+        long total = 0;
+        for (File body : bodies) {
+            total += body.length();
+        }
+        if (total <= sizeLimit) {
+            return;
+        }
+        // evicts from the least recently used one
+        List<File> candidates = new ArrayList<>(Arrays.asList(bodies));
+        Collections.sort(candidates, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        for (File body : candidates) {
+            if (total <= sizeLimit) {
+                break;
+            }
+            if (body.equals(keep)) {
+                continue;
+            }
+            long size = body.length();
+            String name = body.getName();
+            String key = name.substring(0, name.length() - EXTENSION_BODY.length());
+            File meta = new File(directory, key + EXTENSION_META);
+            LogUtil.debug("Evicting HTTP cache entry: {0}", body); //$NON-NLS-1$
+            delete(meta);
+            if (delete(body)) {
+                total -= size;
+            }
+        }
+    }
+
+    private static String getKey(URI uri) {
+        return DigestUtils.sha1Hex(uri.toString().getBytes(ENCODING));
+    }
+
+    private static void touch(File file) {
+        if (file.setLastModified(System.currentTimeMillis()) == false) {
+            LogUtil.debug("Failed to update access time: {0}", file); //$NON-NLS-1$
+        }
+    }
+
+    static boolean delete(File file) {
+        if (file.delete() == false && file.exists()) {
+            LogUtil.debug("Failed to delete HTTP cache file: {0}", file); //$NON-NLS-1$
+            return false;
+        }
+        return true;
+    }
+
+    private static void writeMeta(File file, Properties properties) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            properties.store(output, null);
+        }
+    }
+
+    private static void putIfPresent(Properties properties, String key, Header header) {
+        if (header != null && header.getValue() != null) {
+            properties.setProperty(key, header.getValue());
+        }
+    }
+
+    private static boolean isCacheable(HttpResponse response) {
+        for (HeaderElement element : getCacheControl(response)) {
+            String name = element.getName().toLowerCase(Locale.ENGLISH);
+            if (name.equals("no-store")) { //$NON-NLS-1$
+                return false;
+            }
+        }
+        if (response.containsHeader(HttpHeaders.VARY)) {
+            // the cached entries must be selected by the request headers
+            return false;
+        }
+        // we can serve the cached entries only if it is fresh or can be revalidated
+        return response.containsHeader(HttpHeaders.ETAG)
+                || response.containsHeader(HttpHeaders.LAST_MODIFIED)
+                || computeExpires(response) > System.currentTimeMillis();
+    }
+
+    private static long computeExpires(HttpResponse response) {
+        long now = System.currentTimeMillis();
+        for (HeaderElement element : getCacheControl(response)) {
+            String name = element.getName().toLowerCase(Locale.ENGLISH);
+            if (name.equals("no-cache") || name.equals("must-revalidate")) { //$NON-NLS-1$ //$NON-NLS-2$
+                return 0L;
+            }
+            if (name.equals("max-age") && element.getValue() != null) { //$NON-NLS-1$
+                try {
+                    return now + TimeUnit.SECONDS.toMillis(Long.parseLong(element.getValue().trim()));
+                } catch (NumberFormatException e) {
+                    return 0L;
+                }
+            }
+        }
+        Date expires = parseDate(response.getFirstHeader(HttpHeaders.EXPIRES));
+        if (expires != null) {
+            return expires.getTime();
+        }
+        // no heuristic freshness: always revalidates the entry
+        return 0L;
+    }
+
+    private static HeaderElement[] getCacheControl(HttpResponse response) {
+        List<HeaderElement> results = new ArrayList<>();
+        for (Header header : response.getHeaders(HttpHeaders.CACHE_CONTROL)) {
+            Collections.addAll(results, header.getElements());
+        }
+        return results.toArray(new HeaderElement[results.size()]);
+    }
+
+    private static Date parseDate(Header header) {
+        if (header == null || header.getValue() == null) {
+            return null;
+        }
+        return DateUtils.parseDate(header.getValue());
+    }
+
+    /**
+     * A cached entry.
+     */
+    final class Entry {
+
+        final URI uri;
+
+        final File body;
+
+        final File meta;
+
+        final Properties properties;
+
+        Entry(URI uri, File body, File meta, Properties properties) {
+            this.uri = uri;
+            this.body = body;
+            this.meta = meta;
+            this.properties = properties;
+        }
+
+        /**
+         * Returns whether or not this entry can be used without revalidation.
+         * @return {@code true} if this entry is fresh, otherwise {@code false}
+         */
+        boolean isFresh() {
+            String expires = properties.getProperty(META_EXPIRES);
+            if (expires == null) {
+                return false;
+            }
+            try {
+                return Long.parseLong(expires) > System.currentTimeMillis();
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Adds the validators of this entry to the conditional request.
+         * @param request the target request
+         */
+        void addValidators(HttpRequest request) {
+            String etag = properties.getProperty(META_ETAG);
+            if (etag != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+            }
+            String lastModified = properties.getProperty(META_LAST_MODIFIED);
+            if (lastModified != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+
+        /**
+         * Opens the cached body.
+         * @return the opened stream
+         * @throws IOException if failed to open the body
+         */
+        InputStream open() throws IOException {
+            return new FileInputStream(body);
+        }
+    }
+
+    /**
+     * A session of storing a response body.
+     * The body is stored only if it was read until the end of stream, or it was written {@link #direct() directly}
+     * and then {@link #complete() completed}.
+     */
+    final class Store implements Closeable {
+
+        final File body;
+
+        final File meta;
+
+        final File temporary;
+
+        final Properties properties;
+
+        private OutputStream output;
+
+        private boolean completed;
+
+        private boolean direct;
+
+        private boolean closed;
+
+        Store(File body, File meta, File temporary, Properties properties, OutputStream output) {
+            this.body = body;
+            this.meta = meta;
+            this.temporary = temporary;
+            this.properties = properties;
+            this.output = output;
+        }
+
+        /**
+         * Returns a stream which copies the contents into this cache while reading.
+         * @param input the response body
+         * @return the wrapped stream
+         */
+        InputStream wrap(InputStream input) {
+            return new FilterInputStream(input) {
+                @Override
+                public int read() throws IOException {
+                    int c = super.read();
+                    if (c < 0) {
+                        completed = true;
+                    } else {
+                        write(c);
+                    }
+                    return c;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read < 0) {
+                        completed = true;
+                    } else {
+                        write(b, off, read);
+                    }
+                    return read;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    // skipped contents cannot be stored
+                    discard();
+                    return super.skip(n);
+                }
+            };
+        }
+
+        /**
+         * Switches this session to store the body which is written directly into the returned file.
+         * The file will be committed on {@link #close()} only if {@link #complete()} was invoked.
+         * @return the temporary file of the body, or {@code null} if it is not available
+         */
+        File direct() {
+            if (output == null) {
+                return null;
+            }
+            try {
+                output.close();
+            } catch (IOException e) {
+                failed(e);
+                return null;
+            }
+            output = null;
+            direct = true;
+            return temporary;
+        }
+
+        /**
+         * Notifies that the body was completely written into the {@link #direct() direct} file.
+         */
+        void complete() {
+            completed = true;
+        }
+
+        void write(int c) {
+            if (output != null) {
+                try {
+                    output.write(c);
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        void write(byte[] b, int off, int len) {
+            if (output != null) {
+                try {
+                    output.write(b, off, len);
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        private void failed(IOException e) {
+            LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                    Messages.HttpCache_warnFailedToStoreEntry,
+                    properties.getProperty(META_URI)), e);
+            discard();
+        }
+
+        void discard() {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    LogUtil.debug("Failed to close HTTP cache file: {0}", e.toString()); //$NON-NLS-1$
+                }
+                output = null;
+            }
+        }
+
+        /**
+         * Commits the stored body if it was completely read, and then releases this session.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean store = (output != null || direct) && completed;
+            try {
+                if (store) {
+                    if (output != null) {
+                        output.close();
+                        output = null;
+                    }
+                    commit(this);
+                }
+            } catch (IOException e) {
+                failed(e);
+            } finally {
+                discard();
+                if (temporary.exists()) {
+                    delete(temporary);
+                }
+            }
+        }
+    }
+
+    private static final class Lazy {
+
+        static final long SIZE_LIMIT;
+        static {
+            String value = System.getProperty(KEY_SIZE_LIMIT);
+            long result = DEFAULT_SIZE_LIMIT;
+            if (value != null && value.trim().isEmpty() == false) {
+                try {
+                    result = Long.parseLong(value.trim());
+                } catch (NumberFormatException e) {
+                    LogUtil.log(IStatus.ERROR,
+                            MessageFormat.format(
+                                    "Invalid HTTP cache setting: {0}={1}", //$NON-NLS-1$
+                                    KEY_SIZE_LIMIT,
+                                    value),
+                            e);
+                }
+            }
+            SIZE_LIMIT = result;
+        }
+
+        private Lazy() {
+            return;
+        }
+    }
+}
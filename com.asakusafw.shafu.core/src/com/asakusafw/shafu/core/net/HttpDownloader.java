@@ -0,0 +1,658 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.core.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.ProgressMonitorWrapper;
+import org.eclipse.core.runtime.SubMonitor;
+
+import com.asakusafw.shafu.internal.core.Activator;
+import com.asakusafw.shafu.internal.core.LogUtil;
+
+/**
+ * Downloads contents into local files.
+ * For HTTP contents, this resumes the interrupted transfer by {@code Range} requests, and downloads large
+ * contents in several parallel segments if the server accepts range requests.
+ * The downloaded contents are also stored into {@link HttpCache}.
+ * Clients can also {@link #download(URL, File, IContentProcessor, IProgressMonitor) process the contents}
+ * while they are being downloaded.
+ * @since 0.8.0
+ */
+public final class HttpDownloader {
+
+    /**
+     * The system property key of the maximum number of parallel segments for each download.
+     */
+    public static final String KEY_SEGMENTS = "com.asakusafw.shafu.core.download.segments"; //$NON-NLS-1$
+
+    static final int DEFAULT_SEGMENTS = 4;
+
+    static final long MIN_SEGMENT_SIZE = 4L * 1024 * 1024;
+
+    static final int MAX_RETRIES = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private static final long TAIL_INTERVAL_MILLIS = 10;
+
+    private static final String RANGE_UNIT = "bytes"; //$NON-NLS-1$
+
+    private final HttpClient client;
+
+    private final HttpCache cache;
+
+    private final int segments;
+
+    /**
+     * Creates a new instance with the default settings.
+     */
+    public HttpDownloader() {
+        this(Activator.getHttpClient(), HttpCache.getDefault(), Lazy.SEGMENTS);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param client the HTTP client
+     * @param cache the HTTP cache
+     * @param segments the maximum number of parallel segments
+     */
+    public HttpDownloader(HttpClient client, HttpCache cache, int segments) {
+        this.client = client;
+        this.cache = cache;
+        this.segments = Math.max(segments, 1);
+    }
+
+    /**
+     * Downloads the content into the destination file.
+     * @param url the source URL
+     * @param destination the destination file, will be overwritten
+     * @param monitor the progress monitor
+     * @throws IOException if failed to download the content
+     * @throws OperationCanceledException if the operation was canceled
+     */
+    public void download(URL url, File destination, IProgressMonitor monitor) throws IOException {
+        SubMonitor sub = SubMonitor.convert(monitor,
+                MessageFormat.format(Messages.HttpDownloader_monitorDownload, url),
+                10000);
+        try {
+            download0(url, destination, sub, true);
+        } finally {
+            if (monitor != null) {
+                monitor.done();
+            }
+        }
+    }
+
+    /**
+     * Downloads the content into the destination file, and processes it while downloading.
+     * The processor runs on another thread, and reads the content as soon as it is written into the destination.
+     * Interrupted transfers are resumed in the same way as {@link #download(URL, File, IProgressMonitor)},
+     * so that the processor just waits for the resumed content.
+     * Note that the content is always downloaded in a single segment.
+     * @param url the source URL
+     * @param destination the destination file, will be overwritten
+     * @param processor the content processor
+     * @param monitor the progress monitor
+     * @param <T> the result type
+     * @return the process result
+     * @throws IOException if failed to download or process the content
+     * @throws OperationCanceledException if the operation was canceled
+     */
+    public <T> T download(
+            URL url, File destination,
+            final IContentProcessor<T> processor,
+            IProgressMonitor monitor) throws IOException {
+        SubMonitor sub = SubMonitor.convert(monitor,
+                MessageFormat.format(Messages.HttpDownloader_monitorDownload, url),
+                10000);
+        open(destination).close();
+        final TailInputStream input = new TailInputStream(destination);
+        final AtomicBoolean failed = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<T> future = executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws IOException {
+                    try {
+                        return processor.process(input);
+                    } catch (IOException | RuntimeException | Error e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }
+            });
+            try {
+                // stops downloading if the processor was failed
+                download0(url, destination, SubMonitor.convert(new ProgressMonitorWrapper(sub) {
+                    @Override
+                    public boolean isCanceled() {
+                        return failed.get() || super.isCanceled();
+                    }
+                }, 10000), false);
+                input.finish();
+            } catch (IOException | RuntimeException e) {
+                input.abort();
+                if (failed.get() == false) {
+                    throw e;
+                }
+            }
+            return get(future);
+        } finally {
+            input.abort();
+            executor.shutdownNow();
+            input.close();
+            if (monitor != null) {
+                monitor.done();
+            }
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new OperationCanceledException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void download0(URL url, File destination, SubMonitor monitor, boolean segmented) throws IOException {
+        if (ShafuNetwork.isHttp(url)) {
+            downloadHttp(url, destination, monitor, segmented);
+        } else {
+            downloadStream(url, destination, monitor);
+        }
+    }
+
+    private void downloadStream(URL url, File destination, SubMonitor monitor) throws IOException {
+        final Progress progress = new Progress(monitor, -1L);
+        try (final FileChannel channel = open(destination)) {
+            ShafuNetwork.processContent(url, new IContentProcessor<Void>() {
+                @Override
+                public Void process(InputStream input) throws IOException {
+                    transfer(input, channel, new Segment(0L, -1L), progress, true);
+                    return null;
+                }
+            });
+        }
+    }
+
+    private void downloadHttp(URL url, File destination, SubMonitor monitor, boolean segmented) throws IOException {
+        HttpGet request = new HttpGet(url.toExternalForm());
+        URI uri = request.getURI();
+        HttpCache.Entry cached = cache.find(uri);
+        if (cached != null) {
+            if (cached.isFresh()) {
+                LogUtil.debug("HTTP cache hit: {0}", uri); //$NON-NLS-1$
+                copy(cached, destination);
+                return;
+            }
+            cached.addValidators(request);
+        }
+        HttpResponse response = client.execute(request);
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                LogUtil.debug("HTTP cache revalidated: {0}", uri); //$NON-NLS-1$
+                cache.revalidated(cached, response);
+                copy(cached, destination);
+                return;
+            } else if (status != HttpStatus.SC_OK) {
+                throw new IOException(MessageFormat.format(
+                        Messages.HttpDownloader_errorFailedToDownload,
+                        uri,
+                        response.getStatusLine()));
+            }
+            HttpEntity entity = response.getEntity();
+            long length = entity.getContentLength();
+            boolean ranges = isRangeSupported(response);
+            String validator = getValidator(response);
+            Progress progress = new Progress(monitor, length);
+            int count = segmented && ranges && length > 0
+                    ? (int) Math.min(segments, length / MIN_SEGMENT_SIZE)
+                    : 1;
+            if (count >= 2) {
+                // discards the current response body, and then starts segmented downloads
+                request.abort();
+                // writes the segments straight into the cache, so that the body is copied only once
+                try (HttpCache.Store store = cache.store(uri, response)) {
+                    File body = store == null ? null : store.direct();
+                    if (body == null) {
+                        downloadSegments(uri, validator, length, count, destination, progress);
+                    } else {
+                        downloadSegments(uri, validator, length, count, body, progress);
+                        copy(body, destination);
+                        store.complete();
+                    }
+                }
+            } else {
+                try (FileChannel channel = open(destination)) {
+                    Segment segment = new Segment(0L, length);
+                    segment.request = request;
+                    downloadSegment(uri, validator, ranges, entity.getContent(), segment, channel, progress, true);
+                }
+                cache.put(uri, response, destination);
+            }
+        } finally {
+            ShafuNetwork.closeQuietly(response);
+        }
+    }
+
+    private void downloadSegments(
+            final URI uri, final String validator, long length, int count,
+            File destination, final Progress progress) throws IOException {
+        LogUtil.debug("Downloading in {1} segments: {0}", uri, count); //$NON-NLS-1$
+        long size = (length + count - 1) / count;
+        final List<Segment> segmentList = new ArrayList<>();
+        for (long start = 0; start < length; start += size) {
+            segmentList.add(new Segment(start, Math.min(start + size, length)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(segmentList.size());
+        try (final FileChannel channel = open(destination)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final Segment segment : segmentList) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        downloadSegment(uri, validator, true, null, segment, channel, progress, false);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                waitFor(future, segmentList, progress);
+            }
+            progress.report();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void waitFor(Future<?> future, List<Segment> segmentList, Progress progress) throws IOException {
+        try {
+            while (true) {
+                try {
+                    future.get(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    progress.report();
+                    if (progress.canceled) {
+                        for (Segment segment : segmentList) {
+                            segment.abort();
+                        }
+                        throw new OperationCanceledException();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Segment segment : segmentList) {
+                segment.abort();
+            }
+            throw new OperationCanceledException();
+        } catch (ExecutionException e) {
+            for (Segment segment : segmentList) {
+                segment.abort();
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    void downloadSegment(
+            URI uri, String validator, boolean ranges, InputStream initial,
+            Segment segment, FileChannel channel, Progress progress, boolean report) throws IOException {
+        InputStream input = initial;
+        HttpResponse response = null;
+        try {
+            for (int attempt = 0;; attempt++) {
+                try {
+                    if (input == null) {
+                        response = openRange(uri, validator, segment);
+                        input = response.getEntity().getContent();
+                    }
+                    transfer(input, channel, segment, progress, report);
+                    break;
+                } catch (IOException e) {
+                    if (progress.canceled) {
+                        throw new OperationCanceledException();
+                    }
+                    if (ranges == false || attempt >= MAX_RETRIES) {
+                        throw e;
+                    }
+                    LogUtil.debug("Resuming download: {0} (offset={1}, cause={2})", //$NON-NLS-1$
+                            uri, segment.position, e.toString());
+                    ShafuNetwork.closeQuietly(response);
+                    response = null;
+                    input = null;
+                }
+            }
+        } finally {
+            ShafuNetwork.closeQuietly(response);
+        }
+        if (segment.end >= 0 && segment.position != segment.end) {
+            throw new IOException(MessageFormat.format(
+                    Messages.HttpDownloader_errorIncomplete,
+                    uri,
+                    segment.position,
+                    segment.end));
+        }
+    }
+
+    private HttpResponse openRange(URI uri, String validator, Segment segment) throws IOException {
+        HttpGet request = new HttpGet(uri);
+        String last = segment.end >= 0 ? String.valueOf(segment.end - 1) : ""; //$NON-NLS-1$
+        request.setHeader(HttpHeaders.RANGE, RANGE_UNIT + '=' + segment.position + '-' + last);
+        if (validator != null) {
+            // the server returns the whole content if it was changed
+            request.setHeader(HttpHeaders.IF_RANGE, validator);
+        }
+        segment.request = request;
+        HttpResponse response = client.execute(request);
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+            ShafuNetwork.closeQuietly(response);
+            throw new IOException(MessageFormat.format(
+                    Messages.HttpDownloader_errorRangeNotSatisfied,
+                    uri,
+                    response.getStatusLine()));
+        }
+        return response;
+    }
+
+    static void transfer(
+            InputStream input, FileChannel channel,
+            Segment segment, Progress progress, boolean report) throws IOException {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (true) {
+            if (progress.canceled) {
+                throw new OperationCanceledException();
+            }
+            int read = input.read(bytes);
+            if (read < 0) {
+                break;
+            }
+            buffer.clear().limit(read);
+            while (buffer.hasRemaining()) {
+                segment.position += channel.write(buffer, segment.position);
+            }
+            progress.add(read);
+            if (report) {
+                progress.report();
+            }
+        }
+    }
+
+    private static boolean isRangeSupported(HttpResponse response) {
+        Header header = response.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+        return header != null
+                && header.getValue() != null
+                && header.getValue().trim().equalsIgnoreCase(RANGE_UNIT);
+    }
+
+    private static String getValidator(HttpResponse response) {
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        // weak entity tags cannot be used in If-Range
+        if (etag != null && etag.getValue() != null && etag.getValue().startsWith("W/") == false) { //$NON-NLS-1$
+            return etag.getValue();
+        }
+        Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        if (lastModified != null) {
+            return lastModified.getValue();
+        }
+        return null;
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void copy(HttpCache.Entry entry, File destination) throws IOException {
+        copy(entry.body, destination);
+    }
+
+    private static void copy(File source, File destination) throws IOException {
+        // writes into the existing file, so that the readers of the destination can follow the contents
+        try (FileChannel input = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                FileChannel output = open(destination)) {
+            long size = input.size();
+            for (long position = 0; position < size;) {
+                position += output.transferFrom(input, position, size - position);
+            }
+        }
+    }
+
+    /**
+     * Reads a file while it is being written sequentially.
+     */
+    static final class TailInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private long position;
+
+        private volatile boolean finished;
+
+        private volatile boolean aborted;
+
+        TailInputStream(File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+
+        /**
+         * Notifies that the file was completely written.
+         */
+        void finish() {
+            finished = true;
+        }
+
+        /**
+         * Notifies that writing the file was failed.
+         */
+        void abort() {
+            aborted = true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] buf = new byte[1];
+            int read = read(buf, 0, 1);
+            return read < 0 ? -1 : buf[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                boolean done = finished;
+                long size = channel.size();
+                if (position < size) {
+                    int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, size - position)), position);
+                    position += read;
+                    return read;
+                } else if (done) {
+                    return -1;
+                } else if (aborted) {
+                    throw new IOException(Messages.HttpDownloader_errorAborted);
+                }
+                try {
+                    Thread.sleep(TAIL_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    static final class Segment {
+
+        final long end;
+
+        long position;
+
+        volatile HttpGet request;
+
+        Segment(long start, long end) {
+            this.end = end;
+            this.position = start;
+        }
+
+        void abort() {
+            HttpGet current = request;
+            if (current != null) {
+                current.abort();
+            }
+        }
+    }
+
+    static final class Progress {
+
+        private static final int UNIT = 1024;
+
+        private final SubMonitor monitor;
+
+        private final long total;
+
+        private final AtomicLong done = new AtomicLong();
+
+        private long reported;
+
+        volatile boolean canceled;
+
+        Progress(SubMonitor monitor, long total) {
+            this.monitor = monitor;
+            this.total = total;
+            if (total > 0) {
+                monitor.setWorkRemaining((int) Math.min(total / UNIT + 1, Integer.MAX_VALUE));
+            }
+        }
+
+        void add(long bytes) {
+            done.addAndGet(bytes);
+        }
+
+        /**
+         * Reports the current progress.
+         * This must be invoked on the thread which owns the progress monitor.
+         */
+        void report() {
+            if (monitor.isCanceled()) {
+                canceled = true;
+            }
+            long current = done.get();
+            if (current == reported) {
+                return;
+            }
+            if (total > 0) {
+                monitor.worked((int) (current / UNIT - reported / UNIT));
+                monitor.subTask(MessageFormat.format(
+                        Messages.HttpDownloader_monitorProgress,
+                        current / UNIT,
+                        total / UNIT));
+            } else {
+                // the total size is unknown
+                monitor.setWorkRemaining(10000);
+                monitor.worked(1);
+                monitor.subTask(MessageFormat.format(
+                        Messages.HttpDownloader_monitorProgressUnknown,
+                        current / UNIT));
+            }
+            reported = current;
+        }
+    }
+
+    private static final class Lazy {
+
+        static final int SEGMENTS;
+        static {
+            String value = System.getProperty(KEY_SEGMENTS);
+            int result = DEFAULT_SEGMENTS;
+            if (value != null && value.trim().isEmpty() == false) {
+                try {
+                    result = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    LogUtil.log(IStatus.ERROR,
+                            MessageFormat.format(
+                                    "Invalid download setting: {0}={1}", //$NON-NLS-1$
+                                    KEY_SEGMENTS,
+                                    value),
+                            e);
+                }
+            }
+            SEGMENTS = result;
+        }
+
+        private Lazy() {
+            return;
+        }
+    }
+}
@@ -28,6 +28,15 @@ final class Messages extends NLS {
         return;
     }
 
+    public static String HttpCache_warnFailedToLoadEntry;
+    public static String HttpCache_warnFailedToStoreEntry;
+    public static String HttpDownloader_errorAborted;
+    public static String HttpDownloader_errorFailedToDownload;
+    public static String HttpDownloader_errorIncomplete;
+    public static String HttpDownloader_errorRangeNotSatisfied;
+    public static String HttpDownloader_monitorDownload;
+    public static String HttpDownloader_monitorProgress;
+    public static String HttpDownloader_monitorProgressUnknown;
     public static String ShafuNetwork_failedToOpenContent;
     public static String ShafuNetwork_failedToOpenHttpContent;
 }
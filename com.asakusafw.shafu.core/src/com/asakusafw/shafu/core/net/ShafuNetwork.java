@@ -30,9 +30,12 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 
 import com.asakusafw.shafu.internal.core.Activator;
+import com.asakusafw.shafu.internal.core.LogUtil;
 
 /**
  * Shafu Network API.
+ * HTTP contents are cached in {@link HttpCache}.
+ * @version 0.8.0
  */
 public final class ShafuNetwork {
 
@@ -57,8 +60,7 @@ public final class ShafuNetwork {
      * @throws IOException if failed to process the content
      */
     public static <T> T processContent(URL url, IContentProcessor<? extends T> processor) throws IOException {
-        String protocol = url.getProtocol();
-        if (protocol != null && HTTP_SCHEMES.contains(protocol)) {
+        if (isHttp(url)) {
             return processHttpContent(url, processor);
         }
         InputStream input;
@@ -79,10 +81,32 @@ public final class ShafuNetwork {
     private static <T> T processHttpContent(URL url, IContentProcessor<T> processor) throws IOException {
         HttpClient client = Activator.getHttpClient();
         HttpGet request = new HttpGet(url.toExternalForm());
+        HttpCache cache = HttpCache.getDefault();
+        HttpCache.Entry cached = cache.find(request.getURI());
+        if (cached != null) {
+            if (cached.isFresh()) {
+                LogUtil.debug("HTTP cache hit: {0}", request.getURI()); //$NON-NLS-1$
+                return processCachedContent(cached, processor);
+            }
+            cached.addValidators(request);
+        }
         HttpResponse response = client.execute(request);
         try {
-            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                return processor.process(response.getEntity().getContent());
+            int status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                LogUtil.debug("HTTP cache revalidated: {0}", request.getURI()); //$NON-NLS-1$
+                cache.revalidated(cached, response);
+            } else if (status == HttpStatus.SC_OK) {
+                InputStream content = response.getEntity().getContent();
+                HttpCache.Store store = cache.store(request.getURI(), response);
+                if (store == null) {
+                    return processor.process(content);
+                }
+                try {
+                    return processor.process(store.wrap(content));
+                } finally {
+                    store.close();
+                }
             } else {
                 throw new IOException(MessageFormat.format(
                         Messages.ShafuNetwork_failedToOpenHttpContent,
@@ -92,9 +116,22 @@ public final class ShafuNetwork {
         } finally {
             closeQuietly(response);
         }
+        return processCachedContent(cached, processor);
+    }
+
+    private static <T> T processCachedContent(
+            HttpCache.Entry entry, IContentProcessor<T> processor) throws IOException {
+        try (InputStream input = entry.open()) {
+            return processor.process(input);
+        }
+    }
+
+    static boolean isHttp(URL url) {
+        String protocol = url.getProtocol();
+        return protocol != null && HTTP_SCHEMES.contains(protocol);
     }
 
-    private static void closeQuietly(Object content) {
+    static void closeQuietly(Object content) {
         if (content instanceof Closeable) {
             try {
                 ((Closeable) content).close();
@@ -15,14 +15,35 @@
  */
 package com.asakusafw.shafu.core.util;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
@@ -37,20 +58,44 @@ import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.filesystem.IFileSystem;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
 
 import com.asakusafw.shafu.internal.core.LogUtil;
 
 /**
  * Utilities for I/O.
+ * @version 0.8.0
  */
 public final class IoUtils {
 
+    /**
+     * The system property key of the maximum number of threads for extracting each archive.
+     * Archives are extracted on the calling thread if this is {@code 1}.
+     * @since 0.8.0
+     */
+    public static final String KEY_EXTRACT_THREADS = "com.asakusafw.shafu.core.extract.threads"; //$NON-NLS-1$
+
+    static final int DEFAULT_EXTRACT_THREADS = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+
+    static final int MIN_ENTRIES_PER_THREAD = 16;
+
+    static final int PIPELINE_BUFFER_SIZE = 64 * 1024;
+
+    static final int PIPELINE_BUFFER_COUNT = 256;
+
+    static final long PIPELINE_MAX_ENTRY_SIZE = 1024L * 1024;
+
+    static final long POLL_INTERVAL_MILLIS = 100;
+
     private static final int UNIX_EXEC_MASK = 0111;
 
     private static final int UNIX_EXEC_MASK_OWNER = 0100;
 
+    private static final int STREAM_BUFFER_SIZE = 256 * 1024;
+
     private IoUtils() {
         return;
     }
@@ -255,22 +300,19 @@ public final class IoUtils {
         try {
             ZipFile zip = new ZipFile(archiveFile);
             try {
-                Enumeration<ZipArchiveEntry> entries = zip.getEntries();
-                while (entries.hasMoreElements()) {
-                    ZipArchiveEntry entry = entries.nextElement();
-                    if (entry.isDirectory()) {
-                        createDirectory(targetDirectory, entry);
-                    } else {
-                        InputStream input = zip.getInputStream(entry);
-                        try {
-                            File file = createFile(targetDirectory, entry, input);
-                            setFileMode(file, entry.getUnixMode());
-                        } finally {
-                            input.close();
+                List<ZipArchiveEntry> files = createSkeleton(targetDirectory, zip);
+                sub.setWorkRemaining(files.size());
+                int threads = Math.min(Lazy.EXTRACT_THREADS, files.size() / MIN_ENTRIES_PER_THREAD);
+                if (threads <= 1) {
+                    for (ZipArchiveEntry entry : files) {
+                        if (sub.isCanceled()) {
+                            throw new OperationCanceledException();
                         }
+                        extractZipEntry(zip, entry, targetDirectory);
                         sub.worked(1);
-                        sub.setWorkRemaining(10);
                     }
+                } else {
+                    extractZipEntries(sub, zip, files, targetDirectory, threads);
                 }
             } finally {
                 zip.close();
@@ -282,6 +324,73 @@ public final class IoUtils {
         }
     }
 
+    /**
+     * Creates all directories in the archive, and returns the remaining file entries.
+     */
+    private static List<ZipArchiveEntry> createSkeleton(File base, ZipFile zip) throws IOException {
+        List<ZipArchiveEntry> results = new ArrayList<>();
+        Set<File> directories = new LinkedHashSet<>();
+        Enumeration<ZipArchiveEntry> entries = zip.getEntries();
+        while (entries.hasMoreElements()) {
+            ZipArchiveEntry entry = entries.nextElement();
+            File file = new File(base, entry.getName());
+            if (entry.isDirectory()) {
+                directories.add(file);
+            } else {
+                directories.add(file.getParentFile());
+                results.add(entry);
+            }
+        }
+        for (File directory : directories) {
+            createDirectory(directory);
+        }
+        return results;
+    }
+
+    /**
+     * Extracts the file entries on a bounded worker pool.
+     * {@link ZipFile} serializes each read of the underlying file, so that entries can be inflated and written
+     * in parallel.
+     */
+    private static void extractZipEntries(
+            SubMonitor monitor,
+            final ZipFile zip,
+            List<ZipArchiveEntry> entries,
+            final File targetDirectory,
+            int threads) throws IOException {
+        LogUtil.debug("Extracting {0} entries in {1} threads", entries.size(), threads); //$NON-NLS-1$
+        ExtractTasks tasks = new ExtractTasks(monitor, threads, threads * 2, false);
+        try {
+            for (final ZipArchiveEntry entry : entries) {
+                tasks.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        extractZipEntry(zip, entry, targetDirectory);
+                        return null;
+                    }
+                });
+            }
+            tasks.finish();
+        } finally {
+            tasks.close();
+        }
+    }
+
+    private static void extractZipEntry(ZipFile zip, ZipArchiveEntry entry, File base) throws IOException {
+        File file = new File(base, entry.getName());
+        InputStream input = zip.getInputStream(entry);
+        try {
+            if (entry.getMethod() == ZipEntry.STORED && entry.getSize() >= 0) {
+                transferFile(file, input, entry.getSize());
+            } else {
+                writeFile(file, input);
+            }
+        } finally {
+            input.close();
+        }
+        setFileMode(file, entry.getUnixMode());
+    }
+
     /**
      * Extracts a {@code *.tar.gz} archive into the target folder.
      * @param monitor the progress monitor
@@ -293,33 +402,134 @@ public final class IoUtils {
             IProgressMonitor monitor,
             File archiveFile,
             File targetDirectory) throws IOException {
+        InputStream input = new FileInputStream(archiveFile);
+        try {
+            extractTarGz(monitor, input, targetDirectory);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Extracts a {@code *.tar.gz} archive stream into the target folder.
+     * Each entry is written as soon as its contents arrive, so that this can extract archives while they are
+     * still being downloaded.
+     * Files are written on worker threads unless {@link #KEY_EXTRACT_THREADS} is {@code 1}, so that writing files
+     * does not stall decompressing the archive.
+     * @param monitor the progress monitor
+     * @param input the archive contents, will not be closed in this method
+     * @param targetDirectory the target folder
+     * @throws IOException if failed to extract the archive
+     * @throws OperationCanceledException if the operation was canceled
+     * @since 0.8.0
+     */
+    public static void extractTarGz(
+            IProgressMonitor monitor,
+            InputStream input,
+            File targetDirectory) throws IOException {
         SubMonitor sub = SubMonitor.convert(monitor, Messages.IoUtils_monitorExtractTarGz, 10);
         try {
-            InputStream input = new FileInputStream(archiveFile);
-            try {
-                ArchiveInputStream archive = new TarArchiveInputStream(new GzipCompressorInputStream(input));
-                while (true) {
-                    ArchiveEntry entry = archive.getNextEntry();
-                    if (entry == null) {
-                        break;
-                    }
-                    if (entry.isDirectory()) {
-                        createDirectory(targetDirectory, entry);
-                    } else {
-                        File file = createFile(targetDirectory, entry, archive);
-                        if (entry instanceof TarArchiveEntry) {
-                            setFileMode(file, ((TarArchiveEntry) entry).getMode());
+            ArchiveInputStream archive = new TarArchiveInputStream(new GzipCompressorInputStream(
+                    new BufferedInputStream(input, STREAM_BUFFER_SIZE)));
+            if (Lazy.EXTRACT_THREADS <= 1) {
+                extractTarEntries(sub, archive, targetDirectory);
+            } else {
+                extractTarEntries(sub, archive, targetDirectory, Lazy.EXTRACT_THREADS);
+            }
+        } finally {
+            if (monitor != null) {
+                monitor.done();
+            }
+        }
+    }
+
+    private static void extractTarEntries(
+            SubMonitor monitor,
+            ArchiveInputStream archive,
+            File targetDirectory) throws IOException {
+        while (true) {
+            if (monitor.isCanceled()) {
+                throw new OperationCanceledException();
+            }
+            ArchiveEntry entry = archive.getNextEntry();
+            if (entry == null) {
+                break;
+            }
+            if (entry.isDirectory()) {
+                createDirectory(targetDirectory, entry);
+            } else {
+                File file = createFile(targetDirectory, entry, archive);
+                setFileMode(file, getUnixMode(entry));
+                monitor.worked(1);
+                monitor.setWorkRemaining(10);
+            }
+        }
+    }
+
+    /**
+     * Extracts the archive entries in a pipeline.
+     * The calling thread decompresses the archive and reads contents of each small file into pooled buffers,
+     * and the worker pool creates the files from them.
+     * The calling thread waits for buffers to be released while the pool is exhausted, so that the memory usage
+     * is bounded even if writing files is slower than decompressing the archive.
+     * Large files are written directly from the calling thread.
+     */
+    private static void extractTarEntries(
+            SubMonitor monitor,
+            ArchiveInputStream archive,
+            File targetDirectory,
+            int threads) throws IOException {
+        LogUtil.debug("Extracting entries in {0} threads", threads); //$NON-NLS-1$
+        final BufferPool buffers = new BufferPool(PIPELINE_BUFFER_COUNT);
+        // each task holds at least one buffer, so that the task queue never grows unbounded
+        ExtractTasks tasks = new ExtractTasks(monitor, threads, Integer.MAX_VALUE, true);
+        try {
+            while (true) {
+                if (monitor.isCanceled()) {
+                    throw new OperationCanceledException();
+                }
+                ArchiveEntry entry = archive.getNextEntry();
+                if (entry == null) {
+                    break;
+                }
+                if (entry.isDirectory()) {
+                    createDirectory(targetDirectory, entry);
+                    continue;
+                }
+                final File file = new File(targetDirectory, entry.getName());
+                final int mode = getUnixMode(entry);
+                final long size = entry.getSize();
+                if (size < 0 || size > PIPELINE_MAX_ENTRY_SIZE) {
+                    createFile(targetDirectory, entry, archive);
+                    setFileMode(file, mode);
+                    tasks.completed();
+                    continue;
+                }
+                final List<byte[]> contents = buffers.read(monitor, archive, size, file);
+                tasks.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        try {
+                            writeFile(file, contents, size);
+                            setFileMode(file, mode);
+                        } finally {
+                            buffers.release(contents);
                         }
-                        sub.worked(1);
-                        sub.setWorkRemaining(10);
+                        return null;
                     }
-                }
-            } finally {
-                input.close();
+                });
             }
+            tasks.finish();
         } finally {
-            monitor.done();
+            tasks.close();
+        }
+    }
+
+    private static int getUnixMode(ArchiveEntry entry) {
+        if (entry instanceof TarArchiveEntry) {
+            return ((TarArchiveEntry) entry).getMode();
         }
+        return 0;
     }
 
     private static void setFileMode(File file, int unixMode) {
@@ -333,11 +543,14 @@ public final class IoUtils {
     }
 
     private static void createDirectory(File base, ArchiveEntry entry) throws IOException {
-        File file = new File(base, entry.getName());
-        if (file.mkdirs() == false && file.isDirectory() == false) {
+        createDirectory(new File(base, entry.getName()));
+    }
+
+    private static void createDirectory(File directory) throws IOException {
+        if (directory.mkdirs() == false && directory.isDirectory() == false) {
             throw new IOException(MessageFormat.format(
                     Messages.IoUtils_errorFailedToCreateDirectory,
-                    base));
+                    directory));
         }
     }
 
@@ -345,12 +558,293 @@ public final class IoUtils {
         File file = new File(base, entry.getName());
         File parent = file.getParentFile();
         parent.mkdirs();
+        writeFile(file, contents);
+        return file;
+    }
+
+    private static void writeFile(File file, InputStream contents) throws IOException {
         OutputStream output = new FileOutputStream(file);
         try {
             IOUtils.copy(contents, output);
         } finally {
             output.close();
         }
-        return file;
+    }
+
+    private static void writeFile(File file, List<byte[]> contents, long size) throws IOException {
+        File parent = file.getParentFile();
+        parent.mkdirs();
+        OutputStream output = new FileOutputStream(file);
+        try {
+            long rest = size;
+            for (byte[] buffer : contents) {
+                int length = (int) Math.min(rest, buffer.length);
+                output.write(buffer, 0, length);
+                rest -= length;
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Writes the contents with their exact size, by transferring them into the file channel.
+     */
+    private static void transferFile(File file, InputStream contents, long size) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            FileChannel channel = output.getChannel();
+            ReadableByteChannel source = Channels.newChannel(contents);
+            long position = 0;
+            while (position < size) {
+                long count = channel.transferFrom(source, position, size - position);
+                if (count <= 0) {
+                    throw new IOException(MessageFormat.format(
+                            Messages.IoUtils_errorTruncatedEntry,
+                            file));
+                }
+                position += count;
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Runs tasks for extracting archive entries on a worker pool, and reports their progress.
+     * The methods in this class must be invoked from the thread which owns the progress monitor.
+     */
+    private static final class ExtractTasks {
+
+        private final SubMonitor monitor;
+
+        private final boolean indeterminate;
+
+        private final ThreadPoolExecutor executor;
+
+        private final CompletionService<Void> completion;
+
+        private int pending;
+
+        /**
+         * Creates a new instance.
+         * If the task queue is full, the calling thread runs the submitted task by itself.
+         * @param monitor the progress monitor
+         * @param threads the number of worker threads
+         * @param queueCapacity the capacity of the task queue
+         * @param indeterminate {@code true} if the total number of tasks is unknown
+         */
+        ExtractTasks(SubMonitor monitor, int threads, int queueCapacity, boolean indeterminate) {
+            this.monitor = monitor;
+            this.indeterminate = indeterminate;
+            this.executor = new ThreadPoolExecutor(
+                    threads, threads,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(queueCapacity),
+                    new ThreadFactory() {
+                        private final AtomicInteger counter = new AtomicInteger();
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r);
+                            thread.setName(MessageFormat.format(
+                                    "shafu-extract-{0}", //$NON-NLS-1$
+                                    counter.incrementAndGet()));
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            this.completion = new ExecutorCompletionService<>(executor);
+        }
+
+        /**
+         * Submits a task, and then reports the finished tasks.
+         * @param task the task
+         * @throws IOException if a finished task was failed
+         * @throws OperationCanceledException if the operation was canceled
+         */
+        void submit(Callable<Void> task) throws IOException {
+            if (monitor.isCanceled()) {
+                throw new OperationCanceledException();
+            }
+            completion.submit(task);
+            pending++;
+            for (Future<Void> done = completion.poll(); done != null; done = completion.poll()) {
+                waitFor(done);
+            }
+        }
+
+        /**
+         * Waits for all submitted tasks.
+         * @throws IOException if a task was failed
+         * @throws OperationCanceledException if the operation was canceled
+         */
+        void finish() throws IOException {
+            while (pending > 0) {
+                if (monitor.isCanceled()) {
+                    throw new OperationCanceledException();
+                }
+                try {
+                    waitFor(completion.take());
+                } catch (InterruptedException e) {
+                    throw new OperationCanceledException();
+                }
+            }
+        }
+
+        /**
+         * Reports an entry which was extracted outside of the worker pool.
+         */
+        void completed() {
+            monitor.worked(1);
+            if (indeterminate) {
+                monitor.setWorkRemaining(10);
+            }
+        }
+
+        /**
+         * Discards the pending tasks, and waits for the running ones so that no files are written after this.
+         */
+        void close() {
+            executor.shutdownNow();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void waitFor(Future<?> future) throws IOException {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw new OperationCanceledException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+            pending--;
+            completed();
+        }
+    }
+
+    /**
+     * A bounded pool of buffers for passing file contents to the worker threads.
+     */
+    private static final class BufferPool {
+
+        private final BlockingQueue<byte[]> free;
+
+        private int available;
+
+        BufferPool(int capacity) {
+            this.free = new ArrayBlockingQueue<>(capacity);
+            this.available = capacity;
+        }
+
+        /**
+         * Reads the contents into buffers from this pool.
+         * This waits for other buffers to be released while this pool is exhausted.
+         * @param monitor the progress monitor
+         * @param input the source stream
+         * @param size the number of bytes to read
+         * @param file the destination file, only for error messages
+         * @return the buffers, at least one
+         * @throws IOException if failed to read the contents
+         * @throws OperationCanceledException if the operation was canceled
+         */
+        List<byte[]> read(IProgressMonitor monitor, InputStream input, long size, File file) throws IOException {
+            List<byte[]> results = new ArrayList<>();
+            long rest = size;
+            do {
+                byte[] buffer = acquire(monitor);
+                results.add(buffer);
+                int length = (int) Math.min(rest, buffer.length);
+                if (IOUtils.readFully(input, buffer, 0, length) < length) {
+                    release(results);
+                    throw new IOException(MessageFormat.format(
+                            Messages.IoUtils_errorTruncatedEntry,
+                            file));
+                }
+                rest -= length;
+            } while (rest > 0);
+            return results;
+        }
+
+        private byte[] acquire(IProgressMonitor monitor) {
+            byte[] buffer = free.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+            // only the reader thread allocates buffers
+            if (available > 0) {
+                available--;
+                return new byte[PIPELINE_BUFFER_SIZE];
+            }
+            try {
+                while (true) {
+                    if (monitor.isCanceled()) {
+                        throw new OperationCanceledException();
+                    }
+                    buffer = free.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (buffer != null) {
+                        return buffer;
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new OperationCanceledException();
+            }
+        }
+
+        /**
+         * Returns the buffers into this pool.
+         * @param buffers the buffers
+         */
+        void release(List<byte[]> buffers) {
+            for (byte[] buffer : buffers) {
+                free.offer(buffer);
+            }
+        }
+    }
+
+    private static final class Lazy {
+
+        static final int EXTRACT_THREADS;
+        static {
+            String value = System.getProperty(KEY_EXTRACT_THREADS);
+            int result = DEFAULT_EXTRACT_THREADS;
+            if (value != null && value.trim().isEmpty() == false) {
+                try {
+                    result = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    LogUtil.log(IStatus.ERROR,
+                            MessageFormat.format(
+                                    "Invalid extract setting: {0}={1}", //$NON-NLS-1$
+                                    KEY_EXTRACT_THREADS,
+                                    value),
+                            e);
+                }
+            }
+            EXTRACT_THREADS = result;
+        }
+
+        private Lazy() {
+            return;
+        }
     }
 }
@@ -25,6 +25,7 @@ final class Messages extends NLS {
     public static String IoUtils_errorFailedToDeleteFile;
     public static String IoUtils_errorFailedToDeleteTemporaryFile;
     public static String IoUtils_errorFailedToMoveFile;
+    public static String IoUtils_errorTruncatedEntry;
     public static String IoUtils_monitorExtractTarGz;
     public static String IoUtils_monitorExtractZip;
     static {
@@ -16,6 +16,7 @@
 package com.asakusafw.shafu.internal.core;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 
 import org.apache.http.client.HttpClient;
@@ -24,6 +25,10 @@ import org.apache.http.impl.client.HttpClientBuilder;
 import org.eclipse.core.runtime.Plugin;
 import org.osgi.framework.BundleContext;
 
+import com.asakusafw.shafu.core.gradle.GradleBuildScheduler;
+import com.asakusafw.shafu.core.gradle.GradleConnectionPool;
+import com.asakusafw.shafu.core.gradle.GradleModelCache;
+import com.asakusafw.shafu.core.net.HttpCache;
 import com.asakusafw.shafu.internal.core.net.ShafuCredentialsProvider;
 
 /**
@@ -41,12 +46,24 @@ public class Activator extends Plugin {
      */
     public static final String EXTENSION_PREFIX = PLUGIN_ID + '.';
 
+    private static final String PATH_MODEL_CACHE = "models"; //$NON-NLS-1$
+
+    private static final String PATH_HTTP_CACHE = "http"; //$NON-NLS-1$
+
     private static Activator plugin;
 
     private ExtensionManager extensions;
 
     private CloseableHttpClient httpClient;
 
+    private GradleConnectionPool connectionPool;
+
+    private GradleBuildScheduler buildScheduler;
+
+    private GradleModelCache modelCache;
+
+    private HttpCache httpCache;
+
     @Override
     public void start(BundleContext context) throws Exception {
         super.start(context);
@@ -60,6 +77,11 @@ public class Activator extends Plugin {
         synchronized (this) {
             closeQuietly(httpClient);
             httpClient = null;
+            closeQuietly(connectionPool);
+            connectionPool = null;
+            buildScheduler = null;
+            modelCache = null;
+            httpCache = null;
         }
         plugin = null;
         super.stop(context);
@@ -113,4 +135,78 @@ public class Activator extends Plugin {
         }
         return httpClient;
     }
+
+    /**
+     * Returns the shared Gradle connection pool.
+     * @return the shared Gradle connection pool
+     */
+    public static GradleConnectionPool getConnectionPool() {
+        return getDefault().getConnectionPool0();
+    }
+
+    private synchronized GradleConnectionPool getConnectionPool0() {
+        if (connectionPool == null) {
+            connectionPool = new GradleConnectionPool();
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Returns the shared Gradle build scheduler.
+     * @return the shared Gradle build scheduler
+     */
+    public static GradleBuildScheduler getBuildScheduler() {
+        return getDefault().getBuildScheduler0();
+    }
+
+    private synchronized GradleBuildScheduler getBuildScheduler0() {
+        if (buildScheduler == null) {
+            buildScheduler = new GradleBuildScheduler();
+        }
+        return buildScheduler;
+    }
+
+    /**
+     * Returns the shared Gradle model cache.
+     * @return the shared Gradle model cache
+     */
+    public static GradleModelCache getModelCache() {
+        return getDefault().getModelCache0();
+    }
+
+    private synchronized GradleModelCache getModelCache0() {
+        if (modelCache == null) {
+            File directory;
+            try {
+                directory = getStateLocation().append(PATH_MODEL_CACHE).toFile();
+            } catch (IllegalStateException e) {
+                LogUtil.debug("Gradle model cache is disabled: {0}", e); //$NON-NLS-1$
+                directory = null;
+            }
+            modelCache = new GradleModelCache(directory);
+        }
+        return modelCache;
+    }
+
+    /**
+     * Returns the shared HTTP cache.
+     * @return the shared HTTP cache
+     */
+    public static HttpCache getHttpCache() {
+        return getDefault().getHttpCache0();
+    }
+
+    private synchronized HttpCache getHttpCache0() {
+        if (httpCache == null) {
+            File directory;
+            try {
+                directory = getStateLocation().append(PATH_HTTP_CACHE).toFile();
+            } catch (IllegalStateException e) {
+                LogUtil.debug("HTTP cache is disabled: {0}", e); //$NON-NLS-1$
+                directory = null;
+            }
+            httpCache = new HttpCache(directory);
+        }
+        return httpCache;
+    }
 }
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.core;
+
+import java.text.MessageFormat;
+
+import com.asakusafw.shafu.core.gradle.BuildMetrics;
+import com.asakusafw.shafu.core.gradle.GradleContext;
+import com.asakusafw.shafu.core.gradle.IBuildMetricsListener;
+
+/**
+ * Reports a summary of {@link BuildMetrics} into the information output of the build.
+ * @since 0.8.0
+ */
+public class BuildMetricsReporter implements IBuildMetricsListener {
+
+    @Override
+    public void metricsRecorded(GradleContext context, BuildMetrics metrics) {
+        if (context.hasInformationOutput()) {
+            context.information(MessageFormat.format(
+                    Messages.BuildMetricsReporter_infoSummary,
+                    metrics.getSummary()));
+        } else {
+            LogUtil.debug("Build metrics: {0}", metrics.getSummary()); //$NON-NLS-1$
+        }
+    }
+}
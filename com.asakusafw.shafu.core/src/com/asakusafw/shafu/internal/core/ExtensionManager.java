@@ -36,6 +36,7 @@ import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 
 import com.asakusafw.shafu.core.extensions.IExtensionFilter;
+import com.asakusafw.shafu.core.gradle.IBuildMetricsListener;
 import com.asakusafw.shafu.core.gradle.IGradleContextEnhancer;
 import com.asakusafw.shafu.core.net.IHttpCredentialsProvider;
 
@@ -53,6 +54,9 @@ public class ExtensionManager {
     private static final String ID_GRADLE_CONTEXT_ENHANCERS =
             Activator.EXTENSION_PREFIX + "gradleContextEnhancers"; //$NON-NLS-1$
 
+    private static final String ID_BUILD_METRICS =
+            Activator.EXTENSION_PREFIX + "buildMetrics"; //$NON-NLS-1$
+
     private final AtomicReference<Map<String, IExtensionFilter>> extensionFilterCache =
             new AtomicReference<>();
 
@@ -143,6 +147,14 @@ public class ExtensionManager {
         return results;
     }
 
+    /**
+     * Returns new {@link IBuildMetricsListener}s.
+     * @return the created instances
+     */
+    public List<IBuildMetricsListener> createBuildMetricsListeners() {
+        return new ArrayList<>(getClasses(IBuildMetricsListener.class, ID_BUILD_METRICS));
+    }
+
     private <T> Collection<T> getClasses(Class<T> type, String pointId) {
         LogUtil.debug("Loading Extension: {0}", pointId); //$NON-NLS-1$
         IExtensionRegistry registory = Platform.getExtensionRegistry();
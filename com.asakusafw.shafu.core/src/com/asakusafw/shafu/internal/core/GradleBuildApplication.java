@@ -0,0 +1,262 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.core;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+
+import com.asakusafw.shafu.core.gradle.GradleBuildTask;
+import com.asakusafw.shafu.core.gradle.GradleContext;
+import com.asakusafw.shafu.core.gradle.GradleContextBuilder;
+import com.asakusafw.shafu.core.util.GradleArguments;
+import com.asakusafw.shafu.core.util.StatusUtils;
+
+/**
+ * Runs Gradle tasks without any workbench services.
+ * <p>
+ * Usage: {@code -application com.asakusafw.shafu.core.build [shafu-options] [gradle-options] [tasks]}.
+ * The available Shafu options are:
+ * </p>
+ * <ul>
+ * <li> {@code -shafu.project <directory>} - the target project directory (default: current directory) </li>
+ * <li> {@code -shafu.gradleVersion <version-or-uri>} - the Gradle version or distribution URI </li>
+ * <li> {@code -shafu.gradleUserHome <directory>} - the Gradle user home directory </li>
+ * <li> {@code -shafu.javaHome <directory>} - the Java home directory for Gradle daemons </li>
+ * <li> {@code -shafu.env <name>=<value>} - an environment variable for Gradle builds </li>
+ * <li> {@code -shafu.output <file>} - the build log file (default: standard output) </li>
+ * <li> {@code -shafu.noWrapper} - ignores the Gradle wrapper configuration files </li>
+ * <li> {@code -shafu.noHttps} - downloads Gradle distributions via HTTP </li>
+ * </ul>
+ * <p>
+ * The rest arguments are passed to Gradle as same as the Shafu build command line.
+ * </p>
+ * @since 0.8.0
+ */
+public class GradleBuildApplication implements IApplication {
+
+    static final String OPTION_PREFIX = "-shafu."; //$NON-NLS-1$
+
+    static final String OPTION_PROJECT = OPTION_PREFIX + "project"; //$NON-NLS-1$
+
+    static final String OPTION_GRADLE_VERSION = OPTION_PREFIX + "gradleVersion"; //$NON-NLS-1$
+
+    static final String OPTION_GRADLE_USER_HOME = OPTION_PREFIX + "gradleUserHome"; //$NON-NLS-1$
+
+    static final String OPTION_JAVA_HOME = OPTION_PREFIX + "javaHome"; //$NON-NLS-1$
+
+    static final String OPTION_ENVIRONMENT_VARIABLE = OPTION_PREFIX + "env"; //$NON-NLS-1$
+
+    static final String OPTION_OUTPUT = OPTION_PREFIX + "output"; //$NON-NLS-1$
+
+    static final String OPTION_NO_WRAPPER = OPTION_PREFIX + "noWrapper"; //$NON-NLS-1$
+
+    static final String OPTION_NO_HTTPS = OPTION_PREFIX + "noHttps"; //$NON-NLS-1$
+
+    static final Integer EXIT_FAILED = 1;
+
+    private static final char ESCAPE = '\\';
+
+    private final NullProgressMonitor monitor = new NullProgressMonitor();
+
+    @Override
+    public Object start(IApplicationContext context) throws Exception {
+        String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+        context.applicationRunning();
+        return run(args == null ? new String[0] : args);
+    }
+
+    @Override
+    public void stop() {
+        monitor.setCanceled(true);
+    }
+
+    Object run(String... args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return EXIT_FAILED;
+        }
+        OutputStream output;
+        try {
+            output = options.output == null ? null : new FileOutputStream(options.output);
+        } catch (FileNotFoundException e) {
+            System.err.println(MessageFormat.format(
+                    Messages.GradleBuildApplication_errorFailedToOpenOutput,
+                    options.output));
+            return EXIT_FAILED;
+        }
+        PrintStream out = output == null ? System.out : new PrintStream(output, true);
+        PrintWriter info = new PrintWriter(new OutputStreamWriter(out), true);
+        try {
+            GradleArguments arguments = GradleArguments.parse(toCommandLine(options.rest));
+            GradleContext context = options.createContext(arguments.getGradleVersion(), arguments.getGradleOptions());
+            context.withStandardOutput(out);
+            context.withStandardError(output == null ? System.err : out);
+            context.withInformationOutput(info);
+            long start = System.nanoTime();
+            try {
+                new GradleBuildTask(context, arguments.getTaskNames()).run(monitor);
+            } catch (CoreException e) {
+                IStatus status = e.getStatus();
+                if (StatusUtils.hasCancel(status) == false) {
+                    LogUtil.log(status);
+                }
+                info.println(status.getMessage());
+                return EXIT_FAILED;
+            } finally {
+                info.println(MessageFormat.format(
+                        Messages.GradleBuildApplication_infoElapsed,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            }
+            return EXIT_OK;
+        } finally {
+            info.flush();
+            if (output != null) {
+                out.close();
+            }
+        }
+    }
+
+    private static String toCommandLine(List<String> tokens) {
+        StringBuilder buf = new StringBuilder();
+        for (String token : tokens) {
+            if (buf.length() > 0) {
+                buf.append(' ');
+            }
+            for (int i = 0, n = token.length(); i < n; i++) {
+                char c = token.charAt(i);
+                if (c == ESCAPE || c == '#' || Character.isWhitespace(c)) {
+                    buf.append(ESCAPE);
+                }
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    private static final class Options {
+
+        File project = new File(".").getAbsoluteFile(); //$NON-NLS-1$
+
+        String gradleVersion;
+
+        File gradleUserHome;
+
+        File javaHome;
+
+        final Map<String, String> environmentVariables = new LinkedHashMap<>();
+
+        File output;
+
+        boolean useWrapper = true;
+
+        boolean useHttps = true;
+
+        final List<String> rest = new ArrayList<>();
+
+        Options() {
+            return;
+        }
+
+        static Options parse(String... args) {
+            Options results = new Options();
+            LinkedList<String> tokens = new LinkedList<>(Arrays.asList(args));
+            while (tokens.isEmpty() == false) {
+                String token = tokens.removeFirst();
+                if (token.startsWith(OPTION_PREFIX) == false) {
+                    results.rest.add(token);
+                } else if (token.equals(OPTION_PROJECT)) {
+                    results.project = new File(value(token, tokens)).getAbsoluteFile();
+                } else if (token.equals(OPTION_GRADLE_VERSION)) {
+                    results.gradleVersion = value(token, tokens);
+                } else if (token.equals(OPTION_GRADLE_USER_HOME)) {
+                    results.gradleUserHome = new File(value(token, tokens));
+                } else if (token.equals(OPTION_JAVA_HOME)) {
+                    results.javaHome = new File(value(token, tokens));
+                } else if (token.equals(OPTION_OUTPUT)) {
+                    results.output = new File(value(token, tokens));
+                } else if (token.equals(OPTION_ENVIRONMENT_VARIABLE)) {
+                    String pair = value(token, tokens);
+                    int index = pair.indexOf('=');
+                    if (index <= 0) {
+                        throw new IllegalArgumentException(MessageFormat.format(
+                                Messages.GradleBuildApplication_errorInvalidOption,
+                                token, pair));
+                    }
+                    results.environmentVariables.put(pair.substring(0, index), pair.substring(index + 1));
+                } else if (token.equals(OPTION_NO_WRAPPER)) {
+                    results.useWrapper = false;
+                } else if (token.equals(OPTION_NO_HTTPS)) {
+                    results.useHttps = false;
+                } else {
+                    throw new IllegalArgumentException(MessageFormat.format(
+                            Messages.GradleBuildApplication_errorUnknownOption,
+                            token));
+                }
+            }
+            return results;
+        }
+
+        private static String value(String option, LinkedList<String> tokens) {
+            if (tokens.isEmpty()) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        Messages.GradleBuildApplication_errorInvalidOption,
+                        option, "")); //$NON-NLS-1$
+            }
+            return tokens.removeFirst();
+        }
+
+        GradleContext createContext(String versionOverride, List<String> gradleOptions) {
+            GradleContextBuilder builder = new GradleContextBuilder()
+                    .withGradleArguments(gradleOptions)
+                    .withEnvironmentVariables(environmentVariables)
+                    .withGradleUserHome(gradleUserHome)
+                    .withJavaHome(javaHome)
+                    .withUseHttps(useHttps)
+                    .withWrapperConfiguration(useWrapper, GradleContextBuilder.DEFAULT_WRAPPER_CONFIGURATION_PATHS);
+            String version = versionOverride != null ? versionOverride : gradleVersion;
+            // like URL
+            if (version != null && version.indexOf(':') >= 0) {
+                builder.withGradleDistribution(URI.create(version));
+            } else {
+                builder.withGradleVersion(version);
+            }
+            return builder.build(project);
+        }
+    }
+}
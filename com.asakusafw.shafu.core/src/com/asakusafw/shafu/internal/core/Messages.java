@@ -19,7 +19,12 @@ import org.eclipse.osgi.util.NLS;
 
 final class Messages extends NLS {
     private static final String BUNDLE_NAME = "com.asakusafw.shafu.internal.core.messages"; //$NON-NLS-1$
+    public static String BuildMetricsReporter_infoSummary;
     public static String ExtensionManager_errorNotSubtype;
+    public static String GradleBuildApplication_errorFailedToOpenOutput;
+    public static String GradleBuildApplication_errorInvalidOption;
+    public static String GradleBuildApplication_errorUnknownOption;
+    public static String GradleBuildApplication_infoElapsed;
     static {
         // initialize resource bundle
         NLS.initializeMessages(BUNDLE_NAME, Messages.class);
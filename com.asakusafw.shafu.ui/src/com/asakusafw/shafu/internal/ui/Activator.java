@@ -15,13 +15,16 @@
  */
 package com.asakusafw.shafu.internal.ui;
 
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
-import com.asakusafw.shafu.ui.consoles.ShafuConsole;
-
 /**
  * The activator for this plug-in.
  */
@@ -39,19 +42,45 @@ public class Activator extends AbstractUIPlugin {
 
     private static Activator plugin;
 
-    private ShafuConsole console;
-
     private ExtensionManager extensions;
 
+    private BuildEnvironmentInvalidator invalidator;
+
+    private DaemonWarmUpJob.PreferenceListener warmUpListener;
+
+    private SourceAttachmentJob.ClasspathListener classpathListener;
+
     @Override
     public void start(BundleContext context) throws Exception {
         super.start(context);
         plugin = this;
         extensions = new ExtensionManager();
+        invalidator = new BuildEnvironmentInvalidator();
+        getPreferenceStore().addPropertyChangeListener(invalidator);
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(invalidator, IResourceChangeEvent.POST_CHANGE);
+        warmUpListener = new DaemonWarmUpJob.PreferenceListener();
+        getPreferenceStore().addPropertyChangeListener(warmUpListener);
+        classpathListener = new SourceAttachmentJob.ClasspathListener();
+        JavaCore.addElementChangedListener(classpathListener, ElementChangedEvent.POST_CHANGE);
     }
 
     @Override
     public void stop(BundleContext context) throws Exception {
+        if (classpathListener != null) {
+            JavaCore.removeElementChangedListener(classpathListener);
+            classpathListener = null;
+            Job.getJobManager().cancel(SourceAttachmentJob.class);
+        }
+        if (warmUpListener != null) {
+            getPreferenceStore().removePropertyChangeListener(warmUpListener);
+            warmUpListener = null;
+            Job.getJobManager().cancel(DaemonWarmUpJob.class);
+        }
+        if (invalidator != null) {
+            ResourcesPlugin.getWorkspace().removeResourceChangeListener(invalidator);
+            getPreferenceStore().removePropertyChangeListener(invalidator);
+            invalidator = null;
+        }
         extensions = null;
         plugin = null;
         super.stop(context);
@@ -85,22 +114,6 @@ public class Activator extends AbstractUIPlugin {
         return result;
     }
 
-    /**
-     * Returns the message console for this plug-in.
-     * @return the message console
-     */
-    public synchronized static ShafuConsole getConsole() {
-        Activator service = getDefault();
-        if (service == null) {
-            throw new IllegalStateException();
-        }
-        if (service.console == null) {
-            LogUtil.debug("Initializing Console Service"); //$NON-NLS-1$
-            service.console = new ShafuConsole();
-        }
-        return service.console;
-    }
-
     /**
      * Returns dialog settings for the specified section ID.
      * @param id target section ID
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.ui;
+
+import static com.asakusafw.shafu.internal.ui.preferences.ShafuPreferenceConstants.*;
+import static com.asakusafw.shafu.ui.util.PreferenceUtils.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
+
+import com.asakusafw.shafu.core.gradle.GradleConnectionPool;
+
+/**
+ * Invalidates the cached Gradle build environments when Shafu preferences or Gradle wrapper configurations
+ * are changed.
+ * @since 0.8.0
+ */
+final class BuildEnvironmentInvalidator implements IPropertyChangeListener, IResourceChangeListener {
+
+    /**
+     * The preference keys which may change the Gradle distribution, Gradle user home, or Java home.
+     */
+    static final Set<String> ENVIRONMENT_PREFERENCE_KEYS = new HashSet<>(Arrays.asList(new String[] {
+            KEY_GRADLE_USER_HOME,
+            KEY_JAVA_HOME,
+            KEY_USE_PROJECT_JAVA_HOME,
+            KEY_GRADLE_VERSION,
+            KEY_USE_HTTPS,
+            KEY_USE_WRAPPER_CONFIGURATION,
+            KEY_WRAPPER_CONFIGURATION_PATHS,
+            KEY_GRADLE_DISTRIBUTION,
+    }));
+
+    /**
+     * The project relative paths which may change the Gradle distribution or its settings, in addition to the
+     * Gradle wrapper configuration paths in the preferences.
+     */
+    static final List<IPath> ENVIRONMENT_PATHS = Arrays.asList(new IPath[] {
+            Path.fromPortableString("gradle/wrapper"), //$NON-NLS-1$
+            Path.fromPortableString("gradle.properties"), //$NON-NLS-1$
+    });
+
+    @Override
+    public void propertyChange(PropertyChangeEvent event) {
+        if (ENVIRONMENT_PREFERENCE_KEYS.contains(event.getProperty()) == false) {
+            return;
+        }
+        LogUtil.debug("Preference was changed: {0}", event.getProperty()); //$NON-NLS-1$
+        GradleConnectionPool.getDefault().invalidate();
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        IResourceDelta delta = event.getDelta();
+        if (delta == null) {
+            return;
+        }
+        final List<IPath> paths = getEnvironmentPaths();
+        final boolean[] found = new boolean[1];
+        try {
+            delta.accept(new IResourceDeltaVisitor() {
+                @Override
+                public boolean visit(IResourceDelta child) {
+                    if (found[0]) {
+                        return false;
+                    }
+                    IResource resource = child.getResource();
+                    if (resource.getType() == IResource.ROOT || resource.getType() == IResource.PROJECT) {
+                        return true;
+                    }
+                    // only visits the ancestors and descendants of the environment paths
+                    IPath path = resource.getProjectRelativePath();
+                    for (IPath target : paths) {
+                        if (target.isPrefixOf(path)) {
+                            LogUtil.debug("Gradle wrapper configuration was changed: {0}", resource); //$NON-NLS-1$
+                            found[0] = true;
+                            return false;
+                        }
+                        if (path.isPrefixOf(target)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            });
+        } catch (CoreException e) {
+            LogUtil.log(e.getStatus());
+        }
+        if (found[0]) {
+            GradleConnectionPool.getDefault().invalidate();
+        }
+    }
+
+    private static List<IPath> getEnvironmentPaths() {
+        List<IPath> results = new ArrayList<>(ENVIRONMENT_PATHS);
+        for (String path : decodeToList(Activator.getDefault().getPreferenceStore()
+                .getString(KEY_WRAPPER_CONFIGURATION_PATHS))) {
+            IPath target = Path.fromPortableString(path).makeRelative();
+            if (target.isEmpty() == false) {
+                results.add(target);
+            }
+        }
+        return results;
+    }
+}
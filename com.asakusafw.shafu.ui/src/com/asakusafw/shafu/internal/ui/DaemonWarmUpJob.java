@@ -0,0 +1,184 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.ui;
+
+import static com.asakusafw.shafu.internal.ui.preferences.ShafuPreferenceConstants.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
+import org.gradle.tooling.model.build.BuildEnvironment;
+
+import com.asakusafw.shafu.core.gradle.GradleContext;
+import com.asakusafw.shafu.core.gradle.GradleInspectTask;
+import com.asakusafw.shafu.core.util.StatusUtils;
+import com.asakusafw.shafu.ui.ShafuUi;
+
+/**
+ * Prepares Gradle daemons for the open Gradle projects in background.
+ * This runs a cheap model fetch for each distinct daemon configuration, so that the first build does not pay
+ * the daemon start up cost.
+ * @since 0.8.0
+ */
+public class DaemonWarmUpJob extends Job {
+
+    static final long DEFAULT_DELAY_MILLIS = 2000L;
+
+    private static final List<String> BUILD_SCRIPT_NAMES = Arrays.asList(new String[] {
+            "build.gradle", //$NON-NLS-1$
+            "build.gradle.kts", //$NON-NLS-1$
+            "settings.gradle", //$NON-NLS-1$
+    });
+
+    /**
+     * The preference keys which may make the current daemons incompatible.
+     */
+    static final Set<String> DAEMON_PREFERENCE_KEYS = new HashSet<>(Arrays.asList(new String[] {
+            KEY_WARM_UP_DAEMON,
+            KEY_SYSTEM_PROPERTIES,
+            KEY_GRADLE_USER_HOME,
+            KEY_JAVA_HOME,
+            KEY_USE_PROJECT_JAVA_HOME,
+            KEY_GRADLE_VERSION,
+            KEY_USE_HTTPS,
+            KEY_USE_WRAPPER_CONFIGURATION,
+            KEY_WRAPPER_CONFIGURATION_PATHS,
+            KEY_GRADLE_DISTRIBUTION,
+    }));
+
+    /**
+     * Creates a new instance.
+     */
+    public DaemonWarmUpJob() {
+        super(Messages.DaemonWarmUpJob_name);
+        setPriority(DECORATE);
+    }
+
+    /**
+     * Schedules a new job if daemon warming up is enabled.
+     * The previously scheduled jobs will be canceled.
+     * @param delay the delay in milliseconds
+     */
+    public static void reschedule(long delay) {
+        Job.getJobManager().cancel(DaemonWarmUpJob.class);
+        if (Activator.getDefault().getPreferenceStore().getBoolean(KEY_WARM_UP_DAEMON) == false) {
+            return;
+        }
+        new DaemonWarmUpJob().schedule(delay);
+    }
+
+    @Override
+    public boolean belongsTo(Object family) {
+        return family == DaemonWarmUpJob.class;
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        SubMonitor sub = SubMonitor.convert(monitor, Messages.DaemonWarmUpJob_name, 100);
+        try {
+            List<GradleContext> contexts = collectContexts();
+            sub.setWorkRemaining(contexts.size());
+            for (GradleContext context : contexts) {
+                if (sub.isCanceled()) {
+                    return Status.CANCEL_STATUS;
+                }
+                LogUtil.debug("Warming up Gradle daemon: {0}", context.getProjectDirectory()); //$NON-NLS-1$
+                try {
+                    GradleInspectTask.newInstance(context, BuildEnvironment.class).call(sub.newChild(1));
+                } catch (CoreException e) {
+                    if (StatusUtils.hasCancel(e.getStatus())) {
+                        return Status.CANCEL_STATUS;
+                    }
+                    LogUtil.debug(e.getStatus());
+                }
+            }
+            return Status.OK_STATUS;
+        } finally {
+            monitor.done();
+        }
+    }
+
+    private static List<GradleContext> collectContexts() {
+        Map<List<Object>, GradleContext> results = new LinkedHashMap<>();
+        for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+            if (project.isAccessible() == false || isGradleProject(project) == false) {
+                continue;
+            }
+            GradleContext context = ShafuUi.createContext(project, Collections.<String>emptyList());
+            List<Object> key = Arrays.<Object>asList(
+                    context.getGradleDistribution(),
+                    context.getGradleVersion(),
+                    context.isUseHttps(),
+                    context.getGradleUserHomeDir(),
+                    context.getJavaHomeDir(),
+                    new ArrayList<>(context.getJvmArguments()));
+            if (results.containsKey(key) == false) {
+                results.put(key, context);
+            }
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * Returns whether or not the target project is a Gradle project.
+     * @param project the target project
+     * @return {@code true} if it has any Gradle scripts, otherwise {@code false}
+     */
+    static boolean isGradleProject(IProject project) {
+        IPath location = project.getLocation();
+        if (location == null) {
+            return false;
+        }
+        File directory = location.toFile();
+        for (String name : BUILD_SCRIPT_NAMES) {
+            if (new File(directory, name).isFile()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reschedules {@link DaemonWarmUpJob} when daemon related preferences are changed.
+     */
+    static final class PreferenceListener implements IPropertyChangeListener {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent event) {
+            if (DAEMON_PREFERENCE_KEYS.contains(event.getProperty())) {
+                reschedule(DEFAULT_DELAY_MILLIS);
+            }
+        }
+    }
+}
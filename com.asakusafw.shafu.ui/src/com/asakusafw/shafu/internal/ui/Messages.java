@@ -19,8 +19,10 @@ import org.eclipse.osgi.util.NLS;
 
 final class Messages extends NLS {
     private static final String BUNDLE_NAME = "com.asakusafw.shafu.internal.ui.messages"; //$NON-NLS-1$
+    public static String DaemonWarmUpJob_name;
     public static String ExtensionManager_errorInvalidUrl;
     public static String ExtensionManager_errorNotSubtype;
+    public static String SourceAttachmentJob_name;
     static {
         // initialize resource bundle
         NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.ui;
+
+import org.eclipse.ui.IStartup;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.PlatformUI;
+
+/**
+ * Starts Shafu background services on workbench startup.
+ * @since 0.8.0
+ */
+public class ShafuStartup implements IStartup {
+
+    @Override
+    public void earlyStartup() {
+        DaemonWarmUpJob.reschedule(DaemonWarmUpJob.DEFAULT_DELAY_MILLIS);
+        SourceAttachmentJob.requestAll(SourceAttachmentJob.IDLE_DELAY_MILLIS);
+        final IWorkbench workbench = PlatformUI.getWorkbench();
+        workbench.getDisplay().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                if (workbench.isClosing() == false) {
+                    new SourceAttachmentJob.EditorListener().install(workbench);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,386 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.ui;
+
+import static com.asakusafw.shafu.internal.ui.preferences.ShafuPreferenceConstants.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IPartListener2;
+import org.eclipse.ui.IWindowListener;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.IWorkbenchPartReference;
+import org.eclipse.ui.IWorkbenchWindow;
+
+import com.asakusafw.shafu.core.gradle.GradleProjectLayout;
+import com.asakusafw.shafu.core.gradle.SourceAttachmentTask;
+import com.asakusafw.shafu.core.util.StatusUtils;
+import com.asakusafw.shafu.ui.ShafuUi;
+
+/**
+ * Attaches source artifacts to the library classpath entries in background.
+ * Projects are processed in batches of each Gradle build, after a quiet period since their classpath
+ * was changed, or immediately when a class file in them is opened.
+ * Only the target projects in the batch are resolved, by qualifying the task names with their project paths.
+ * @since 0.8.0
+ * @see SourceAttachmentTask
+ */
+public class SourceAttachmentJob extends Job {
+
+    /**
+     * The quiet period after classpath changes, so that the successive changes are processed at once.
+     */
+    static final long IDLE_DELAY_MILLIS = 30000L;
+
+    static final int BATCH_SIZE = 16;
+
+    private static final SourceAttachmentJob INSTANCE = new SourceAttachmentJob();
+
+    private static final Set<IProject> REQUESTED = new LinkedHashSet<>();
+
+    private static final Map<IProject, List<IClasspathEntry>> ATTEMPTED = new HashMap<>();
+
+    /**
+     * Creates a new instance.
+     */
+    SourceAttachmentJob() {
+        super(Messages.SourceAttachmentJob_name);
+        setPriority(DECORATE);
+    }
+
+    /**
+     * Returns whether or not lazy source attachment is enabled.
+     * @return {@code true} if it is enabled, otherwise {@code false}
+     */
+    public static boolean isEnabled() {
+        return Activator.getDefault().getPreferenceStore().getBoolean(KEY_LAZY_SOURCE_ATTACHMENT);
+    }
+
+    /**
+     * Requests to attach source artifacts to the target projects.
+     * This does nothing if lazy source attachment is disabled.
+     * @param projects the target projects
+     * @param delay the delay in milliseconds
+     */
+    public static void request(Collection<IProject> projects, long delay) {
+        if (isEnabled() == false || projects.isEmpty()) {
+            return;
+        }
+        synchronized (REQUESTED) {
+            REQUESTED.addAll(projects);
+        }
+        LogUtil.debug("Requested source attachments: {0} (delay={1}ms)", projects, delay); //$NON-NLS-1$
+        INSTANCE.schedule(delay);
+    }
+
+    /**
+     * Requests to attach source artifacts to all projects in the workspace.
+     * @param delay the delay in milliseconds
+     */
+    public static void requestAll(long delay) {
+        request(Arrays.asList(ResourcesPlugin.getWorkspace().getRoot().getProjects()), delay);
+    }
+
+    @Override
+    public boolean belongsTo(Object family) {
+        return family == SourceAttachmentJob.class;
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        SubMonitor sub = SubMonitor.convert(monitor, Messages.SourceAttachmentJob_name, 100);
+        try {
+            while (true) {
+                Map<File, List<IJavaProject>> batch = nextBatch();
+                if (batch.isEmpty()) {
+                    return Status.OK_STATUS;
+                }
+                sub.setWorkRemaining(100);
+                SubMonitor batchMonitor = sub.newChild(50).setWorkRemaining(batch.size());
+                for (Map.Entry<File, List<IJavaProject>> entry : batch.entrySet()) {
+                    if (batchMonitor.isCanceled()) {
+                        return Status.CANCEL_STATUS;
+                    }
+                    try {
+                        attach(batchMonitor.newChild(1), entry.getKey(), entry.getValue());
+                    } catch (CoreException e) {
+                        if (StatusUtils.hasCancel(e.getStatus())) {
+                            return Status.CANCEL_STATUS;
+                        }
+                        LogUtil.debug(e.getStatus());
+                    }
+                }
+            }
+        } finally {
+            monitor.done();
+        }
+    }
+
+    private static Map<File, List<IJavaProject>> nextBatch() {
+        Map<File, List<IJavaProject>> results = new LinkedHashMap<>();
+        int count = 0;
+        synchronized (REQUESTED) {
+            for (Iterator<IProject> iter = REQUESTED.iterator(); iter.hasNext() && count < BATCH_SIZE;) {
+                IProject project = iter.next();
+                iter.remove();
+                IJavaProject javaProject = findTarget(project);
+                if (javaProject == null) {
+                    continue;
+                }
+                File root = ShafuUi.getRootProjectDirectory(project.getLocation().toFile());
+                List<IJavaProject> members = results.get(root);
+                if (members == null) {
+                    members = new ArrayList<>();
+                    results.put(root, members);
+                }
+                members.add(javaProject);
+                count++;
+            }
+        }
+        return results;
+    }
+
+    private static IJavaProject findTarget(IProject project) {
+        IPath location = project.getLocation();
+        if (project.isAccessible() == false || location == null
+                || DaemonWarmUpJob.isGradleProject(project) == false) {
+            return null;
+        }
+        try {
+            if (project.hasNature(JavaCore.NATURE_ID) == false) {
+                return null;
+            }
+            IJavaProject javaProject = JavaCore.create(project);
+            if (SourceAttachmentTask.hasMissingSources(javaProject) == false) {
+                return null;
+            }
+            List<IClasspathEntry> classpath = Arrays.asList(javaProject.getRawClasspath());
+            synchronized (ATTEMPTED) {
+                // avoids resolving the same classpath again, whose rest entries do not have any source artifacts
+                if (classpath.equals(ATTEMPTED.get(project))) {
+                    return null;
+                }
+            }
+            return javaProject;
+        } catch (CoreException e) {
+            LogUtil.debug(e.getStatus());
+            return null;
+        }
+    }
+
+    private static void attach(
+            SubMonitor monitor,
+            File rootProjectDirectory, List<IJavaProject> projects) throws CoreException {
+        LogUtil.debug("Attaching source artifacts: {0} {1}", rootProjectDirectory, projects); //$NON-NLS-1$
+        monitor.setWorkRemaining(projects.size() + 2);
+        GradleProjectLayout layout = GradleProjectLayout.load(
+                monitor.newChild(1),
+                ShafuUi.createContext(rootProjectDirectory));
+        if (layout != null && layout.getRootProjectDirectory().equals(rootProjectDirectory) == false) {
+            layout = null;
+        }
+        List<IJavaProject> members = new ArrayList<>();
+        List<String> taskNames = new ArrayList<>();
+        List<IJavaProject> rest = new ArrayList<>();
+        for (IJavaProject project : projects) {
+            String path = layout == null
+                    ? null
+                    : layout.getProjectPath(project.getProject().getLocation().toFile().getAbsoluteFile());
+            if (path == null) {
+                rest.add(project);
+            } else {
+                members.add(project);
+                taskNames.add(ShafuUi.qualifyTaskName(path, SourceAttachmentTask.TASK_RESOLVE_SOURCES));
+            }
+        }
+        int attachedCount = 0;
+        try {
+            if (members.isEmpty() == false) {
+                SourceAttachmentTask task = new SourceAttachmentTask(
+                        ShafuUi.createContext(rootProjectDirectory), members, taskNames);
+                task.run(monitor.newChild(1));
+                attachedCount += task.getAttachedCount();
+            }
+            // falls back to resolve each project individually if its project path is unknown
+            for (IJavaProject project : rest) {
+                SourceAttachmentTask task = new SourceAttachmentTask(
+                        ShafuUi.createContext(project.getProject().getLocation().toFile()),
+                        Collections.singletonList(project));
+                task.run(monitor.newChild(1));
+                attachedCount += task.getAttachedCount();
+            }
+        } finally {
+            synchronized (ATTEMPTED) {
+                for (IJavaProject project : projects) {
+                    try {
+                        ATTEMPTED.put(project.getProject(), Arrays.asList(project.getRawClasspath()));
+                    } catch (JavaModelException e) {
+                        ATTEMPTED.remove(project.getProject());
+                    }
+                }
+            }
+        }
+        LogUtil.debug("Attached source artifacts: {0} ({1} entries)", //$NON-NLS-1$
+                rootProjectDirectory,
+                attachedCount);
+    }
+
+    /**
+     * Requests source attachments when project classpaths are changed.
+     */
+    static final class ClasspathListener implements IElementChangedListener {
+
+        @Override
+        public void elementChanged(ElementChangedEvent event) {
+            if (isEnabled() == false) {
+                return;
+            }
+            List<IProject> projects = new ArrayList<>();
+            for (IJavaElementDelta delta : event.getDelta().getAffectedChildren()) {
+                if (delta.getElement().getElementType() != IJavaElement.JAVA_PROJECT) {
+                    continue;
+                }
+                if (delta.getKind() == IJavaElementDelta.ADDED
+                        || (delta.getFlags() & IJavaElementDelta.F_CLASSPATH_CHANGED) != 0) {
+                    projects.add(delta.getElement().getJavaProject().getProject());
+                }
+            }
+            request(projects, IDLE_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Requests source attachments immediately when class files are opened.
+     */
+    static final class EditorListener implements IWindowListener, IPartListener2 {
+
+        /**
+         * Starts watching the editors in the target workbench.
+         * This must be invoked in the UI thread.
+         * @param workbench the target workbench
+         */
+        void install(IWorkbench workbench) {
+            workbench.addWindowListener(this);
+            for (IWorkbenchWindow window : workbench.getWorkbenchWindows()) {
+                windowOpened(window);
+            }
+        }
+
+        @Override
+        public void windowOpened(IWorkbenchWindow window) {
+            window.getPartService().addPartListener(this);
+        }
+
+        @Override
+        public void windowClosed(IWorkbenchWindow window) {
+            window.getPartService().removePartListener(this);
+        }
+
+        @Override
+        public void windowActivated(IWorkbenchWindow window) {
+            return;
+        }
+
+        @Override
+        public void windowDeactivated(IWorkbenchWindow window) {
+            return;
+        }
+
+        @Override
+        public void partOpened(IWorkbenchPartReference partRef) {
+            if (isEnabled() == false) {
+                return;
+            }
+            IWorkbenchPart part = partRef.getPart(false);
+            if ((part instanceof IEditorPart) == false) {
+                return;
+            }
+            Object element = ((IEditorPart) part).getEditorInput().getAdapter(IJavaElement.class);
+            if (element instanceof IJavaElement
+                    && ((IJavaElement) element).getElementType() == IJavaElement.CLASS_FILE) {
+                IJavaProject project = ((IJavaElement) element).getJavaProject();
+                if (project != null) {
+                    request(Arrays.asList(project.getProject()), 0L);
+                }
+            }
+        }
+
+        @Override
+        public void partActivated(IWorkbenchPartReference partRef) {
+            return;
+        }
+
+        @Override
+        public void partBroughtToTop(IWorkbenchPartReference partRef) {
+            return;
+        }
+
+        @Override
+        public void partClosed(IWorkbenchPartReference partRef) {
+            return;
+        }
+
+        @Override
+        public void partDeactivated(IWorkbenchPartReference partRef) {
+            return;
+        }
+
+        @Override
+        public void partHidden(IWorkbenchPartReference partRef) {
+            return;
+        }
+
+        @Override
+        public void partVisible(IWorkbenchPartReference partRef) {
+            return;
+        }
+
+        @Override
+        public void partInputChanged(IWorkbenchPartReference partRef) {
+            return;
+        }
+    }
+}
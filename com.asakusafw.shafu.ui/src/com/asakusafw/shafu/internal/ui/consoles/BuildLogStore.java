@@ -0,0 +1,167 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.ui.consoles;
+
+import static com.asakusafw.shafu.internal.ui.preferences.ShafuPreferenceConstants.*;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.asakusafw.shafu.internal.ui.Activator;
+import com.asakusafw.shafu.internal.ui.LogUtil;
+
+/**
+ * Manages log files of individual builds.
+ * Each log file is named after the time when its build was started, and only the recent ones are kept.
+ * The log files are not compressed, so that they can be indexed and searched in place.
+ * @since 0.8.0
+ */
+public final class BuildLogStore {
+
+    private static final String PATH_DIRECTORY = "logs"; //$NON-NLS-1$
+
+    private static final String PREFIX = "build-"; //$NON-NLS-1$
+
+    private static final String SUFFIX = ".log"; //$NON-NLS-1$
+
+    private static final String TIMESTAMP_FORMAT = "yyyyMMdd-HHmmss-SSS"; //$NON-NLS-1$
+
+    private static final int MAX_ATTEMPTS = 100;
+
+    private final File directory;
+
+    private final Set<File> writing = new HashSet<>();
+
+    /**
+     * Creates a new instance.
+     * @param directory the base directory
+     */
+    public BuildLogStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the default instance.
+     * @return the default instance
+     */
+    public static BuildLogStore getDefault() {
+        return Lazy.INSTANCE;
+    }
+
+    /**
+     * Returns whether or not build logs are recorded.
+     * @return {@code true} if they are recorded, otherwise {@code false}
+     */
+    public boolean isEnabled() {
+        return getRetention() > 0;
+    }
+
+    private static int getRetention() {
+        return Activator.getDefault().getPreferenceStore().getInt(KEY_BUILD_LOG_RETENTION);
+    }
+
+    /**
+     * Creates a new empty log file.
+     * The created file will not be {@link #prune() pruned} until it is {@link #release(File) released}.
+     * @return the created file
+     * @throws IOException if failed to create the file
+     */
+    public File create() throws IOException {
+        if (directory.mkdirs() == false && directory.isDirectory() == false) {
+            throw new IOException(directory.getPath());
+        }
+        String timestamp = new SimpleDateFormat(TIMESTAMP_FORMAT).format(new Date());
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            String name = i == 0 ? timestamp : String.format("%s-%d", timestamp, i); //$NON-NLS-1$
+            File file = new File(directory, PREFIX + name + SUFFIX);
+            if (file.createNewFile()) {
+                synchronized (writing) {
+                    writing.add(file);
+                }
+                return file;
+            }
+        }
+        throw new IOException(directory.getPath());
+    }
+
+    /**
+     * Returns the recorded log files.
+     * @return the log files, from the newest one
+     */
+    public List<File> list() {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX) && file.isFile();
+            }
+        });
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        // the file names are ordered by their timestamps
+        Arrays.sort(files, Collections.reverseOrder());
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Notifies that the log file was finished.
+     * @param file the log file which was {@link #create() created} by this store
+     */
+    public void release(File file) {
+        synchronized (writing) {
+            writing.remove(file);
+        }
+    }
+
+    /**
+     * Removes the old log files which exceed the retention limit.
+     * This never removes the log files which are still being written.
+     */
+    public void prune() {
+        int retention = getRetention();
+        List<File> files = list();
+        for (int i = Math.max(retention, 0); i < files.size(); i++) {
+            File file = files.get(i);
+            synchronized (writing) {
+                if (writing.contains(file)) {
+                    continue;
+                }
+            }
+            if (file.delete() == false && file.exists()) {
+                LogUtil.debug("Failed to delete build log: {0}", file); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private static final class Lazy {
+
+        static final BuildLogStore INSTANCE = new BuildLogStore(
+                Activator.getDefault().getStateLocation().append(PATH_DIRECTORY).toFile());
+
+        private Lazy() {
+            return;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.ui.consoles;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import com.asakusafw.shafu.internal.ui.LogUtil;
+
+/**
+ * A line index of log files.
+ * This opens the target file, and then {@link #build(IProgressMonitor) builds} the line offsets
+ * incrementally, so that the indexed lines are available even while building the rest of the index.
+ * The file is read through a channel instead of mapping it into memory, so that {@link #close()} releases it
+ * immediately and then it can be deleted on any platforms.
+ * Only the first {@link Integer#MAX_VALUE} bytes of the file are available.
+ * @since 0.8.0
+ */
+public final class LogFileIndex implements Closeable {
+
+    /**
+     * The maximum number of characters of each line.
+     */
+    public static final int MAX_LINE_LENGTH = 4096;
+
+    private static final Charset ENCODING = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int CHECK_INTERVAL = 1024 * 1024;
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final int size;
+
+    private volatile int[] offsets = new int[INITIAL_CAPACITY];
+
+    private volatile int lineCount;
+
+    private volatile boolean complete;
+
+    private final CharsetDecoder decoder = ENCODING.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Opens the target file.
+     * The contents appended after this are not available.
+     * @param file the target file
+     * @throws IOException if failed to open the file
+     */
+    public LogFileIndex(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        boolean success = false;
+        try {
+            this.size = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+            success = true;
+        } finally {
+            if (success == false) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the target file.
+     * @return the target file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Builds the line index.
+     * @param monitor the progress monitor
+     * @throws IOException if failed to read the file, or this was already closed
+     * @throws OperationCanceledException if the operation was canceled
+     */
+    public void build(IProgressMonitor monitor) throws IOException {
+        if (complete) {
+            return;
+        }
+        monitor.beginTask(file.getName(), Math.max(size / CHECK_INTERVAL, 1));
+        try {
+            ByteBuffer chunk = ByteBuffer.allocate(CHECK_INTERVAL);
+            int[] current = offsets;
+            int count = 0;
+            int start = 0;
+            for (int position = 0; position < size;) {
+                chunk.clear().limit(Math.min(CHECK_INTERVAL, size - position));
+                read(chunk, position);
+                for (int i = 0, n = chunk.position(); i < n; i++) {
+                    if (chunk.get(i) == '\n') {
+                        current = put(current, count++, start);
+                        start = position + i + 1;
+                    }
+                }
+                position += chunk.position();
+                publish(current, count);
+                monitor.worked(1);
+                if (monitor.isCanceled()) {
+                    throw new OperationCanceledException();
+                }
+            }
+            if (start < size) {
+                current = put(current, count++, start);
+            }
+            publish(current, count);
+            complete = true;
+        } finally {
+            monitor.done();
+        }
+    }
+
+    private static int[] put(int[] array, int index, int value) {
+        int[] result = array;
+        if (index >= result.length) {
+            result = Arrays.copyOf(result, result.length * 2);
+        }
+        result[index] = value;
+        return result;
+    }
+
+    private void publish(int[] current, int count) {
+        // publishes the array before its length
+        offsets = current;
+        lineCount = count;
+    }
+
+    /**
+     * Returns whether or not the line index has been completed.
+     * @return {@code true} if it has been completed, otherwise {@code false}
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the number of available lines.
+     * @return the number of lines which have been indexed
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the contents of the target line.
+     * Too long lines will be cut off at {@link #MAX_LINE_LENGTH}.
+     * @param index the line index (0-origin)
+     * @return the line contents without line terminators, or an empty string if the file is not available
+     * @throws IndexOutOfBoundsException if the line is not available
+     */
+    public String getLine(int index) {
+        int count = lineCount;
+        int[] current = offsets;
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        int start = current[index];
+        int end = index + 1 < count ? current[index + 1] : size;
+        ByteBuffer slice = ByteBuffer.allocate(Math.min(end, start + MAX_LINE_LENGTH * 4) - start);
+        try {
+            read(slice, start);
+        } catch (IOException e) {
+            LogUtil.debug("Failed to read build log: {0} ({1})", file, e.toString()); //$NON-NLS-1$
+            return ""; //$NON-NLS-1$
+        }
+        slice.flip();
+        // the next line may not be indexed yet
+        for (int i = 0, n = slice.limit(); i < n; i++) {
+            if (slice.get(i) == '\n') {
+                slice.limit(i);
+                break;
+            }
+        }
+        while (slice.limit() > 0 && slice.get(slice.limit() - 1) == '\r') {
+            slice.limit(slice.limit() - 1);
+        }
+        String line;
+        synchronized (decoder) {
+            try {
+                CharBuffer chars = decoder.reset().decode(slice);
+                line = chars.toString();
+            } catch (CharacterCodingException e) {
+                // never occur because of CodingErrorAction.REPLACE
+                throw new IllegalStateException(e);
+            }
+        }
+        if (line.length() > MAX_LINE_LENGTH) {
+            line = line.substring(0, MAX_LINE_LENGTH);
+        }
+        return line;
+    }
+
+    private void read(ByteBuffer destination, int position) throws IOException {
+        int offset = position;
+        while (destination.hasRemaining()) {
+            int read = channel.read(destination, offset);
+            if (read < 0) {
+                throw new EOFException(file.getPath());
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Finds a line which contains the text.
+     * The search is limited to the lines which have been already indexed.
+     * @param text the text to find
+     * @param from the first line index to search
+     * @param monitor the progress monitor
+     * @return the found line index, or {@code -1} if it is not found
+     * @throws OperationCanceledException if the operation was canceled
+     */
+    public int find(String text, int from, IProgressMonitor monitor) {
+        String pattern = text.toLowerCase(Locale.ENGLISH);
+        int count = lineCount;
+        for (int i = Math.max(from, 0); i < count; i++) {
+            if (i % INITIAL_CAPACITY == 0 && monitor.isCanceled()) {
+                throw new OperationCanceledException();
+            }
+            if (getLine(i).toLowerCase(Locale.ENGLISH).contains(pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        lineCount = 0;
+        offsets = new int[0];
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LogUtil.debug("Failed to close build log: {0} ({1})", file, e.toString()); //$NON-NLS-1$
+        }
+    }
+}
@@ -19,7 +19,9 @@ import org.eclipse.osgi.util.NLS;
 
 final class Messages extends NLS {
     private static final String BUNDLE_NAME = "com.asakusafw.shafu.internal.ui.consoles.messages"; //$NON-NLS-1$
-    public static String ShafuConsoleManager_errorNotAvailable;
+    public static String ShafuConsoleManager_consoleName;
+    public static String ShafuConsolePageParticipant_actionOpenFullLog;
+    public static String ShafuConsolePageParticipant_actionTerminate;
     static {
         // initialize resource bundle
         NLS.initializeMessages(BUNDLE_NAME, Messages.class);
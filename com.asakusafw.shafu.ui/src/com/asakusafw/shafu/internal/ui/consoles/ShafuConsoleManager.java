@@ -15,60 +15,171 @@
  */
 package com.asakusafw.shafu.internal.ui.consoles;
 
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.ui.console.ConsolePlugin;
 import org.eclipse.ui.console.IConsole;
 import org.eclipse.ui.console.IConsoleFactory;
 import org.eclipse.ui.console.IConsoleManager;
 
-import com.asakusafw.shafu.internal.ui.Activator;
+import com.asakusafw.shafu.internal.ui.LogUtil;
 import com.asakusafw.shafu.ui.consoles.ShafuConsole;
 
 /**
  * Provides {@link ShafuConsole}.
+ * Each build has its own console, and the console of the latest build is always shown by
+ * {@link #showConsole()} and the console factory.
+ * Consoles of the finished builds are removed from the oldest one
+ * if the number of consoles exceeds {@link #KEY_CONSOLE_LIMIT the limit}.
+ * @version 0.8.0
  */
 public class ShafuConsoleManager implements IConsoleFactory {
 
     /**
-     * Returns the console.
+     * The system property key of the maximum number of consoles to keep.
+     * @since 0.8.0
+     */
+    public static final String KEY_CONSOLE_LIMIT = "com.asakusafw.shafu.ui.console.limit"; //$NON-NLS-1$
+
+    static final int DEFAULT_CONSOLE_LIMIT = 5;
+
+    private static final LinkedList<ShafuConsole> CONSOLES = new LinkedList<>();
+
+    private static ShafuConsole latest;
+
+    /**
+     * Returns the console of the latest build.
+     * If there are no such consoles, this creates a new one.
      * @return the console
-     * @throws IllegalStateException if the console is not enabled
      */
     public static ShafuConsole getConsole() {
-        ShafuConsole console = Activator.getConsole();
-        if (console != null) {
-            return console;
+        synchronized (CONSOLES) {
+            if (latest != null) {
+                return latest;
+            }
         }
-        throw new IllegalStateException(Messages.ShafuConsoleManager_errorNotAvailable);
+        return newConsole(null, null);
     }
 
     /**
-     * Shows the console.
+     * Creates a new console and makes it as the latest one.
+     * @param title the console title, or {@code null} to use the default console name
+     * @param job the build job to bind to the created console, or {@code null} if it is not bound
+     * @return the created console
+     * @see ShafuConsole#bindJob(Job)
+     * @since 0.8.0
      */
-    public static void showConsole() {
-        ShafuConsole console = Activator.getConsole();
-        if (console != null) {
-            openConsole0();
-            IConsoleManager manager = ConsolePlugin.getDefault().getConsoleManager();
-            manager.showConsoleView(console);
-            console.activate();
+    public static ShafuConsole newConsole(String title, Job job) {
+        String name = title == null
+                ? ShafuConsole.NAME
+                : MessageFormat.format(Messages.ShafuConsoleManager_consoleName, ShafuConsole.NAME, title);
+        ShafuConsole console = new ShafuConsole(name);
+        // binds the job before registration so that the running console is never evicted
+        console.bindJob(job);
+        IConsoleManager manager = ConsolePlugin.getDefault().getConsoleManager();
+        List<ShafuConsole> evicted;
+        synchronized (CONSOLES) {
+            manager.addConsoles(new IConsole[] { console });
+            CONSOLES.addLast(console);
+            latest = console;
+            evicted = collectEvicted();
+        }
+        if (evicted.isEmpty() == false) {
+            LogUtil.debug("Removing consoles: {0}", evicted); //$NON-NLS-1$
+            manager.removeConsoles(evicted.toArray(new IConsole[evicted.size()]));
+        }
+        return console;
+    }
+
+    private static List<ShafuConsole> collectEvicted() {
+        assert Thread.holdsLock(CONSOLES);
+        List<IConsole> registered = Arrays.asList(ConsolePlugin.getDefault().getConsoleManager().getConsoles());
+        List<ShafuConsole> results = new ArrayList<>();
+        for (Iterator<ShafuConsole> iter = CONSOLES.iterator(); iter.hasNext();) {
+            ShafuConsole console = iter.next();
+            if (console != latest && registered.contains(console) == false) {
+                // already removed by users
+                iter.remove();
+            }
+        }
+        // iterates from the oldest one
+        for (Iterator<ShafuConsole> iter = CONSOLES.iterator(); iter.hasNext();) {
+            if (CONSOLES.size() <= Lazy.CONSOLE_LIMIT) {
+                break;
+            }
+            ShafuConsole console = iter.next();
+            if (console != latest && console.isRunning() == false) {
+                iter.remove();
+                results.add(console);
+            }
         }
+        return results;
+    }
+
+    /**
+     * Shows the console of the latest build.
+     */
+    public static void showConsole() {
+        showConsole(getConsole());
+    }
+
+    /**
+     * Shows the target console.
+     * @param console the target console
+     * @since 0.8.0
+     */
+    public static void showConsole(ShafuConsole console) {
+        openConsole0(console);
+        IConsoleManager manager = ConsolePlugin.getDefault().getConsoleManager();
+        manager.showConsoleView(console);
+        console.activate();
     }
 
     @Override
     public void openConsole() {
-        openConsole0();
+        showConsole();
     }
 
-    private static void openConsole0() {
-        ShafuConsole console = Activator.getConsole();
-        if (console != null) {
-            IConsoleManager manager = ConsolePlugin.getDefault().getConsoleManager();
-            for (IConsole other : manager.getConsoles()) {
-                if (console == other) {
-                    return;
+    private static void openConsole0(ShafuConsole console) {
+        IConsoleManager manager = ConsolePlugin.getDefault().getConsoleManager();
+        for (IConsole other : manager.getConsoles()) {
+            if (console == other) {
+                return;
+            }
+        }
+        manager.addConsoles(new IConsole[] { console });
+    }
+
+    private static final class Lazy {
+
+        static final int CONSOLE_LIMIT;
+        static {
+            String value = System.getProperty(KEY_CONSOLE_LIMIT);
+            int result = DEFAULT_CONSOLE_LIMIT;
+            if (value != null && value.trim().isEmpty() == false) {
+                try {
+                    result = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    LogUtil.log(IStatus.ERROR,
+                            MessageFormat.format(
+                                    "Invalid console limit: {0}={1}", //$NON-NLS-1$
+                                    KEY_CONSOLE_LIMIT,
+                                    value),
+                            e);
                 }
             }
-            manager.addConsoles(new IConsole[] { console });
+            CONSOLE_LIMIT = Math.max(result, 1);
+        }
+
+        private Lazy() {
+            return;
         }
     }
 }
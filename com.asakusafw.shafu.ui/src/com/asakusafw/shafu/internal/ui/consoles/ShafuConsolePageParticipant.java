@@ -0,0 +1,165 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.ui.consoles;
+
+import java.io.File;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.console.IConsole;
+import org.eclipse.ui.console.IConsoleConstants;
+import org.eclipse.ui.console.IConsolePageParticipant;
+import org.eclipse.ui.part.IPageBookViewPage;
+
+import com.asakusafw.shafu.internal.ui.Activator;
+import com.asakusafw.shafu.internal.ui.dialogs.BuildLogDialog;
+import com.asakusafw.shafu.ui.consoles.ShafuConsole;
+
+/**
+ * Contributes actions to {@link ShafuConsole} pages.
+ * @since 0.8.0
+ */
+public class ShafuConsolePageParticipant implements IConsolePageParticipant {
+
+    private ShafuConsole console;
+
+    private TerminateAction terminateAction;
+
+    private OpenFullLogAction openFullLogAction;
+
+    private IPropertyChangeListener listener;
+
+    @Override
+    public void init(IPageBookViewPage page, IConsole target) {
+        if ((target instanceof ShafuConsole) == false) {
+            return;
+        }
+        this.console = (ShafuConsole) target;
+        this.terminateAction = new TerminateAction(console);
+        this.openFullLogAction = new OpenFullLogAction(console, page.getSite().getShell());
+        this.listener = new IPropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                String property = event.getProperty();
+                if (ShafuConsole.P_RUNNING.equals(property) || ShafuConsole.P_TRUNCATED.equals(property)) {
+                    Activator.getDisplay().asyncExec(new Runnable() {
+                        @Override
+                        public void run() {
+                            TerminateAction action = terminateAction;
+                            if (action != null) {
+                                action.update();
+                            }
+                            OpenFullLogAction other = openFullLogAction;
+                            if (other != null) {
+                                other.update();
+                            }
+                        }
+                    });
+                }
+            }
+        };
+        console.addPropertyChangeListener(listener);
+        IToolBarManager toolBar = page.getSite().getActionBars().getToolBarManager();
+        toolBar.appendToGroup(IConsoleConstants.LAUNCH_GROUP, terminateAction);
+        toolBar.appendToGroup(IConsoleConstants.OUTPUT_GROUP, openFullLogAction);
+    }
+
+    @Override
+    public void dispose() {
+        if (console != null) {
+            console.removePropertyChangeListener(listener);
+        }
+        console = null;
+        terminateAction = null;
+        openFullLogAction = null;
+        listener = null;
+    }
+
+    @Override
+    public void activated() {
+        return;
+    }
+
+    @Override
+    public void deactivated() {
+        return;
+    }
+
+    @Override
+    public Object getAdapter(@SuppressWarnings("rawtypes") Class adapter) {
+        return null;
+    }
+
+    private static final class TerminateAction extends Action {
+
+        private final ShafuConsole console;
+
+        TerminateAction(ShafuConsole console) {
+            super(Messages.ShafuConsolePageParticipant_actionTerminate);
+            this.console = console;
+            ISharedImages images = PlatformUI.getWorkbench().getSharedImages();
+            setImageDescriptor(images.getImageDescriptor(ISharedImages.IMG_ELCL_STOP));
+            setDisabledImageDescriptor(images.getImageDescriptor(ISharedImages.IMG_ELCL_STOP_DISABLED));
+            setToolTipText(Messages.ShafuConsolePageParticipant_actionTerminate);
+            update();
+        }
+
+        void update() {
+            setEnabled(console.isRunning());
+        }
+
+        @Override
+        public void run() {
+            console.terminate();
+        }
+    }
+
+    private static final class OpenFullLogAction extends Action {
+
+        private final ShafuConsole console;
+
+        private final Shell shell;
+
+        OpenFullLogAction(ShafuConsole console, Shell shell) {
+            super(Messages.ShafuConsolePageParticipant_actionOpenFullLog);
+            this.console = console;
+            this.shell = shell;
+            ISharedImages images = PlatformUI.getWorkbench().getSharedImages();
+            setImageDescriptor(images.getImageDescriptor(ISharedImages.IMG_OBJ_FILE));
+            setToolTipText(Messages.ShafuConsolePageParticipant_actionOpenFullLog);
+            update();
+        }
+
+        void update() {
+            // the build log will be created after the build was started
+            setEnabled(console.isRunning() || console.getFullLog() != null);
+        }
+
+        @Override
+        public void run() {
+            File file = console.getFullLog();
+            if (file == null) {
+                return;
+            }
+            new BuildLogDialog(shell, file).open();
+        }
+    }
+}
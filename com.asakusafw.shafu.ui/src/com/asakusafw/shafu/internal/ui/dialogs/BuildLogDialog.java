@@ -0,0 +1,439 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.ui.dialogs;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.jface.layout.GridDataFactory;
+import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+
+import com.asakusafw.shafu.internal.ui.Activator;
+import com.asakusafw.shafu.internal.ui.LogUtil;
+import com.asakusafw.shafu.internal.ui.consoles.BuildLogStore;
+import com.asakusafw.shafu.internal.ui.consoles.LogFileIndex;
+
+/**
+ * Shows the recorded build logs.
+ * Log files are memory mapped and their lines are indexed in background,
+ * so that the indexed lines are shown immediately even if the log file is very large.
+ * @since 0.8.0
+ */
+public class BuildLogDialog extends Dialog {
+
+    private static final int REFRESH_INTERVAL_MILLIS = 200;
+
+    private static final int MAX_SEARCH_LOGS = 10;
+
+    private static final int MAX_SEARCH_RESULTS = 1000;
+
+    private final File initialFile;
+
+    private final List<File> logs;
+
+    private Combo logField;
+
+    private Text findField;
+
+    private Table lineTable;
+
+    private Label statusLabel;
+
+    private Table resultTable;
+
+    LogFileIndex index;
+
+    private Job indexJob;
+
+    private int pendingLine = -1;
+
+    private boolean refreshScheduled;
+
+    private final Runnable refresher = new Runnable() {
+        @Override
+        public void run() {
+            refreshScheduled = false;
+            refresh();
+        }
+    };
+
+    /**
+     * Creates a new instance.
+     * @param parentShell the parent shell
+     * @param file the log file to show first, or {@code null} to show the latest one
+     */
+    public BuildLogDialog(Shell parentShell, File file) {
+        super(parentShell);
+        this.logs = new ArrayList<>(BuildLogStore.getDefault().list());
+        if (file != null && logs.contains(file) == false) {
+            logs.add(0, file);
+        }
+        this.initialFile = file != null ? file : (logs.isEmpty() ? null : logs.get(0));
+    }
+
+    @Override
+    protected boolean isResizable() {
+        return true;
+    }
+
+    @Override
+    protected Control createDialogArea(Composite parent) {
+        getShell().setText(Messages.BuildLogDialog_title);
+        Composite pane = new Composite(parent, SWT.NONE);
+        pane.setLayout(new GridLayout(4, false));
+        pane.setLayoutData(GridDataFactory.fillDefaults().grab(true, true).create());
+
+        Label logLabel = new Label(pane, SWT.NONE);
+        logLabel.setText(Messages.BuildLogDialog_logLabel);
+        logField = new Combo(pane, SWT.READ_ONLY);
+        logField.setLayoutData(GridDataFactory.fillDefaults().grab(true, false).span(3, 1).create());
+        for (File file : logs) {
+            logField.add(file.getName());
+        }
+        logField.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                int selection = logField.getSelectionIndex();
+                if (selection >= 0) {
+                    showLog(logs.get(selection), -1);
+                }
+            }
+        });
+
+        Label findLabel = new Label(pane, SWT.NONE);
+        findLabel.setText(Messages.BuildLogDialog_findLabel);
+        findField = new Text(pane, SWT.BORDER | SWT.SINGLE);
+        findField.setLayoutData(GridDataFactory.fillDefaults().grab(true, false).create());
+        Button findButton = new Button(pane, SWT.PUSH);
+        findButton.setText(Messages.BuildLogDialog_findNextButton);
+        findButton.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                findNext();
+            }
+        });
+        Button searchButton = new Button(pane, SWT.PUSH);
+        searchButton.setText(Messages.BuildLogDialog_searchButton);
+        searchButton.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                searchRecentLogs();
+            }
+        });
+
+        lineTable = new Table(pane, SWT.VIRTUAL | SWT.SINGLE | SWT.FULL_SELECTION | SWT.BORDER);
+        lineTable.setLayoutData(GridDataFactory.fillDefaults()
+                .grab(true, true)
+                .span(4, 1)
+                .hint(convertWidthInCharsToPixels(100), convertHeightInCharsToPixels(24))
+                .create());
+        lineTable.addListener(SWT.SetData, new Listener() {
+            @Override
+            public void handleEvent(Event event) {
+                TableItem item = (TableItem) event.item;
+                LogFileIndex current = index;
+                if (current != null && event.index < current.getLineCount()) {
+                    item.setText(current.getLine(event.index));
+                }
+            }
+        });
+
+        statusLabel = new Label(pane, SWT.NONE);
+        statusLabel.setLayoutData(GridDataFactory.fillDefaults().grab(true, false).span(4, 1).create());
+
+        resultTable = new Table(pane, SWT.SINGLE | SWT.FULL_SELECTION | SWT.BORDER);
+        resultTable.setHeaderVisible(true);
+        resultTable.setLayoutData(GridDataFactory.fillDefaults()
+                .grab(true, false)
+                .span(4, 1)
+                .hint(SWT.DEFAULT, convertHeightInCharsToPixels(8))
+                .create());
+        createColumn(resultTable, Messages.BuildLogDialog_columnLog, 24);
+        createColumn(resultTable, Messages.BuildLogDialog_columnLine, 8);
+        createColumn(resultTable, Messages.BuildLogDialog_columnText, 64);
+        resultTable.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                TableItem[] selection = resultTable.getSelection();
+                if (selection.length == 1) {
+                    show((Match) selection[0].getData());
+                }
+            }
+        });
+
+        applyDialogFont(pane);
+        lineTable.setFont(JFaceResources.getTextFont());
+        if (initialFile == null) {
+            statusLabel.setText(Messages.BuildLogDialog_statusNoLogs);
+        } else {
+            logField.select(logs.indexOf(initialFile));
+            showLog(initialFile, -1);
+        }
+        return pane;
+    }
+
+    private void createColumn(Table table, String title, int widthInChars) {
+        TableColumn column = new TableColumn(table, SWT.NONE);
+        column.setText(title);
+        column.setWidth(convertWidthInCharsToPixels(widthInChars));
+    }
+
+    @Override
+    protected void createButtonsForButtonBar(Composite parent) {
+        createButton(parent, IDialogConstants.OK_ID, IDialogConstants.CLOSE_LABEL, true);
+    }
+
+    @Override
+    public boolean close() {
+        closeIndex();
+        return super.close();
+    }
+
+    void showLog(File file, int line) {
+        closeIndex();
+        lineTable.removeAll();
+        lineTable.setItemCount(0);
+        pendingLine = line;
+        final LogFileIndex created;
+        try {
+            created = new LogFileIndex(file);
+        } catch (IOException e) {
+            String message = MessageFormat.format(Messages.BuildLogDialog_errorFailedToOpen, file);
+            LogUtil.log(IStatus.ERROR, message, e);
+            statusLabel.setText(message);
+            return;
+        }
+        index = created;
+        indexJob = new Job(MessageFormat.format(Messages.BuildLogDialog_jobIndex, file.getName())) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    created.build(monitor);
+                } catch (OperationCanceledException e) {
+                    return Status.CANCEL_STATUS;
+                } catch (IOException e) {
+                    // the index may be closed while building
+                    LogUtil.debug("Failed to index build log: {0} ({1})", created.getFile(), e.toString()); //$NON-NLS-1$
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        indexJob.setSystem(true);
+        indexJob.schedule();
+        refresh();
+    }
+
+    private void closeIndex() {
+        if (indexJob != null) {
+            indexJob.cancel();
+            indexJob = null;
+        }
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+    }
+
+    void refresh() {
+        LogFileIndex current = index;
+        if (lineTable.isDisposed() || current == null) {
+            return;
+        }
+        boolean complete = current.isComplete();
+        int count = current.getLineCount();
+        if (lineTable.getItemCount() != count) {
+            lineTable.setItemCount(count);
+        }
+        if (pendingLine >= 0 && (pendingLine < count || complete)) {
+            if (pendingLine < count) {
+                select(pendingLine);
+            }
+            pendingLine = -1;
+        }
+        if (complete) {
+            statusLabel.setText(MessageFormat.format(Messages.BuildLogDialog_statusLines, count));
+        } else {
+            statusLabel.setText(MessageFormat.format(Messages.BuildLogDialog_statusIndexing, count));
+            if (refreshScheduled == false) {
+                refreshScheduled = true;
+                lineTable.getDisplay().timerExec(REFRESH_INTERVAL_MILLIS, refresher);
+            }
+        }
+    }
+
+    void select(int line) {
+        lineTable.setSelection(line);
+        lineTable.showSelection();
+    }
+
+    private void findNext() {
+        final String text = findField.getText();
+        final LogFileIndex current = index;
+        if (text.isEmpty() || current == null) {
+            return;
+        }
+        final int from = lineTable.getSelectionIndex() + 1;
+        Job job = new Job(Messages.BuildLogDialog_jobFind) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                final int found;
+                try {
+                    found = current.find(text, from, monitor);
+                } catch (OperationCanceledException e) {
+                    return Status.CANCEL_STATUS;
+                }
+                Activator.getDisplay().asyncExec(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (lineTable.isDisposed() || index != current) {
+                            return;
+                        }
+                        if (found < 0) {
+                            statusLabel.setText(MessageFormat.format(Messages.BuildLogDialog_statusNotFound, text));
+                        } else {
+                            select(found);
+                        }
+                    }
+                });
+                return Status.OK_STATUS;
+            }
+        };
+        job.setSystem(true);
+        job.schedule();
+    }
+
+    private void searchRecentLogs() {
+        final String text = findField.getText();
+        if (text.isEmpty()) {
+            return;
+        }
+        final List<File> targets = new ArrayList<>(logs.subList(0, Math.min(logs.size(), MAX_SEARCH_LOGS)));
+        resultTable.removeAll();
+        Job job = new Job(Messages.BuildLogDialog_jobSearch) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                SubMonitor sub = SubMonitor.convert(monitor, Messages.BuildLogDialog_jobSearch, targets.size() * 2);
+                final List<Match> results = new ArrayList<>();
+                try {
+                    for (File file : targets) {
+                        if (results.size() >= MAX_SEARCH_RESULTS) {
+                            break;
+                        }
+                        search(file, text, results, sub.newChild(2));
+                    }
+                } catch (OperationCanceledException e) {
+                    return Status.CANCEL_STATUS;
+                } finally {
+                    monitor.done();
+                }
+                Activator.getDisplay().asyncExec(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (resultTable.isDisposed() == false) {
+                            showResults(results);
+                        }
+                    }
+                });
+                return Status.OK_STATUS;
+            }
+        };
+        job.schedule();
+    }
+
+    static void search(File file, String text, List<Match> results, SubMonitor monitor) {
+        try (LogFileIndex searchIndex = new LogFileIndex(file)) {
+            searchIndex.build(monitor.newChild(1));
+            IProgressMonitor findMonitor = monitor.newChild(1);
+            for (int line = searchIndex.find(text, 0, findMonitor);
+                    line >= 0 && results.size() < MAX_SEARCH_RESULTS;
+                    line = searchIndex.find(text, line + 1, findMonitor)) {
+                results.add(new Match(file, line, searchIndex.getLine(line)));
+            }
+        } catch (IOException e) {
+            LogUtil.debug("Failed to search build log: {0} ({1})", file, e.toString()); //$NON-NLS-1$
+        }
+    }
+
+    void showResults(List<Match> results) {
+        resultTable.removeAll();
+        for (Match match : results) {
+            TableItem item = new TableItem(resultTable, SWT.NONE);
+            item.setText(new String[] {
+                    match.file.getName(),
+                    String.valueOf(match.line + 1),
+                    match.text.trim(),
+            });
+            item.setData(match);
+        }
+        statusLabel.setText(MessageFormat.format(Messages.BuildLogDialog_statusSearchResults, results.size()));
+    }
+
+    void show(Match match) {
+        int selection = logs.indexOf(match.file);
+        if (selection < 0) {
+            return;
+        }
+        if (logField.getSelectionIndex() != selection || index == null) {
+            logField.select(selection);
+            showLog(match.file, match.line);
+        } else {
+            pendingLine = match.line;
+            refresh();
+        }
+    }
+
+    private static final class Match {
+
+        final File file;
+
+        final int line;
+
+        final String text;
+
+        Match(File file, int line, String text) {
+            this.file = file;
+            this.line = line;
+            this.text = text;
+        }
+    }
+}
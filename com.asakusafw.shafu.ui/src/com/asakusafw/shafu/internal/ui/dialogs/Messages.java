@@ -19,6 +19,23 @@ import org.eclipse.osgi.util.NLS;
 
 final class Messages extends NLS {
     private static final String BUNDLE_NAME = "com.asakusafw.shafu.internal.ui.dialogs.messages"; //$NON-NLS-1$
+    public static String BuildLogDialog_columnLine;
+    public static String BuildLogDialog_columnLog;
+    public static String BuildLogDialog_columnText;
+    public static String BuildLogDialog_errorFailedToOpen;
+    public static String BuildLogDialog_findLabel;
+    public static String BuildLogDialog_findNextButton;
+    public static String BuildLogDialog_jobFind;
+    public static String BuildLogDialog_jobIndex;
+    public static String BuildLogDialog_jobSearch;
+    public static String BuildLogDialog_logLabel;
+    public static String BuildLogDialog_searchButton;
+    public static String BuildLogDialog_statusIndexing;
+    public static String BuildLogDialog_statusLines;
+    public static String BuildLogDialog_statusNoLogs;
+    public static String BuildLogDialog_statusNotFound;
+    public static String BuildLogDialog_statusSearchResults;
+    public static String BuildLogDialog_title;
     public static String ConsoleDialog_title;
     public static String PropertyEntryInputDialog_errorKeyConflict;
     public static String PropertyEntryInputDialog_errorKeyEmpty;
@@ -15,7 +15,6 @@
  */
 package com.asakusafw.shafu.internal.ui.handlers;
 
-import java.net.URI;
 import java.text.MessageFormat;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -30,7 +29,6 @@ import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.handlers.HandlerUtil;
 
-import com.asakusafw.shafu.core.gradle.GradleContext;
 import com.asakusafw.shafu.core.util.GradleArguments;
 import com.asakusafw.shafu.internal.ui.Activator;
 import com.asakusafw.shafu.internal.ui.LogUtil;
@@ -40,7 +38,7 @@ import com.asakusafw.shafu.ui.util.ProjectHandlerUtils;
 
 /**
  * Handles build command.
- * @version 0.2.8
+ * @version 0.8.0
  */
 public class BuildProjectHandler extends AbstractHandler {
 
@@ -56,11 +54,11 @@ public class BuildProjectHandler extends AbstractHandler {
 
     @Override
     public Object execute(ExecutionEvent event) throws ExecutionException {
-        IProject project = ProjectHandlerUtils.getTargetProject(event);
-        if (project == null) {
+        List<IProject> projects = ProjectHandlerUtils.getTargetProjects(event);
+        if (projects.isEmpty()) {
             return null;
         }
-        String commandLine = getTaskNames(event, project.getName());
+        String commandLine = getTaskNames(event, toLocation(projects));
         if (commandLine == null) {
             return null;
         }
@@ -68,18 +66,19 @@ public class BuildProjectHandler extends AbstractHandler {
             return null;
         }
         GradleArguments arguments = GradleArguments.parse(commandLine);
-        GradleContext context = ShafuUi.createContext(project, arguments.getGradleOptions());
-        if (arguments.getGradleVersion() != null) {
-            // like URL
-            if (arguments.getGradleVersion().indexOf(':') >= 0) {
-                context.setGradleDistribution(URI.create(arguments.getGradleVersion()));
-            } else {
-                context.setGradleDistribution(null);
-                context.setGradleVersion(arguments.getGradleVersion());
+        ShafuUi.scheduleTasks(projects, arguments);
+        return null;
+    }
+
+    private static String toLocation(List<IProject> projects) {
+        StringBuilder buf = new StringBuilder();
+        for (IProject project : projects) {
+            if (buf.length() > 0) {
+                buf.append(", "); //$NON-NLS-1$
             }
+            buf.append(project.getName());
         }
-        ShafuUi.scheduleTasks(project, context, arguments.getTaskNames());
-        return null;
+        return buf.toString();
     }
 
     private String getTaskNames(ExecutionEvent event, String location) throws ExecutionException {
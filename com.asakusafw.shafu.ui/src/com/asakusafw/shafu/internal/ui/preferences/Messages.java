@@ -32,22 +32,34 @@ final class Messages extends NLS {
     public static String ShafuPreferencePage_dialogDirectorySelection;
     public static String ShafuPreferencePage_errorDirectoryEmpty;
     public static String ShafuPreferencePage_errorDirectoryMissing;
+    public static String ShafuPreferencePage_errorInvalidNumber;
     public static String ShafuPreferencePage_groupEnvironment;
     public static String ShafuPreferencePage_groupLogging;
+    public static String ShafuPreferencePage_groupRefresh;
     public static String ShafuPreferencePage_groupWrapper;
+    public static String ShafuPreferencePage_hintBuildLogRetention;
+    public static String ShafuPreferencePage_hintConsoleHighWaterMark;
     public static String ShafuPreferencePage_hintOptionalText;
+    public static String ShafuPreferencePage_hintRefreshOutputPaths;
     public static String ShafuPreferencePage_hintWrapperConfigurationPaths;
+    public static String ShafuPreferencePage_itemBuildLogRetention;
+    public static String ShafuPreferencePage_itemConsoleHighWaterMark;
     public static String ShafuPreferencePage_itemEnvironmentVariables;
     public static String ShafuPreferencePage_itemGradleUserHome;
     public static String ShafuPreferencePage_itemGradleVersion;
+    public static String ShafuPreferencePage_itemIncrementalRefresh;
     public static String ShafuPreferencePage_itemJavaHome;
+    public static String ShafuPreferencePage_itemLazySourceAttachment;
     public static String ShafuPreferencePage_itemLogLevel;
     public static String ShafuPreferencePage_itemNetworkMode;
     public static String ShafuPreferencePage_itemProjectProperties;
+    public static String ShafuPreferencePage_itemRefreshOutputPaths;
     public static String ShafuPreferencePage_itemStackTrace;
+    public static String ShafuPreferencePage_itemSyncProjectModel;
     public static String ShafuPreferencePage_itemSystemProperties;
     public static String ShafuPreferencePage_itemUseProjectJavaHome;
     public static String ShafuPreferencePage_itemUseWrapperConfiguration;
+    public static String ShafuPreferencePage_itemWarmUpDaemon;
     public static String ShafuPreferencePage_itemWrapperConfigurationPaths;
     public static String ShafuPreferencePage_propertiesAddLabel;
     public static String ShafuPreferencePage_propertiesKeyLabel;
@@ -22,10 +22,12 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import com.asakusafw.shafu.core.gradle.RefreshTask;
+
 /**
  * Preferences constants for Shafu UI.
  * @since 0.1.0
- * @version 0.7.0
+ * @version 0.8.0
  */
 public final class ShafuPreferenceConstants {
 
@@ -110,6 +112,56 @@ public final class ShafuPreferenceConstants {
      */
     public static final String KEY_GRADLE_DISTRIBUTION = "gradleDistribution"; //$NON-NLS-1$
 
+    /**
+     * The property key whether or not prepare Gradle daemons in background on startup.
+     * @since 0.8.0
+     */
+    public static final String KEY_WARM_UP_DAEMON = "warmUpDaemon"; //$NON-NLS-1$
+
+    /**
+     * The property key whether or not refresh only the changed directories after builds.
+     * @since 0.8.0
+     * @see #KEY_REFRESH_OUTPUT_PATHS
+     */
+    public static final String KEY_INCREMENTAL_REFRESH = "incrementalRefresh"; //$NON-NLS-1$
+
+    /**
+     * The output directory paths (separated by comma) property key.
+     * This property will be activated only if {@link #KEY_INCREMENTAL_REFRESH} is enabled.
+     * @since 0.8.0
+     * @see #KEY_INCREMENTAL_REFRESH
+     */
+    public static final String KEY_REFRESH_OUTPUT_PATHS = "refreshOutputPaths"; //$NON-NLS-1$
+
+    /**
+     * The property key whether or not configure projects directly from Gradle models on import,
+     * instead of running {@code cleanEclipse eclipse} tasks.
+     * @since 0.8.0
+     */
+    public static final String KEY_SYNC_PROJECT_MODEL = "syncProjectModel"; //$NON-NLS-1$
+
+    /**
+     * The property key whether or not configure the classpath with only binary artifacts,
+     * and attach their source artifacts later in background.
+     * @since 0.8.0
+     */
+    public static final String KEY_LAZY_SOURCE_ATTACHMENT = "lazySourceAttachment"; //$NON-NLS-1$
+
+    /**
+     * The property key of the maximum number of characters kept in the console.
+     * The older output will be discarded from the console, but is still available as the full build log.
+     * Consoles keep all output if this is {@code 0}.
+     * @since 0.8.0
+     */
+    public static final String KEY_CONSOLE_HIGH_WATER_MARK = "consoleHighWaterMark"; //$NON-NLS-1$
+
+    /**
+     * The property key of the number of recent build logs to keep.
+     * Build logs are not recorded if this is {@code 0}.
+     * @since 0.8.0
+     */
+    public static final String KEY_BUILD_LOG_RETENTION = "buildLogRetention"; //$NON-NLS-1$
+
     /**
      * The log level default value.
      */
@@ -190,4 +242,46 @@ public final class ShafuPreferenceConstants {
      * @since 0.2.7
      */
     public static final URI DEFAULT_GRADLE_DISTRIBUTION = null;
+
+    /**
+     * The default value of {@link #KEY_WARM_UP_DAEMON}.
+     * @since 0.8.0
+     */
+    public static final boolean DEFAULT_WARM_UP_DAEMON = false;
+
+    /**
+     * The default value of {@link #KEY_INCREMENTAL_REFRESH}.
+     * @since 0.8.0
+     */
+    public static final boolean DEFAULT_INCREMENTAL_REFRESH = false;
+
+    /**
+     * The default value of {@link #KEY_REFRESH_OUTPUT_PATHS}.
+     * @since 0.8.0
+     */
+    public static final List<String> DEFAULT_REFRESH_OUTPUT_PATHS = RefreshTask.DEFAULT_OUTPUT_PATHS;
+
+    /**
+     * The default value of {@link #KEY_SYNC_PROJECT_MODEL}.
+     * @since 0.8.0
+     */
+    public static final boolean DEFAULT_SYNC_PROJECT_MODEL = false;
+
+    /**
+     * The default value of {@link #KEY_LAZY_SOURCE_ATTACHMENT}.
+     * @since 0.8.0
+     */
+    public static final boolean DEFAULT_LAZY_SOURCE_ATTACHMENT = false;
+
+    /**
+     * The default value of {@link #KEY_CONSOLE_HIGH_WATER_MARK}.
+     * @since 0.8.0
+     */
+    public static final int DEFAULT_CONSOLE_HIGH_WATER_MARK = 1000000;
+
+    /**
+     * The default value of {@link #KEY_BUILD_LOG_RETENTION}.
+     * @since 0.8.0
+     */
+    public static final int DEFAULT_BUILD_LOG_RETENTION = 20;
 }
@@ -120,6 +120,12 @@ public class ShafuPreferencePage extends FieldPreferencePage implements IWorkben
         loggingGroup.setLayout(new GridLayout(2, false));
         createComboField(loggingGroup, KEY_LOG_LEVEL, GradleLogLevel.values(), Messages.ShafuPreferencePage_itemLogLevel);
         createComboField(loggingGroup, KEY_STACK_TRACE, GradleStackTrace.values(), Messages.ShafuPreferencePage_itemStackTrace);
+        createIntegerField(loggingGroup, KEY_CONSOLE_HIGH_WATER_MARK,
+                Messages.ShafuPreferencePage_itemConsoleHighWaterMark, 10,
+                Messages.ShafuPreferencePage_hintConsoleHighWaterMark);
+        createIntegerField(loggingGroup, KEY_BUILD_LOG_RETENTION,
+                Messages.ShafuPreferencePage_itemBuildLogRetention, 4,
+                Messages.ShafuPreferencePage_hintBuildLogRetention);
 
         Group environmentGroup = new Group(pane, SWT.NONE);
         environmentGroup.setText(Messages.ShafuPreferencePage_groupEnvironment);
@@ -131,6 +137,7 @@ public class ShafuPreferencePage extends FieldPreferencePage implements IWorkben
         createVersionField(environmentGroup, KEY_GRADLE_VERSION, Messages.ShafuPreferencePage_itemGradleVersion, 10, false);
         createComboField(environmentGroup, KEY_NETWORK_MODE, GradleNetworkMode.values(), Messages.ShafuPreferencePage_itemNetworkMode);
         createDirectoryField(environmentGroup, KEY_GRADLE_USER_HOME, 2, Messages.ShafuPreferencePage_itemGradleUserHome, false);
+        createCheckboxField(environmentGroup, KEY_WARM_UP_DAEMON, 2, Messages.ShafuPreferencePage_itemWarmUpDaemon);
 
         Group wrapperGroup = new Group(pane, SWT.NONE);
         wrapperGroup.setText(Messages.ShafuPreferencePage_groupWrapper);
@@ -144,6 +151,23 @@ public class ShafuPreferencePage extends FieldPreferencePage implements IWorkben
         createCommaListField(wrapperGroup, KEY_WRAPPER_CONFIGURATION_PATHS, 2,
                 Messages.ShafuPreferencePage_itemWrapperConfigurationPaths,
                 Messages.ShafuPreferencePage_hintWrapperConfigurationPaths);
+
+        Group refreshGroup = new Group(pane, SWT.NONE);
+        refreshGroup.setText(Messages.ShafuPreferencePage_groupRefresh);
+        refreshGroup.setLayoutData(GridDataFactory.swtDefaults()
+                .align(SWT.FILL, SWT.BEGINNING)
+                .grab(true, false)
+                .create());
+        refreshGroup.setLayout(new GridLayout(2, false));
+        createCheckboxField(refreshGroup, KEY_INCREMENTAL_REFRESH, 2,
+                Messages.ShafuPreferencePage_itemIncrementalRefresh);
+        createCommaListField(refreshGroup, KEY_REFRESH_OUTPUT_PATHS, 2,
+                Messages.ShafuPreferencePage_itemRefreshOutputPaths,
+                Messages.ShafuPreferencePage_hintRefreshOutputPaths);
+        createCheckboxField(refreshGroup, KEY_SYNC_PROJECT_MODEL, 2,
+                Messages.ShafuPreferencePage_itemSyncProjectModel);
+        createCheckboxField(refreshGroup, KEY_LAZY_SOURCE_ATTACHMENT, 2,
+                Messages.ShafuPreferencePage_itemLazySourceAttachment);
     }
 
     private void createProjectTab(Composite pane) {
@@ -209,6 +233,50 @@ public class ShafuPreferencePage extends FieldPreferencePage implements IWorkben
         });
     }
 
+    private void createIntegerField(Composite pane, final String key, final String title, int columns, final String hint) {
+        Label label = new Label(pane, SWT.NONE);
+        label.setText(title + ':');
+        label.setLayoutData(GridDataFactory.swtDefaults()
+                .align(SWT.FILL, SWT.CENTER)
+                .indent(BasicField.getDecorationWidth(), 0)
+                .create());
+
+        final Text text = new Text(pane, SWT.BORDER);
+        text.setLayoutData(GridDataFactory.swtDefaults()
+                .align(SWT.BEGINNING, SWT.CENTER)
+                .indent(convertWidthInCharsToPixels(2) + BasicField.getDecorationWidth(), 0)
+                .hint(convertWidthInCharsToPixels(columns + 1), SWT.DEFAULT)
+                .create());
+
+        registerField(new PreferenceField(key, text) {
+            @Override
+            public void refresh() {
+                text.setText(getPreferenceValue(key));
+            }
+            @Override
+            protected IStatus getDefaultStatus() {
+                return new Status(IStatus.INFO, Activator.PLUGIN_ID, hint);
+            }
+        });
+        text.addListener(SWT.Modify, new Listener() {
+            @Override
+            public void handleEvent(Event event) {
+                String value = text.getText().trim();
+                try {
+                    if (Integer.parseInt(value) >= 0) {
+                        setPreferenceValue(key, value);
+                        return;
+                    }
+                } catch (NumberFormatException e) {
+                    // fall through
+                }
+                setError(key, MessageFormat.format(
+                        Messages.ShafuPreferencePage_errorInvalidNumber,
+                        title));
+            }
+        });
+    }
+
     private void createComboField(Composite pane, final String key, GradleOption[] options, String title) {
         Label label = new Label(pane, SWT.NONE);
         label.setText(title + ':');
@@ -46,5 +46,12 @@ public class ShafuPreferencesInitializer extends AbstractPreferenceInitializer {
         prefs.setDefault(KEY_USE_WRAPPER_CONFIGURATION, DEFAULT_USE_WRAPPER_CONFIGURATION);
         prefs.setDefault(KEY_WRAPPER_CONFIGURATION_PATHS, encodeList(DEFAULT_WRAPPER_CONFIGURATION_PATHS));
         prefs.setDefault(KEY_GRADLE_DISTRIBUTION, encodeUri(DEFAULT_GRADLE_DISTRIBUTION));
+        prefs.setDefault(KEY_WARM_UP_DAEMON, DEFAULT_WARM_UP_DAEMON);
+        prefs.setDefault(KEY_INCREMENTAL_REFRESH, DEFAULT_INCREMENTAL_REFRESH);
+        prefs.setDefault(KEY_REFRESH_OUTPUT_PATHS, encodeList(DEFAULT_REFRESH_OUTPUT_PATHS));
+        prefs.setDefault(KEY_SYNC_PROJECT_MODEL, DEFAULT_SYNC_PROJECT_MODEL);
+        prefs.setDefault(KEY_LAZY_SOURCE_ATTACHMENT, DEFAULT_LAZY_SOURCE_ATTACHMENT);
+        prefs.setDefault(KEY_CONSOLE_HIGH_WATER_MARK, DEFAULT_CONSOLE_HIGH_WATER_MARK);
+        prefs.setDefault(KEY_BUILD_LOG_RETENTION, DEFAULT_BUILD_LOG_RETENTION);
     }
 }
@@ -121,6 +121,7 @@ public class ImportProjectsWizard extends Wizard implements IImportWizard {
         }
         final IWorkbench workbench = currentWorkbench;
         final List<String> taskNames = selectGradleProjects.getTaskNames();
+        final boolean sync = ProjectModelSync.isEnabled();
         final IWorkingSet[] workingSets = selectGradleProjects.getWorkingSets();
         final ShafuConsole console = selectGradleProjects.getConsole();
         console.clearConsole();
@@ -130,17 +131,30 @@ public class ImportProjectsWizard extends Wizard implements IImportWizard {
                 public void run(IProgressMonitor monitor) throws CoreException {
                     monitor.beginTask(Messages.ImportProjectsWizard_monitorPeformFinish, 100);
                     try {
-                        GradleContext context = ShafuUi.createContext(rootProjectDirectory);
-                        console.attachTo(context);
-                        new GradleBuildTask(context, taskNames)
-                            .run(new SubProgressMonitor(monitor, 60));
-
-                        ResourcesPlugin.getWorkspace().run(
-                                RunnableBuilder.toWorkspaceRunnable(new ImportProject(
-                                        workbench,
-                                        projectDirectories,
-                                        workingSets)),
-                                new SubProgressMonitor(monitor, 40));
+                        if (taskNames.isEmpty() == false) {
+                            GradleContext context = ShafuUi.createContext(rootProjectDirectory);
+                            console.attachTo(context);
+                            new GradleBuildTask(context, taskNames)
+                                .run(new SubProgressMonitor(monitor, 60));
+                        }
+
+                        if (sync) {
+                            List<IProject> projects = ProjectModelSync.perform(
+                                    new SubProgressMonitor(monitor, 40),
+                                    rootProjectDirectory, projectDirectories, console);
+                            if (workingSets.length > 0) {
+                                for (IProject project : projects) {
+                                    workbench.getWorkingSetManager().addToWorkingSets(project, workingSets);
+                                }
+                            }
+                        } else {
+                            ResourcesPlugin.getWorkspace().run(
+                                    RunnableBuilder.toWorkspaceRunnable(new ImportProject(
+                                            workbench,
+                                            projectDirectories,
+                                            workingSets)),
+                                    new SubProgressMonitor(monitor, 40));
+                        }
                     } finally {
                         monitor.done();
                     }
@@ -49,6 +49,7 @@ final class Messages extends NLS {
     public static String ProjectInformationPage_description;
     public static String ProjectInformationPage_errorProjectNameInconsistent;
     public static String ProjectInformationPage_title;
+    public static String ProjectModelSync_monitorPerform;
     public static String SelectGradleProjectsPage_buildCheckLabel;
     public static String SelectGradleProjectsPage_buildCheckTooltip;
     public static String SelectGradleProjectsPage_description;
@@ -61,6 +62,8 @@ final class Messages extends NLS {
     public static String SelectGradleProjectsPage_infoProjectAlreadyImport;
     public static String SelectGradleProjectsPage_openConsoleLabel;
     public static String SelectGradleProjectsPage_openConsoleTooltip;
+    public static String SelectGradleProjectsPage_refreshLabel;
+    public static String SelectGradleProjectsPage_refreshTooltip;
     public static String SelectGradleProjectsPage_targetLabel;
     public static String SelectGradleProjectsPage_title;
     public static String SelectGradleProjectsPage_workingSetGroupLabel;
@@ -17,11 +17,10 @@ package com.asakusafw.shafu.internal.ui.wizards;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
+import java.nio.file.Files;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -59,8 +58,8 @@ import org.eclipse.ui.wizards.newresource.BasicNewResourceWizard;
 
 import com.asakusafw.shafu.core.gradle.GradleBuildTask;
 import com.asakusafw.shafu.core.gradle.GradleContext;
+import com.asakusafw.shafu.core.net.HttpDownloader;
 import com.asakusafw.shafu.core.net.IContentProcessor;
-import com.asakusafw.shafu.core.net.ShafuNetwork;
 import com.asakusafw.shafu.core.util.IRunnable;
 import com.asakusafw.shafu.core.util.IoUtils;
 import com.asakusafw.shafu.core.util.StatusUtils;
@@ -190,10 +189,16 @@ public class NewProjectWizard extends Wizard implements INewWizard {
         boolean succeed = false;
         try {
             stageRef.set(Stage.BUILD);
-            buildProject(monitor.newChild(60, SubMonitor.SUPPRESS_NONE), projectDirectory, taskNames, console);
+            if (taskNames.isEmpty() == false) {
+                buildProject(monitor.newChild(60, SubMonitor.SUPPRESS_NONE), projectDirectory, taskNames, console);
+            }
 
             stageRef.set(Stage.DEPLOY);
-            deployProject(monitor.newChild(20, SubMonitor.SUPPRESS_NONE), projectDirectory, workingSets);
+            if (ProjectModelSync.isEnabled()) {
+                syncProject(monitor.newChild(20, SubMonitor.SUPPRESS_NONE), projectDirectory, workingSets, console);
+            } else {
+                deployProject(monitor.newChild(20, SubMonitor.SUPPRESS_NONE), projectDirectory, workingSets);
+            }
 
             succeed = true;
         } finally {
@@ -209,8 +214,10 @@ public class NewProjectWizard extends Wizard implements INewWizard {
             Archive archive) throws CoreException {
         monitor.beginTask(Messages.NewProjectWizard_monitorExtractContents, 100);
         StatusUtils.checkCanceled(monitor);
-        File temporaryFolder = archive.extract(monitor.newChild(80));
+        // extracts next to the project so that the project contents can be moved by just renaming them
+        File temporaryFolder = createStagingFolder(projectDirectory);
         try {
+            archive.extract(monitor.newChild(80), temporaryFolder);
             File temporaryProjectFolder = detectProjectEntry(monitor.newChild(10), temporaryFolder);
             if (projectDirectory.exists()) {
                 IoUtils.deleteQuietly(projectDirectory);
@@ -221,6 +228,25 @@ public class NewProjectWizard extends Wizard implements INewWizard {
         }
     }
 
+    private static File createStagingFolder(File projectDirectory) throws CoreException {
+        File parent = projectDirectory.getAbsoluteFile().getParentFile();
+        try {
+            if (parent.mkdirs() == false && parent.isDirectory() == false) {
+                throw new IOException(parent.getPath());
+            }
+            String prefix = '.' + projectDirectory.getName() + '.';
+            return Files.createTempDirectory(parent.toPath(), prefix).toFile();
+        } catch (IOException e) {
+            throw new CoreException(new Status(
+                    IStatus.ERROR,
+                    Activator.PLUGIN_ID,
+                    MessageFormat.format(
+                            Messages.NewProjectWizard_errorProjectFailedToCopyContent,
+                            projectDirectory),
+                    e));
+        }
+    }
+
     private File detectProjectEntry(SubMonitor monitor, File temporaryFolder) throws CoreException {
         monitor.beginTask(Messages.NewProjectWizard_monitorInspectProject, 100);
         List<File> results = new ArrayList<>();
@@ -356,6 +382,22 @@ public class NewProjectWizard extends Wizard implements INewWizard {
         BasicNewResourceWizard.selectAndReveal(project, currentWorkbench.getActiveWorkbenchWindow());
     }
 
+    private void syncProject(
+            SubMonitor monitor,
+            File projectDirectory, IWorkingSet[] workingSets,
+            ShafuConsole console) throws CoreException {
+        List<IProject> projects = ProjectModelSync.perform(
+                monitor,
+                projectDirectory, Collections.singletonList(projectDirectory),
+                console);
+        for (IProject project : projects) {
+            if (workingSets.length > 0) {
+                currentWorkbench.getWorkingSetManager().addToWorkingSets(project, workingSets);
+            }
+            BasicNewResourceWizard.selectAndReveal(project, currentWorkbench.getActiveWorkbenchWindow());
+        }
+    }
+
     private IProjectDescription loadDescription(SubMonitor monitor, File projectDirectory) throws CoreException {
         monitor.beginTask(Messages.NewProjectWizard_monitorLoadDescription, 1);
         try {
@@ -486,26 +528,52 @@ public class NewProjectWizard extends Wizard implements INewWizard {
             this.url = url;
         }
 
-        public File extract(SubMonitor monitor) throws CoreException {
+        public void extract(SubMonitor monitor, File targetDirectory) throws CoreException {
             monitor.beginTask(Messages.NewProjectWizard_monitorExtractArchive, 100);
-            File archive = getFile(monitor.newChild(50));
             String name = getFileName();
             try {
+                if (file == null && name.endsWith(".tar.gz")) { //$NON-NLS-1$
+                    // extracts the entries while downloading the archive
+                    extractTarGzStream(monitor.newChild(100), targetDirectory);
+                    return;
+                }
+                File archive = getFile(monitor.newChild(50));
                 if (name.endsWith(".zip") || name.endsWith(".jar")) { //$NON-NLS-1$ //$NON-NLS-2$
-                    return IoUtils.extractZip(monitor, archive);
+                    IoUtils.extractZip(monitor, archive, targetDirectory);
                 } else if (name.endsWith(".tar.gz")) { //$NON-NLS-1$
-                    return IoUtils.extractTarGz(monitor, archive);
+                    IoUtils.extractTarGz(monitor, archive, targetDirectory);
                 } else {
                     throw new CoreException(new Status(
                             IStatus.ERROR,
                             Activator.PLUGIN_ID,
                             Messages.NewProjectWizard_errorArchiveNotSupport));
                 }
+            } catch (OperationCanceledException e) {
+                throw new CoreException(Status.CANCEL_STATUS);
             } catch (IOException e) {
                 throw new CoreException(new Status(
                         IStatus.ERROR,
                         Activator.PLUGIN_ID,
-                        Messages.NewProjectWizard_errorArchiveExtract));
+                        Messages.NewProjectWizard_errorArchiveExtract,
+                        e));
+            }
+        }
+
+        private void extractTarGzStream(SubMonitor monitor, final File targetDirectory) throws IOException {
+            temporaryFile = File.createTempFile("tmp", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+            try {
+                new HttpDownloader().download(url, temporaryFile, new IContentProcessor<Void>() {
+                    @Override
+                    public Void process(InputStream input) throws IOException {
+                        // the download progress is reported instead
+                        IoUtils.extractTarGz(null, input, targetDirectory);
+                        return null;
+                    }
+                }, monitor);
+            } catch (IOException e) {
+                throw new IOException(MessageFormat.format(
+                        Messages.NewProjectWizard_errorArchiveDownload,
+                        url), e);
             }
         }
 
@@ -519,7 +587,7 @@ public class NewProjectWizard extends Wizard implements INewWizard {
             }
         }
 
-        private File getFile(final SubMonitor monitor) throws CoreException {
+        private File getFile(SubMonitor monitor) throws CoreException {
             if (file != null) {
                 return file;
             } else if (temporaryFile != null) {
@@ -527,30 +595,7 @@ public class NewProjectWizard extends Wizard implements INewWizard {
             }
             try {
                 temporaryFile = File.createTempFile("tmp", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
-                final OutputStream output = new FileOutputStream(temporaryFile);
-                try {
-                    ShafuNetwork.processContent(url, new IContentProcessor<Void>() {
-                        @Override
-                        public Void process(InputStream input) throws IOException {
-                            byte[] buf = new byte[1024];
-                            while (true) {
-                                if (monitor.isCanceled()) {
-                                    throw new OperationCanceledException();
-                                }
-                                int read = input.read(buf);
-                                if (read < 0) {
-                                    break;
-                                }
-                                monitor.setWorkRemaining(10000);
-                                monitor.worked(read);
-                                output.write(buf, 0, read);
-                            }
-                            return null;
-                        }
-                    });
-                } finally {
-                    output.close();
-                }
+                new HttpDownloader().download(url, temporaryFile, monitor);
                 return temporaryFile;
             } catch (OperationCanceledException e) {
                 throw new CoreException(Status.CANCEL_STATUS);
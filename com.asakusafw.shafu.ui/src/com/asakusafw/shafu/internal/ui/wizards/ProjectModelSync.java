@@ -0,0 +1,81 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.internal.ui.wizards;
+
+import static com.asakusafw.shafu.internal.ui.preferences.ShafuPreferenceConstants.*;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.gradle.tooling.model.eclipse.EclipseProject;
+
+import com.asakusafw.shafu.core.gradle.EclipseSyncTask;
+import com.asakusafw.shafu.core.gradle.GradleContext;
+import com.asakusafw.shafu.core.gradle.GradleInspectTask;
+import com.asakusafw.shafu.internal.ui.Activator;
+import com.asakusafw.shafu.ui.ShafuUi;
+import com.asakusafw.shafu.ui.consoles.ShafuConsole;
+
+/**
+ * Configures Eclipse projects directly from Gradle models.
+ * @see EclipseSyncTask
+ * @since 0.8.0
+ */
+final class ProjectModelSync {
+
+    private ProjectModelSync() {
+        return;
+    }
+
+    /**
+     * Returns whether or not the projects should be configured directly from Gradle models.
+     * @return {@code true} to configure from Gradle models, or {@code false} to use {@code eclipse} task
+     */
+    static boolean isEnabled() {
+        return Activator.getDefault().getPreferenceStore().getBoolean(KEY_SYNC_PROJECT_MODEL);
+    }
+
+    /**
+     * Inspects the Gradle build and configures the target projects.
+     * @param monitor the progress monitor
+     * @param baseDirectory the base project directory of the Gradle build
+     * @param projectDirectories the target project directories
+     * @param console the current console
+     * @return the configured projects
+     * @throws CoreException if failed to configure the projects
+     */
+    static List<IProject> perform(
+            IProgressMonitor monitor,
+            File baseDirectory, List<File> projectDirectories,
+            ShafuConsole console) throws CoreException {
+        SubMonitor sub = SubMonitor.convert(monitor, Messages.ProjectModelSync_monitorPerform, 100);
+        try {
+            GradleContext context = ShafuUi.createContext(baseDirectory);
+            console.attachTo(context);
+            EclipseProject model = GradleInspectTask.newInstance(context, EclipseProject.class)
+                    .call(sub.newChild(60));
+            EclipseSyncTask task = new EclipseSyncTask(model, projectDirectories);
+            task.run(sub.newChild(40));
+            return task.getProjects();
+        } finally {
+            monitor.done();
+        }
+    }
+}
@@ -16,8 +16,10 @@
 package com.asakusafw.shafu.internal.ui.wizards;
 
 import java.io.File;
+import java.io.Serializable;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -62,12 +64,17 @@ import org.eclipse.ui.dialogs.WorkingSetConfigurationBlock;
 import org.eclipse.ui.ide.IDE.SharedImages;
 import org.gradle.tooling.model.DomainObjectSet;
 import org.gradle.tooling.model.GradleTask;
+import org.gradle.tooling.model.GradleProject;
 import org.gradle.tooling.model.eclipse.EclipseProject;
 
 import com.asakusafw.shafu.core.gradle.GradleBuildTask;
 import com.asakusafw.shafu.core.gradle.GradleContext;
 import com.asakusafw.shafu.core.gradle.GradleException;
 import com.asakusafw.shafu.core.gradle.GradleInspectTask;
+import com.asakusafw.shafu.core.gradle.GradleModelCache;
+import com.asakusafw.shafu.core.gradle.GradleModels;
+import com.asakusafw.shafu.core.gradle.GradleModelsAction;
+import com.asakusafw.shafu.core.gradle.GradleProjectLayout;
 import com.asakusafw.shafu.core.util.StatusUtils;
 import com.asakusafw.shafu.internal.ui.Activator;
 import com.asakusafw.shafu.internal.ui.LogUtil;
@@ -87,6 +94,8 @@ public class SelectGradleProjectsPage extends WizardPage {
 
     private static final String KEY_DIALOG_BUILD = "build"; //$NON-NLS-1$
 
+    private static final String CACHE_ID = SelectGradleProjectsPage.class.getName();
+
     private IStructuredSelection selection;
 
     private CheckboxTableViewer viewer;
@@ -97,6 +106,8 @@ public class SelectGradleProjectsPage extends WizardPage {
 
     private Button openConsoleButton;
 
+    private Button refreshButton;
+
     private ShafuConsole console;
 
     private File baseTargetDirectory;
@@ -216,12 +227,33 @@ public class SelectGradleProjectsPage extends WizardPage {
         workingSets.createContent(group);
     }
 
-    private void createConsoleButton(Composite pane) {
+    private void createConsoleButton(Composite parent) {
+        Composite pane = new Composite(parent, SWT.NONE);
+        pane.setLayoutData(GridDataFactory.swtDefaults()
+                .align(SWT.END, SWT.END)
+                .create());
+        GridLayout layout = new GridLayout(2, true);
+        layout.marginWidth = 0;
+        layout.marginHeight = 0;
+        pane.setLayout(layout);
+
+        this.refreshButton = new Button(pane, SWT.PUSH);
+        refreshButton.setText(Messages.SelectGradleProjectsPage_refreshLabel);
+        refreshButton.setToolTipText(Messages.SelectGradleProjectsPage_refreshTooltip);
+        refreshButton.setLayoutData(GridDataFactory.fillDefaults()
+                .create());
+        refreshButton.setEnabled(false);
+        refreshButton.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                rebuild(true);
+            }
+        });
+
         this.openConsoleButton = new Button(pane, SWT.PUSH);
         openConsoleButton.setText(Messages.SelectGradleProjectsPage_openConsoleLabel);
         openConsoleButton.setToolTipText(Messages.SelectGradleProjectsPage_openConsoleTooltip);
-        openConsoleButton.setLayoutData(GridDataFactory.swtDefaults()
-                .align(SWT.END, SWT.END)
+        openConsoleButton.setLayoutData(GridDataFactory.fillDefaults()
                 .create());
         openConsoleButton.setEnabled(false);
         openConsoleButton.addSelectionListener(new SelectionAdapter() {
@@ -277,19 +309,21 @@ public class SelectGradleProjectsPage extends WizardPage {
     @Override
     public void setVisible(boolean visible) {
         if (visible) {
-            rebuild();
+            rebuild(false);
         }
         super.setVisible(visible);
     }
 
-    private void rebuild() {
+    void rebuild(boolean refresh) {
         if (baseTargetDirectory == null) {
             return;
         }
         openConsoleButton.setEnabled(false);
+        refreshButton.setEnabled(false);
         viewer.getTable().setEnabled(false);
 
-        List<ProjectEntry> projects = computeProjects();
+        List<ProjectEntry> projects = computeProjects(refresh);
+        refreshButton.setEnabled(true);
         if (projects == null) {
             setPageComplete(false);
             return;
@@ -328,17 +362,31 @@ public class SelectGradleProjectsPage extends WizardPage {
         refreshSelection();
     }
 
-    private List<ProjectEntry> computeProjects() {
-        prepareConsole();
+    private List<ProjectEntry> computeProjects(boolean refresh) {
         GradleContext context = ShafuUi.createContext(baseTargetDirectory);
+        GradleModelCache cache = GradleModelCache.getDefault();
+        if (refresh == false) {
+            ProjectInfo[] cached = cache.find(context, CACHE_ID, ProjectInfo[].class);
+            if (cached != null) {
+                return toProjectEntries(Arrays.asList(cached));
+            }
+        }
+
+        prepareConsole();
         console.clearConsole();
         console.attachTo(context);
 
         EclipseProject model;
+        GradleProjectLayout layout;
         try {
-            model = ProgressUtils.call(
+            // also obtains the project layout for building the imported projects together
+            GradleModels models = ProgressUtils.call(
                     getContainer(),
-                    GradleInspectTask.newInstance(context, EclipseProject.class));
+                    GradleInspectTask.newInstance(context, new GradleModelsAction()
+                            .withBuildModel(EclipseProject.class)
+                            .withBuildModel(GradleProject.class)));
+            model = models.getBuildModel(EclipseProject.class);
+            layout = GradleProjectLayout.of(models.getBuildModel(GradleProject.class));
         } catch (GradleException e) {
             setErrorMessage(Messages.SelectGradleProjectsPage_errorFailedToInspectProject);
             return null;
@@ -353,10 +401,15 @@ public class SelectGradleProjectsPage extends WizardPage {
             }
         }
 
-        return toProjectEntries(model);
+        List<ProjectInfo> projects = toProjectInfo(model);
+        cache.put(context, CACHE_ID, projects.toArray(new ProjectInfo[projects.size()]));
+        if (layout != null) {
+            GradleProjectLayout.put(ShafuUi.createContext(layout.getRootProjectDirectory()), layout);
+        }
+        return toProjectEntries(projects);
     }
 
-    private List<ProjectEntry> toProjectEntries(EclipseProject model) {
+    private List<ProjectInfo> toProjectInfo(EclipseProject model) {
         EclipseProject current = model;
         while (true) {
             EclipseProject parent = current.getParent();
@@ -365,14 +418,22 @@ public class SelectGradleProjectsPage extends WizardPage {
             }
             current = parent;
         }
-        List<ProjectEntry> results = new ArrayList<>();
+        List<ProjectInfo> results = new ArrayList<>();
         LinkedList<EclipseProject> work = new LinkedList<>();
         work.add(current);
         while (work.isEmpty() == false) {
             EclipseProject next = work.removeFirst();
-            results.add(new ProjectEntry(next));
+            results.add(new ProjectInfo(next, isEclipseSupported(next)));
             work.addAll(next.getChildren());
         }
+        return results;
+    }
+
+    private List<ProjectEntry> toProjectEntries(List<ProjectInfo> projects) {
+        List<ProjectEntry> results = new ArrayList<>();
+        for (ProjectInfo info : projects) {
+            results.add(new ProjectEntry(info));
+        }
 
         Set<IPath> projectLocation = new HashSet<>();
         Set<String> projectNames = new HashSet<>();
@@ -382,7 +443,7 @@ public class SelectGradleProjectsPage extends WizardPage {
         }
 
         for (ProjectEntry entry : results) {
-            if (isEclipseSupported(entry)) {
+            if (entry.getInfo().supported) {
                 entry.setSupported(true);
             }
             if (projectLocation.contains(entry.getLocation())) {
@@ -395,8 +456,7 @@ public class SelectGradleProjectsPage extends WizardPage {
         return results;
     }
 
-    private boolean isEclipseSupported(ProjectEntry entry) {
-        EclipseProject model = entry.getModel();
+    private boolean isEclipseSupported(EclipseProject model) {
         DomainObjectSet<? extends GradleTask> tasks = model.getGradleProject().getTasks();
         for (GradleTask task : tasks) {
             if (task.getName().equals(GradleBuildTask.TASK_CONFIGURE_ECLIPSE)) {
@@ -429,8 +489,10 @@ public class SelectGradleProjectsPage extends WizardPage {
         if (buildCheck.getSelection()) {
             results.add(GradleBuildTask.TASK_BUILD_PROJECT);
         }
-        results.add(GradleBuildTask.TASK_DECONFIGURE_ECLIPSE);
-        results.add(GradleBuildTask.TASK_CONFIGURE_ECLIPSE);
+        if (ProjectModelSync.isEnabled() == false) {
+            results.add(GradleBuildTask.TASK_DECONFIGURE_ECLIPSE);
+            results.add(GradleBuildTask.TASK_CONFIGURE_ECLIPSE);
+        }
         return results;
     }
 
@@ -461,9 +523,29 @@ public class SelectGradleProjectsPage extends WizardPage {
         }
     }
 
+    private static final class ProjectInfo implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final String name;
+
+        final File directory;
+
+        final boolean root;
+
+        final boolean supported;
+
+        ProjectInfo(EclipseProject model, boolean supported) {
+            this.name = model.getName();
+            this.directory = model.getProjectDirectory();
+            this.root = model.getParent() == null;
+            this.supported = supported;
+        }
+    }
+
     private static class ProjectEntry {
 
-        private final EclipseProject model;
+        private final ProjectInfo info;
 
         private boolean supported = false;
 
@@ -471,28 +553,28 @@ public class SelectGradleProjectsPage extends WizardPage {
 
         private boolean locationConflict = false;
 
-        ProjectEntry(EclipseProject model) {
-            this.model = model;
+        ProjectEntry(ProjectInfo info) {
+            this.info = info;
         }
 
-        public EclipseProject getModel() {
-            return model;
+        public ProjectInfo getInfo() {
+            return info;
         }
 
         public boolean isRoot() {
-            return model.getParent() == null;
+            return info.root;
         }
 
         public File getDirectory() {
-            return model.getProjectDirectory();
+            return info.directory;
         }
 
         public IPath getLocation() {
-            return Path.fromOSString(model.getProjectDirectory().getAbsolutePath());
+            return Path.fromOSString(info.directory.getAbsolutePath());
         }
 
         public String getName() {
-            return model.getName();
+            return info.name;
         }
 
         public boolean isImported() {
@@ -521,7 +603,7 @@ public class SelectGradleProjectsPage extends WizardPage {
 
         @Override
         public String toString() {
-            return String.format("%s (@%s)", model.getName(), model.getProjectDirectory());
+            return String.format("%s (@%s)", info.name, info.directory);
         }
     }
 
@@ -503,8 +503,10 @@ public class SelectProjectTemplatePage extends WizardPage {
         if (buildCheck.getSelection()) {
             results.add(GradleBuildTask.TASK_BUILD_PROJECT);
         }
-        results.add(GradleBuildTask.TASK_DECONFIGURE_ECLIPSE);
-        results.add(GradleBuildTask.TASK_CONFIGURE_ECLIPSE);
+        if (ProjectModelSync.isEnabled() == false) {
+            results.add(GradleBuildTask.TASK_DECONFIGURE_ECLIPSE);
+            results.add(GradleBuildTask.TASK_CONFIGURE_ECLIPSE);
+        }
         return results;
     }
 
@@ -20,6 +20,9 @@ import org.eclipse.osgi.util.NLS;
 final class Messages extends NLS {
     private static final String BUNDLE_NAME = "com.asakusafw.shafu.ui.messages"; //$NON-NLS-1$
     public static String ShafuUi_buildJobName;
+    public static String ShafuUi_infoRefreshScanned;
+    public static String ShafuUi_inspectJobName;
+    public static String ShafuUi_refreshJobName;
     static {
         // initialize resource bundle
         NLS.initializeMessages(BUNDLE_NAME, Messages.class);
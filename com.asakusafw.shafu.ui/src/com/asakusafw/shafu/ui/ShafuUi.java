@@ -19,27 +19,46 @@ import static com.asakusafw.shafu.internal.ui.preferences.ShafuPreferenceConstan
 import static com.asakusafw.shafu.ui.util.PreferenceUtils.*;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.swt.widgets.Shell;
 
+import com.asakusafw.shafu.core.gradle.BuildMetrics;
+import com.asakusafw.shafu.core.gradle.GradleBuildScheduler;
 import com.asakusafw.shafu.core.gradle.GradleBuildTask;
 import com.asakusafw.shafu.core.gradle.GradleContext;
+import com.asakusafw.shafu.core.gradle.GradleContextBuilder;
 import com.asakusafw.shafu.core.gradle.GradleInspectTask;
+import com.asakusafw.shafu.core.gradle.GradleProjectLayout;
+import com.asakusafw.shafu.core.gradle.IBuildCycleListener;
 import com.asakusafw.shafu.core.gradle.RefreshTask;
+import com.asakusafw.shafu.core.util.GradleArguments;
+import com.asakusafw.shafu.core.util.IRunnable;
 import com.asakusafw.shafu.core.util.RunnableBuilder;
 import com.asakusafw.shafu.core.util.RuntimeUtils;
 import com.asakusafw.shafu.internal.ui.Activator;
@@ -55,15 +74,13 @@ import com.asakusafw.shafu.ui.consoles.ShafuConsole;
 /**
  * Core APIs of Shafu UI Plug-in.
  * @since 0.1.0
- * @version 0.4.3
+ * @version 0.8.0
  */
 public final class ShafuUi {
 
-    private static final String PATH_FLAT_ROOT_PROJECT = "master"; //$NON-NLS-1$
+    private static final String PROJECT_PATH_SEPARATOR = ":"; //$NON-NLS-1$
 
-    private static final String PATH_GRADLE_PROJECT_SETTINGS = "settings.gradle"; //$NON-NLS-1$
-
-    private static final String KEY_DISTRIBUTION_URL = "distributionUrl"; //$NON-NLS-1$
+    private static final String OPTION_CONTINUOUS_SHORT = "-t"; //$NON-NLS-1$
 
     private ShafuUi() {
         return;
@@ -98,15 +115,339 @@ public final class ShafuUi {
      * @since 0.4.3
      */
     public static void scheduleTasks(IProject project, GradleContext configuration, List<String> tasks) {
-        ShafuConsole console = ShafuUi.getGlobalConsole(true);
-        console.reset();
-        console.attachTo(configuration);
-
-        new RunnableBuilder(Messages.ShafuUi_buildJobName)
-            .add(new GradleBuildTask(configuration, tasks), 90)
-            .add(new RefreshTask(project), 10)
-            .buildWorkspaceJob()
-            .schedule();
+        Map<GradleContext, List<String>> builds = new LinkedHashMap<>();
+        builds.put(configuration, tasks);
+        scheduleBuilds(builds, Collections.<IResource>singletonList(project));
+    }
+
+    /**
+     * Schedules the Gradle tasks for the target projects.
+     * The projects which share the same root project are built in a single Gradle invocation,
+     * with task names qualified by their project paths (e.g. {@code :a:testClasses :b:testClasses}),
+     * and then all of them are refreshed at once.
+     * Task names for the root project are kept as is, so that they still run in all of its sub-projects.
+     * The project paths are resolved from the Gradle model ({@link GradleProjectLayout}). If it is not cached,
+     * this inspects the build before scheduling the builds, and each project is built in its own invocation
+     * if it is still not available.
+     * @param projects the target projects
+     * @param arguments the build arguments
+     * @since 0.8.0
+     */
+    public static void scheduleTasks(final List<IProject> projects, final GradleArguments arguments) {
+        if (projects.isEmpty()) {
+            return;
+        }
+        final Set<File> unknownLayouts = findUnknownLayouts(projects, arguments);
+        if (unknownLayouts.isEmpty()) {
+            scheduleTasks0(projects, arguments);
+            return;
+        }
+        // inspects the project layouts only if they are required to merge the builds
+        Job job = new Job(Messages.ShafuUi_inspectJobName) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                SubMonitor sub = SubMonitor.convert(monitor, Messages.ShafuUi_inspectJobName, unknownLayouts.size());
+                try {
+                    for (File rootProjectDirectory : unknownLayouts) {
+                        GradleProjectLayout.load(sub.newChild(1), createContext(rootProjectDirectory));
+                    }
+                } catch (CoreException e) {
+                    return e.getStatus();
+                } finally {
+                    monitor.done();
+                }
+                scheduleTasks0(projects, arguments);
+                return Status.OK_STATUS;
+            }
+        };
+        job.schedule();
+    }
+
+    private static void scheduleTasks0(List<IProject> projects, GradleArguments arguments) {
+        Map<GradleContext, List<String>> builds = new LinkedHashMap<>();
+        List<IResource> targets = new ArrayList<>();
+        Map<File, GradleProjectLayout> layouts = new HashMap<>();
+        for (Map.Entry<File, List<IProject>> entry : groupByRootProject(projects, arguments, layouts).entrySet()) {
+            List<IProject> members = entry.getValue();
+            GradleContext context;
+            List<String> tasks;
+            GradleProjectLayout layout = layouts.get(entry.getKey());
+            if (layout == null) {
+                IProject project = members.get(0);
+                context = createContext(project, project.getLocation().toFile(), arguments.getGradleOptions());
+                tasks = arguments.getTaskNames();
+            } else {
+                File rootProjectDirectory = entry.getKey();
+                context = createContext(members.get(0), rootProjectDirectory, arguments.getGradleOptions());
+                tasks = qualifyTaskNames(layout, members, arguments.getTaskNames());
+            }
+            applyGradleVersion(context, arguments.getGradleVersion());
+            builds.put(context, tasks);
+            targets.addAll(members);
+        }
+        scheduleBuilds(builds, targets);
+    }
+
+    private static Set<File> findUnknownLayouts(List<IProject> projects, GradleArguments arguments) {
+        Set<File> results = new LinkedHashSet<>();
+        if (projects.size() < 2 || arguments.getTaskNames().isEmpty()) {
+            return results;
+        }
+        Set<File> seen = new HashSet<>();
+        for (IProject project : projects) {
+            File rootProjectDirectory = findRootProjectDirectory(
+                    project.getLocation().toFile().getAbsoluteFile()).getAbsoluteFile();
+            // only if two or more projects share the same root project
+            if (seen.add(rootProjectDirectory) == false
+                    && GradleProjectLayout.find(createContext(rootProjectDirectory)) == null) {
+                results.add(rootProjectDirectory);
+            }
+        }
+        return results;
+    }
+
+    private static void scheduleBuilds(Map<GradleContext, List<String>> builds, List<IResource> targets) {
+        boolean continuous = false;
+        for (GradleContext context : builds.keySet()) {
+            continuous |= isContinuous(context);
+        }
+        if (continuous && builds.size() >= 2) {
+            // continuous builds never finish, so that we run them individually
+            for (Map.Entry<GradleContext, List<String>> entry : builds.entrySet()) {
+                Map<GradleContext, List<String>> single = new LinkedHashMap<>();
+                single.put(entry.getKey(), entry.getValue());
+                scheduleBuilds(single, targets);
+            }
+            return;
+        }
+        final List<GradleContext> contexts = new ArrayList<>(builds.keySet());
+        final String title = getConsoleTitle(builds);
+        RunnableBuilder builder = new RunnableBuilder(Messages.ShafuUi_buildJobName);
+        builder.add(new IRunnable() {
+            @Override
+            public void run(IProgressMonitor monitor) {
+                // creates a console only if the build is actually started
+                ShafuConsole console = ShafuConsoleManager.newConsole(title, Job.getJobManager().currentJob());
+                ShafuConsoleManager.showConsole(console);
+                for (GradleContext context : contexts) {
+                    console.attachTo(context);
+                }
+            }
+        }, 1);
+        final RefreshTask refresh = createRefreshTask(targets);
+        if (continuous == false) {
+            builder.add(refresh.newSnapshotTask(), 1);
+        }
+        Set<File> queueKeys = new LinkedHashSet<>();
+        List<Object> requestKey = new ArrayList<>();
+        final Map<GradleContext, GradleBuildTask> buildTasks = new LinkedHashMap<>();
+        for (Map.Entry<GradleContext, List<String>> entry : builds.entrySet()) {
+            GradleContext context = entry.getKey();
+            List<String> tasks = entry.getValue();
+            if (continuous) {
+                File rootProjectDirectory = findRootProjectDirectory(context.getProjectDirectory().getAbsoluteFile());
+                builder.add(new GradleBuildTask(context, tasks,
+                        new ContinuousBuildRefresher(rootProjectDirectory.getAbsoluteFile(), targets)), 100);
+            } else {
+                // publishes the build metrics after the refresh, so that it is included in the same record
+                GradleBuildTask task = new GradleBuildTask(context, tasks).withPublishMetrics(false);
+                buildTasks.put(context, task);
+                builder.add(task, 90);
+            }
+            queueKeys.add(findRootProjectDirectory(context.getProjectDirectory().getAbsoluteFile()));
+            requestKey.add(Arrays.asList(
+                    context.getProjectDirectory().getAbsoluteFile(),
+                    new ArrayList<>(tasks),
+                    new ArrayList<>(context.getGradleArguments()),
+                    new ArrayList<>(context.getJvmArguments()),
+                    new LinkedHashMap<>(context.getEnvironmentVariables()),
+                    context.getGradleDistribution(),
+                    context.getGradleVersion(),
+                    context.isUseHttps(),
+                    context.getGradleUserHomeDir(),
+                    context.getJavaHomeDir()));
+        }
+        requestKey.add(new ArrayList<>(targets));
+        if (continuous == false) {
+            builder.add(new IRunnable() {
+                @Override
+                public void run(IProgressMonitor monitor) throws CoreException {
+                    GradleContext context = contexts.get(0);
+                    long start = System.nanoTime();
+                    try {
+                        refresh.run(monitor);
+                    } finally {
+                        for (GradleBuildTask task : buildTasks.values()) {
+                            BuildMetrics metrics = task.getMetrics();
+                            if (metrics != null) {
+                                metrics.record(BuildMetrics.Phase.REFRESH, start);
+                            }
+                        }
+                        if (refresh.getScannedCount() > 0) {
+                            context.information(MessageFormat.format(
+                                    Messages.ShafuUi_infoRefreshScanned,
+                                    refresh.getScannedCount()));
+                        }
+                    }
+                }
+            }, 11);
+        }
+        if (continuous) {
+            // continuous builds never finish, so that they must not occupy the build queue nor the workspace
+            newContinuousBuildJob(builder.build()).schedule();
+            return;
+        }
+        final IRunnable body = builder.build();
+        GradleBuildScheduler.getDefault().schedule(
+                queueKeys, requestKey,
+                Messages.ShafuUi_buildJobName,
+                new IRunnable() {
+                    @Override
+                    public void run(IProgressMonitor monitor) throws CoreException {
+                        try {
+                            body.run(monitor);
+                        } finally {
+                            // publishes also the failed builds, whose refresh was skipped
+                            for (Map.Entry<GradleContext, GradleBuildTask> entry : buildTasks.entrySet()) {
+                                BuildMetrics metrics = entry.getValue().getMetrics();
+                                if (metrics != null) {
+                                    metrics.publish(entry.getKey());
+                                }
+                            }
+                        }
+                    }
+                });
+    }
+
+    private static Job newContinuousBuildJob(final IRunnable runnable) {
+        return new Job(Messages.ShafuUi_buildJobName) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    runnable.run(monitor);
+                    return Status.OK_STATUS;
+                } catch (CoreException e) {
+                    return e.getStatus();
+                }
+            }
+        };
+    }
+
+    private static String getConsoleTitle(Map<GradleContext, List<String>> builds) {
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<GradleContext, List<String>> entry : builds.entrySet()) {
+            if (buf.length() > 0) {
+                buf.append(", "); //$NON-NLS-1$
+            }
+            File projectDirectory = entry.getKey().getProjectDirectory().getAbsoluteFile();
+            buf.append(findRootProjectDirectory(projectDirectory).getName());
+            for (String task : entry.getValue()) {
+                buf.append(' ');
+                buf.append(task);
+            }
+        }
+        return buf.toString();
+    }
+
+    private static RefreshTask createRefreshTask(List<IResource> targets) {
+        IPreferenceStore prefs = Activator.getDefault().getPreferenceStore();
+        if (prefs.getBoolean(KEY_INCREMENTAL_REFRESH)) {
+            return new RefreshTask(targets, decodeToList(prefs.getString(KEY_REFRESH_OUTPUT_PATHS)));
+        }
+        return new RefreshTask(targets);
+    }
+
+    private static boolean isContinuous(GradleContext context) {
+        for (String argument : context.getGradleArguments()) {
+            if (argument.equals(GradleBuildTask.OPTION_CONTINUOUS) || argument.equals(OPTION_CONTINUOUS_SHORT)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<File, List<IProject>> groupByRootProject(
+            List<IProject> projects, GradleArguments arguments, Map<File, GradleProjectLayout> layouts) {
+        Map<File, List<IProject>> results = new LinkedHashMap<>();
+        Map<File, GradleProjectLayout> candidates = new HashMap<>();
+        for (IProject project : projects) {
+            File projectDirectory = project.getLocation().toFile().getAbsoluteFile();
+            File key = projectDirectory;
+            if (projects.size() >= 2 && arguments.getTaskNames().isEmpty() == false) {
+                File rootProjectDirectory = findRootProjectDirectory(projectDirectory).getAbsoluteFile();
+                if (candidates.containsKey(rootProjectDirectory) == false) {
+                    candidates.put(rootProjectDirectory, GradleProjectLayout.find(createContext(rootProjectDirectory)));
+                }
+                GradleProjectLayout layout = candidates.get(rootProjectDirectory);
+                if (layout != null
+                        && layout.getRootProjectDirectory().equals(rootProjectDirectory)
+                        && layout.getProjectPath(projectDirectory) != null) {
+                    key = rootProjectDirectory;
+                    layouts.put(key, layout);
+                }
+            }
+            List<IProject> members = results.get(key);
+            if (members == null) {
+                members = new ArrayList<>();
+                results.put(key, members);
+            }
+            members.add(project);
+        }
+        return results;
+    }
+
+    private static List<String> qualifyTaskNames(
+            GradleProjectLayout layout, List<IProject> projects, List<String> taskNames) {
+        Set<String> results = new LinkedHashSet<>();
+        for (IProject project : projects) {
+            String path = layout.getProjectPath(project.getLocation().toFile().getAbsoluteFile());
+            assert path != null;
+            for (String taskName : taskNames) {
+                if (path.equals(PROJECT_PATH_SEPARATOR)) {
+                    // unqualified task names also run in the sub-projects as if the root project is built alone
+                    results.add(taskName);
+                } else {
+                    results.add(qualifyTaskName(path, taskName));
+                }
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Qualifies the task name by the project path.
+     * @param projectPath the Gradle project path ({@code ":"} for the root project)
+     * @param taskName the task name
+     * @return the qualified task name, or the task name as is if it is already qualified
+     * @since 0.8.0
+     */
+    public static String qualifyTaskName(String projectPath, String taskName) {
+        if (taskName.startsWith(PROJECT_PATH_SEPARATOR)) {
+            return taskName;
+        } else if (projectPath.equals(PROJECT_PATH_SEPARATOR)) {
+            return PROJECT_PATH_SEPARATOR + taskName;
+        } else {
+            return projectPath + PROJECT_PATH_SEPARATOR + taskName;
+        }
+    }
+
+    /**
+     * Overwrites the Gradle version or distribution URI of the context.
+     * @param context the target context
+     * @param gradleVersion the Gradle version or distribution URI, or {@code null} to keep the current settings
+     * @since 0.8.0
+     */
+    public static void applyGradleVersion(GradleContext context, String gradleVersion) {
+        if (gradleVersion == null) {
+            return;
+        }
+        // like URL
+        if (gradleVersion.indexOf(':') >= 0) {
+            context.setGradleDistribution(URI.create(gradleVersion));
+        } else {
+            context.setGradleDistribution(null);
+            context.setGradleVersion(gradleVersion);
+        }
     }
 
     /**
@@ -134,131 +475,50 @@ public final class ShafuUi {
     }
 
     private static GradleContext createContext(IProject project, File projectDirectory, List<String> arguments) {
-        GradleContext context = new GradleContext(projectDirectory);
-
         IPreferenceStore prefs = Activator.getDefault().getPreferenceStore();
         GradleLogLevel logLevel = GradleLogLevel.fromSymbol(prefs.getString(KEY_LOG_LEVEL));
         GradleStackTrace stackTrace = GradleStackTrace.fromSymbol(prefs.getString(KEY_STACK_TRACE));
         GradleNetworkMode networkMode = GradleNetworkMode.fromSymbol(prefs.getString(KEY_NETWORK_MODE));
-        Map<String, String> projectProps = decodeToMap(prefs.getString(KEY_PROJECT_PROPERTIES));
-        Map<String, String> systemProps = decodeToMap(prefs.getString(KEY_SYSTEM_PROPERTIES));
-        Map<String, String> environments = decodeToMap(prefs.getString(KEY_ENVIRONMENT_VARIABLES));
-        File gradleUserHome = decodeFile(prefs.getString(KEY_GRADLE_USER_HOME));
-        File javaHome = computeJavaHome(project, prefs);
-        String gradleVersion = decodeVersion(prefs.getString(KEY_GRADLE_VERSION));
-        URI gradleDistribution = decodeUri(prefs.getString(KEY_GRADLE_DISTRIBUTION));
-        boolean useHttps = prefs.getBoolean(KEY_USE_HTTPS);
-        boolean useWrapper = prefs.getBoolean(KEY_USE_WRAPPER_CONFIGURATION);
-        List<String> wrapperPaths = decodeToList(prefs.getString(KEY_WRAPPER_CONFIGURATION_PATHS));
 
+        GradleContextBuilder builder = new GradleContextBuilder();
         if (appearsIn(GradleLogLevel.values(), arguments) == false) {
-            context.withGradleArguments(logLevel.getArguments());
+            builder.withGradleArguments(logLevel.getArguments());
         }
         if (appearsIn(GradleStackTrace.values(), arguments) == false) {
-            context.withGradleArguments(stackTrace.getArguments());
+            builder.withGradleArguments(stackTrace.getArguments());
         }
         if (appearsIn(GradleNetworkMode.values(), arguments) == false) {
-            context.withGradleArguments(networkMode.getArguments());
+            builder.withGradleArguments(networkMode.getArguments());
         }
-        for (Map.Entry<String, String> entry : projectProps.entrySet()) {
-            context.withGradleArguments(String.format("-P%s=%s", entry.getKey(), entry.getValue())); //$NON-NLS-1$
-        }
-        context.withGradleArguments(arguments);
-
-        for (Map.Entry<String, String> entry : systemProps.entrySet()) {
-            context.withJvmArguments(String.format("-D%s=%s", entry.getKey(), entry.getValue())); //$NON-NLS-1$
-        }
-        context.withEnvironmentVariables(environments);
-
-        context.setGradleUserHomeDir(gradleUserHome);
-        context.setJavaHomeDir(javaHome);
-        context.setGradleVersion(gradleVersion);
-        context.setUseHttps(useHttps);
-        if (gradleDistribution != null) {
-            context.setGradleDistribution(gradleDistribution);
-        } else if (useWrapper) {
-            URI wrapperGradleDistribution = findGradleDistributionFromWrapper(projectDirectory, wrapperPaths);
-            context.setGradleDistribution(wrapperGradleDistribution);
-        } else {
-            context.setGradleDistribution(null);
-        }
-
-        return context;
+        return builder
+                .withProjectProperties(decodeToMap(prefs.getString(KEY_PROJECT_PROPERTIES)))
+                .withGradleArguments(arguments)
+                .withSystemProperties(decodeToMap(prefs.getString(KEY_SYSTEM_PROPERTIES)))
+                .withEnvironmentVariables(decodeToMap(prefs.getString(KEY_ENVIRONMENT_VARIABLES)))
+                .withGradleUserHome(decodeFile(prefs.getString(KEY_GRADLE_USER_HOME)))
+                .withJavaHome(computeJavaHome(project, prefs))
+                .withGradleVersion(decodeVersion(prefs.getString(KEY_GRADLE_VERSION)))
+                .withGradleDistribution(decodeUri(prefs.getString(KEY_GRADLE_DISTRIBUTION)))
+                .withUseHttps(prefs.getBoolean(KEY_USE_HTTPS))
+                .withWrapperConfiguration(
+                        prefs.getBoolean(KEY_USE_WRAPPER_CONFIGURATION),
+                        decodeToList(prefs.getString(KEY_WRAPPER_CONFIGURATION_PATHS)))
+                .withDownloadSources(prefs.getBoolean(KEY_LAZY_SOURCE_ATTACHMENT) == false)
+                .build(projectDirectory);
     }
 
-    private static URI findGradleDistributionFromWrapper(File projectDirectory, List<String> wrapperPaths) {
-        URI candidate = findGradleDistributionFromWrapper0(projectDirectory, wrapperPaths);
-        if (candidate != null) {
-            return candidate;
-        }
-        File rootProjectDirectory = findRootProjectDirectory(projectDirectory);
-        if (rootProjectDirectory != null && rootProjectDirectory.equals(projectDirectory) == false) {
-            return findGradleDistributionFromWrapper0(rootProjectDirectory, wrapperPaths);
-        }
-        return null;
-    }
-
-    private static URI findGradleDistributionFromWrapper0(File baseDirectory, List<String> wrapperPaths) {
-        for (String path : wrapperPaths) {
-            String p = path.trim();
-            if (p.isEmpty()) {
-                continue;
-            }
-            File confFile = new File(baseDirectory, p);
-            if (confFile.isFile() == false || confFile.canRead() == false) {
-                continue;
-            }
-            Properties properties = new Properties();
-            try (InputStream input = new FileInputStream(confFile)) {
-                properties.load(input);
-            } catch (IOException e) {
-                LogUtil.log(IStatus.WARNING, MessageFormat.format(
-                        "Invalid Gradle wrapper configuration file: {0}", //$NON-NLS-1$
-                        confFile), e);
-                return null;
-            }
-            URI uri = decodeUri(properties.getProperty(KEY_DISTRIBUTION_URL));
-            if (uri == null) {
-                continue;
-            }
-            LogUtil.debug("found wrapper: {0} (->{1})", confFile, uri); //$NON-NLS-1$
-            return uri;
-        }
-        return null;
+    /**
+     * Returns the root project directory of the Gradle build which contains the target project.
+     * @param projectDirectory the target project directory
+     * @return the root project directory, or the target project directory if it is not a part of multi-project
+     * @since 0.8.0
+     */
+    public static File getRootProjectDirectory(File projectDirectory) {
+        return findRootProjectDirectory(projectDirectory.getAbsoluteFile());
     }
 
     private static File findRootProjectDirectory(File projectDirectory) {
-        if (hasSettingsFile(projectDirectory)) {
-            LogUtil.debug("found settings.gradle: {0}", projectDirectory); //$NON-NLS-1$
-            return projectDirectory;
-        }
-
-        // https://docs.gradle.org/4.4/userguide/build_lifecycle.html#sec:initialization
-        File parentDirectory = projectDirectory.getParentFile();
-        // It looks in a directory called 'master' which has the same nesting level as the current dir.
-        if (parentDirectory != null && parentDirectory.isDirectory()) {
-            File masterDirectory = new File(parentDirectory, PATH_FLAT_ROOT_PROJECT);
-            if (hasSettingsFile(masterDirectory)) {
-                LogUtil.debug("found master: {0}", masterDirectory); //$NON-NLS-1$
-                return masterDirectory;
-            }
-        }
-
-        // If not found yet, it searches parent directories.
-        for (File dir = parentDirectory; dir != null && dir.isDirectory(); dir = dir.getParentFile()) {
-            if (hasSettingsFile(dir)) {
-                LogUtil.debug("found root project: {0}", dir); //$NON-NLS-1$
-                return dir;
-            }
-        }
-
-        // If not found yet, the build is executed as a single project build.
-        LogUtil.debug("settings.gradle is not found: {0}", projectDirectory); //$NON-NLS-1$
-        return projectDirectory;
-    }
-
-    private static boolean hasSettingsFile(File directory) {
-        return directory.isDirectory() && new File(directory, PATH_GRADLE_PROJECT_SETTINGS).isFile();
+        return GradleContextBuilder.findRootProjectDirectory(projectDirectory);
     }
 
     private static File computeJavaHome(IProject project, IPreferenceStore prefs) {
@@ -297,6 +557,7 @@ public final class ShafuUi {
 
     /**
      * Returns the global console instance of Shafu UI.
+     * Each build has its own console, and this returns the console of the latest build.
      * @param activate {@code true} to activate the global console
      * @return the global console
      */
@@ -316,4 +577,96 @@ public final class ShafuUi {
         ConsoleDialog dialog = new ConsoleDialog(shell, console);
         dialog.open();
     }
+
+    /**
+     * Refreshes only the projects whose tasks were actually executed in each continuous build cycle.
+     * If incremental refresh is enabled, this takes snapshots of the projects in the build when each cycle is
+     * started, and then refreshes only their changed directories when the cycle is finished.
+     */
+    private static final class ContinuousBuildRefresher implements IBuildCycleListener {
+
+        private final File rootProjectDirectory;
+
+        private final List<IResource> defaultTargets;
+
+        private GradleProjectLayout layout;
+
+        private RefreshTask current;
+
+        ContinuousBuildRefresher(File rootProjectDirectory, List<IResource> defaultTargets) {
+            this.rootProjectDirectory = rootProjectDirectory;
+            this.defaultTargets = new ArrayList<>(defaultTargets);
+        }
+
+        @Override
+        public void cycleStarted() {
+            Set<IResource> candidates = new LinkedHashSet<>(defaultTargets);
+            IPath root = Path.fromOSString(rootProjectDirectory.getPath());
+            for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+                if (project.isAccessible() && project.getLocation() != null && root.isPrefixOf(project.getLocation())) {
+                    candidates.add(project);
+                }
+            }
+            RefreshTask task = createRefreshTask(new ArrayList<>(candidates));
+            try {
+                task.newSnapshotTask().run(new NullProgressMonitor());
+            } catch (CoreException e) {
+                LogUtil.log(e.getStatus());
+            }
+            current = task;
+        }
+
+        @Override
+        public void cycleFinished(Set<String> executedTaskPaths) {
+            RefreshTask snapshot = current;
+            current = null;
+            if (executedTaskPaths.isEmpty()) {
+                return;
+            }
+            GradleProjectLayout layout = getLayout();
+            Set<IResource> targets = new LinkedHashSet<>();
+            for (String taskPath : executedTaskPaths) {
+                int index = taskPath.lastIndexOf(PROJECT_PATH_SEPARATOR);
+                IProject project = null;
+                if (layout != null && index >= 0) {
+                    String projectPath = index == 0 ? PROJECT_PATH_SEPARATOR : taskPath.substring(0, index);
+                    File projectDirectory = layout.getProjectDirectory(projectPath);
+                    project = projectDirectory == null ? null : findProject(projectDirectory);
+                }
+                if (project == null) {
+                    // the task is not in the workspace projects, or the project layout is not yet known
+                    LogUtil.debug("unknown task project: {0}", taskPath); //$NON-NLS-1$
+                    targets.addAll(defaultTargets);
+                } else {
+                    targets.add(project);
+                }
+            }
+            LogUtil.debug("refreshing continuous build outputs: {0}", targets); //$NON-NLS-1$
+            List<IResource> list = new ArrayList<>(targets);
+            WorkspaceJob job = RunnableBuilder.toWorkspaceJob(
+                    Messages.ShafuUi_refreshJobName,
+                    snapshot == null ? new RefreshTask(list) : snapshot.subset(list));
+            job.setSystem(true);
+            job.schedule();
+        }
+
+        private GradleProjectLayout getLayout() {
+            if (layout == null) {
+                layout = GradleProjectLayout.find(createContext(rootProjectDirectory));
+            }
+            return layout;
+        }
+
+        private static IProject findProject(File projectDirectory) {
+            for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+                if (project.isAccessible() == false || project.getLocation() == null) {
+                    continue;
+                }
+                if (project.getLocation().toFile().getAbsoluteFile().equals(projectDirectory)) {
+                    return project;
+                }
+            }
+            return null;
+        }
+    }
 }
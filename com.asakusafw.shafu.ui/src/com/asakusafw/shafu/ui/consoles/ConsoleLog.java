@@ -0,0 +1,149 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.ui.consoles;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+
+import org.eclipse.core.runtime.IStatus;
+
+import com.asakusafw.shafu.internal.ui.LogUtil;
+import com.asakusafw.shafu.internal.ui.consoles.BuildLogStore;
+
+/**
+ * Records the console output of each build into a log file.
+ * The log files are kept uncompressed, so that they can be searched while the builds are running.
+ * Each log file is kept open until {@link #reset()} or {@link #close()}, so that it is never re-created after it was pruned.
+ * @since 0.8.0
+ */
+final class ConsoleLog implements Closeable {
+
+    static final Charset ENCODING = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private final BuildLogStore store;
+
+    private File file;
+
+    private Writer writer;
+
+    private boolean failed;
+
+    ConsoleLog(BuildLogStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Appends the text into the current log file.
+     * The log file will be created on the first invocation after {@link #reset()}.
+     * @param text the text
+     */
+    synchronized void append(String text) {
+        if (failed) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                if (store.isEnabled() == false) {
+                    failed = true;
+                    return;
+                }
+                file = store.create();
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ENCODING));
+                store.prune();
+            }
+            writer.write(text);
+        } catch (IOException e) {
+            LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                    Messages.ConsoleLog_errorFailedToWrite,
+                    file), e);
+            failed = true;
+            finish();
+        }
+    }
+
+    /**
+     * Returns the current log file.
+     * @return the current log file, or {@code null} if there is no contents
+     */
+    synchronized File getFile() {
+        if (writer == null) {
+            return file;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                    Messages.ConsoleLog_errorFailedToWrite,
+                    file), e);
+        }
+        return file;
+    }
+
+    /**
+     * Flushes the current log file, so that others can read its whole contents.
+     * The file is kept open, and the next {@link #append(String)} will continue it.
+     */
+    synchronized void complete() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            LogUtil.log(IStatus.WARNING, MessageFormat.format(
+                    Messages.ConsoleLog_errorFailedToWrite,
+                    file), e);
+            failed = true;
+            finish();
+        }
+    }
+
+    /**
+     * Finishes the current log file, and then the next {@link #append(String)} will start a new one.
+     */
+    synchronized void reset() {
+        finish();
+        failed = false;
+        file = null;
+    }
+
+    private void finish() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LogUtil.debug("Failed to close build log: {0}", e.toString()); //$NON-NLS-1$
+            }
+            writer = null;
+        }
+        if (file != null) {
+            store.release(file);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        finish();
+        failed = true;
+    }
+}
@@ -19,7 +19,9 @@ import org.eclipse.osgi.util.NLS;
 
 final class Messages extends NLS {
     private static final String BUNDLE_NAME = "com.asakusafw.shafu.ui.consoles.messages"; //$NON-NLS-1$
+    public static String ConsoleLog_errorFailedToWrite;
     public static String ShafuConsole_errorFailedToCloseStream;
+    public static String ShafuConsole_infoTruncated;
     public static String ShafuConsole_name;
     static {
         // initialize resource bundle
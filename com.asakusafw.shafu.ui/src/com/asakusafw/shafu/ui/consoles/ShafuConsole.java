@@ -15,15 +15,26 @@
  */
 package com.asakusafw.shafu.ui.consoles;
 
+import static com.asakusafw.shafu.internal.ui.preferences.ShafuPreferenceConstants.*;
+
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.ui.console.IConsoleView;
 import org.eclipse.ui.console.MessageConsole;
@@ -33,11 +44,12 @@ import org.eclipse.ui.part.IPageBookViewPage;
 import com.asakusafw.shafu.core.gradle.GradleContext;
 import com.asakusafw.shafu.internal.ui.Activator;
 import com.asakusafw.shafu.internal.ui.LogUtil;
+import com.asakusafw.shafu.internal.ui.consoles.BuildLogStore;
 
 /**
  * Console for this plugin.
  * @since 0.1.0
- * @version 0.3.3
+ * @version 0.8.0
  */
 public final class ShafuConsole extends MessageConsole {
 
@@ -46,6 +58,20 @@ public final class ShafuConsole extends MessageConsole {
      */
     public static final String NAME = Messages.ShafuConsole_name;
 
+    /**
+     * The property name of whether or not any builds are running on this console.
+     * @see #isRunning()
+     * @since 0.8.0
+     */
+    public static final String P_RUNNING = ShafuConsole.class.getName() + ".running"; //$NON-NLS-1$
+
+    /**
+     * The property name of whether or not the older output was discarded from this console.
+     * @see #isTruncated()
+     * @since 0.8.0
+     */
+    public static final String P_TRUNCATED = ShafuConsole.class.getName() + ".truncated"; //$NON-NLS-1$
+
     private final Color backgroundColor;
 
     private final Color outputColor;
@@ -62,11 +88,33 @@ public final class ShafuConsole extends MessageConsole {
 
     final AtomicReference<IConsoleView> ui = new AtomicReference<>();
 
+    private final Set<Job> jobs = new LinkedHashSet<>();
+
+    private final ConsoleLog log;
+
+    private final AtomicLong appendedCount = new AtomicLong();
+
+    private final AtomicBoolean truncated = new AtomicBoolean();
+
+    private volatile int highWaterMark;
+
+    private final String baseName;
+
     /**
      * Creates a new instance.
      */
     public ShafuConsole() {
-        super(NAME, null);
+        this(NAME);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param name the console name
+     * @since 0.8.0
+     */
+    public ShafuConsole(String name) {
+        super(name, null);
+        this.baseName = name;
         this.backgroundColor = createColor(255, 255, 255);
         this.outputColor = createColor(0, 0, 0);
         this.errorColor = createColor(255, 0, 0);
@@ -79,6 +127,19 @@ public final class ShafuConsole extends MessageConsole {
         this.errorStream.setColor(errorColor);
         this.infoStream = new ShafuOutputStream(this, Charset.defaultCharset());
         this.infoStream.setColor(infoColor);
+        this.log = new ConsoleLog(BuildLogStore.getDefault());
+        applyWaterMarks();
+    }
+
+    private void applyWaterMarks() {
+        int high = Activator.getDefault().getPreferenceStore().getInt(KEY_CONSOLE_HIGH_WATER_MARK);
+        if (high > 0) {
+            setWaterMarks(high - Math.max(high / 5, 1), high);
+            highWaterMark = high;
+        } else {
+            setWaterMarks(-1, -1);
+            highWaterMark = 0;
+        }
     }
 
     @Override
@@ -99,6 +160,120 @@ public final class ShafuConsole extends MessageConsole {
         context.withInformationOutput(infoStream.toPrintWriter());
     }
 
+    /**
+     * Binds the running job to this console.
+     * The bound job can be terminated by {@link #terminate()}, and will be unbound after it was finished.
+     * @param job the target job, or {@code null} to do nothing
+     * @since 0.8.0
+     */
+    public void bindJob(final Job job) {
+        if (job == null) {
+            return;
+        }
+        boolean wasRunning;
+        synchronized (jobs) {
+            wasRunning = jobs.isEmpty() == false;
+            if (jobs.add(job) == false) {
+                return;
+            }
+        }
+        job.addJobChangeListener(new JobChangeAdapter() {
+            @Override
+            public void done(IJobChangeEvent event) {
+                job.removeJobChangeListener(this);
+                unbindJob(job);
+            }
+        });
+        if (job.getState() == Job.NONE) {
+            unbindJob(job);
+        } else if (wasRunning == false) {
+            firePropertyChange(this, P_RUNNING, Boolean.FALSE, Boolean.TRUE);
+        }
+    }
+
+    void unbindJob(Job job) {
+        boolean running;
+        synchronized (jobs) {
+            if (jobs.remove(job) == false) {
+                return;
+            }
+            running = jobs.isEmpty() == false;
+        }
+        if (running == false) {
+            // flushes the log file, so that others can search its whole contents
+            log.complete();
+            firePropertyChange(this, P_RUNNING, Boolean.TRUE, Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Returns whether or not any builds are running on this console.
+     * @return {@code true} if any builds are running, otherwise {@code false}
+     * @since 0.8.0
+     */
+    public boolean isRunning() {
+        synchronized (jobs) {
+            return jobs.isEmpty() == false;
+        }
+    }
+
+    /**
+     * Requests to terminate the builds running on this console.
+     * @since 0.8.0
+     */
+    public void terminate() {
+        List<Job> targets;
+        synchronized (jobs) {
+            targets = new ArrayList<>(jobs);
+        }
+        for (Job job : targets) {
+            LogUtil.debug("Terminating build: {0}", job.getName()); //$NON-NLS-1$
+            job.cancel();
+        }
+    }
+
+    /**
+     * Returns whether or not the older output was discarded from this console.
+     * @return {@code true} if it was discarded, otherwise {@code false}
+     * @see #getFullLog()
+     * @since 0.8.0
+     */
+    public boolean isTruncated() {
+        return truncated.get();
+    }
+
+    /**
+     * Returns the build log file which contains the full output since the last {@link #reset()}.
+     * The file is encoded in UTF-8, and may still grow while the build is running.
+     * @return the build log file, or {@code null} if it is not available
+     * @since 0.8.0
+     */
+    public File getFullLog() {
+        return log.getFile();
+    }
+
+    void appended(String text) {
+        log.append(text);
+        long count = appendedCount.addAndGet(text.length());
+        int mark = highWaterMark;
+        if (mark > 0 && count > mark && truncated.compareAndSet(false, true)) {
+            // shows the note in the console title, because the water marks may discard any notes in the document
+            updateName(String.format("%s %s", baseName, MessageFormat.format( //$NON-NLS-1$
+                    Messages.ShafuConsole_infoTruncated,
+                    mark)));
+            firePropertyChange(this, P_TRUNCATED, Boolean.FALSE, Boolean.TRUE);
+        }
+    }
+
+    private void updateName(final String name) {
+        Activator.getDisplay().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                setName(name);
+            }
+        });
+    }
+
     /**
      * Returns the standard input stream for this console.
      * @return the standard input stream
@@ -138,6 +313,13 @@ public final class ShafuConsole extends MessageConsole {
      */
     public void reset() {
         clearConsole();
+        log.reset();
+        appendedCount.set(0L);
+        if (truncated.getAndSet(false)) {
+            updateName(baseName);
+            firePropertyChange(this, P_TRUNCATED, Boolean.TRUE, Boolean.FALSE);
+        }
+        applyWaterMarks();
         Activator.getDisplay().asyncExec(new Runnable() {
             @Override
             public void run() {
@@ -161,11 +343,15 @@ public final class ShafuConsole extends MessageConsole {
 
     private void dispose0() {
         ui.set(null);
+        terminate();
         closeQuietly(outputStream);
         closeQuietly(errorStream);
+        closeQuietly(infoStream);
+        log.close();
         backgroundColor.dispose();
         outputColor.dispose();
         errorColor.dispose();
+        infoColor.dispose();
     }
 
     private static void closeQuietly(Closeable object) {
@@ -175,28 +361,4 @@ public final class ShafuConsole extends MessageConsole {
             LogUtil.log(IStatus.WARNING, Messages.ShafuConsole_errorFailedToCloseStream, e);
         }
     }
-
-    private static final class ShafuOutputStream extends MessageConsoleStream {
-
-        private final Charset encoding;
-
-        public ShafuOutputStream(ShafuConsole console, Charset encoding) {
-            super(console);
-            this.encoding = encoding;
-        }
-
-        @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            write(new String(b, off, len, encoding));
-        }
-
-        @Override
-        public void setEncoding(String encoding) {
-            throw new UnsupportedOperationException();
-        }
-
-        PrintWriter toPrintWriter() {
-            return new PrintWriter(new OutputStreamWriter(this, encoding), true);
-        }
-    }
 }
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2013-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.shafu.ui.consoles;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.ui.console.MessageConsoleStream;
+
+import com.asakusafw.shafu.internal.ui.LogUtil;
+
+/**
+ * An output stream for {@link ShafuConsole}.
+ * This decodes the written bytes with a reusable {@link CharsetDecoder}, and appends them to the console in
+ * coalesced batches, either when the buffered characters exceed {@link #FLUSH_THRESHOLD} or
+ * {@link #FLUSH_DELAY_MILLIS} has been elapsed since the first buffered character.
+ * Multi-byte characters split across the written chunks are kept until the rest bytes arrive.
+ * The appended contents are also passed to {@link ShafuConsole#appended(String)}.
+ * @since 0.8.0
+ */
+final class ShafuOutputStream extends MessageConsoleStream {
+
+    static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    static final long FLUSH_DELAY_MILLIS = 50L;
+
+    private static final int INPUT_BUFFER_SIZE = 8 * 1024;
+
+    private final ShafuConsole console;
+
+    private final Charset encoding;
+
+    private final CharsetDecoder decoder;
+
+    private final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+
+    private final CharBuffer output = CharBuffer.allocate(FLUSH_THRESHOLD);
+
+    private final Job flusher;
+
+    private boolean closed;
+
+    ShafuOutputStream(ShafuConsole console, Charset encoding) {
+        super(console);
+        this.console = console;
+        this.encoding = encoding;
+        this.decoder = encoding.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.flusher = new Job(console.getName()) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    LogUtil.debug("Failed to flush console output: {0}", e.toString()); //$NON-NLS-1$
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        this.flusher.setSystem(true);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        boolean schedule;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            boolean wasEmpty = output.position() == 0;
+            int offset = off;
+            int rest = len;
+            while (rest > 0) {
+                int count = Math.min(rest, input.remaining());
+                input.put(b, offset, count);
+                offset += count;
+                rest -= count;
+                decode(false);
+            }
+            schedule = wasEmpty && output.position() > 0;
+        }
+        if (schedule) {
+            flusher.schedule(FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    @Override
+    public void write(String str) throws IOException {
+        synchronized (this) {
+            // keeps the order of the buffered contents
+            drain();
+            append(str);
+        }
+    }
+
+    private void decode(boolean endOfInput) throws IOException {
+        input.flip();
+        while (true) {
+            CoderResult result = decoder.decode(input, output, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        input.compact();
+    }
+
+    private void drain() throws IOException {
+        if (output.position() == 0) {
+            return;
+        }
+        output.flip();
+        String text = output.toString();
+        output.clear();
+        append(text);
+    }
+
+    private void append(String text) throws IOException {
+        super.write(text);
+        console.appended(text);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (this) {
+            drain();
+        }
+        super.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            decode(true);
+            while (decoder.flush(output).isOverflow()) {
+                drain();
+            }
+            drain();
+            closed = true;
+        }
+        flusher.cancel();
+        super.close();
+    }
+
+    @Override
+    public void setEncoding(String encodingName) {
+        throw new UnsupportedOperationException();
+    }
+
+    PrintWriter toPrintWriter() {
+        return new PrintWriter(new OutputStreamWriter(this, encoding), true);
+    }
+}
@@ -17,7 +17,9 @@ package com.asakusafw.shafu.ui.util;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
@@ -35,7 +37,7 @@ import org.eclipse.ui.handlers.HandlerUtil;
 
 /**
  * Utilities for handling {@link IProject}s.
- * @version 0.2.5
+ * @version 0.8.0
  */
 public class ProjectHandlerUtils {
 
@@ -65,6 +67,31 @@ public class ProjectHandlerUtils {
         return resource.getProject();
     }
 
+    /**
+     * Obtains the projects in current selection.
+     * @param event current event object
+     * @return the projects in current selection, or an empty list if there are no projects
+     * @throws ExecutionException if event state is invalid
+     * @throws IllegalArgumentException if the argument is null
+     * @since 0.8.0
+     */
+    public static List<IProject> getTargetProjects(ExecutionEvent event) throws ExecutionException {
+        if (event == null) {
+            throw new IllegalArgumentException("event is null"); //$NON-NLS-1$
+        }
+        Set<IProject> results = new LinkedHashSet<>();
+        for (IResource resource : getSelectedResources(event)) {
+            results.add(resource.getProject());
+        }
+        if (results.isEmpty()) {
+            IResource resource = getEditingResource(event);
+            if (resource != null) {
+                results.add(resource.getProject());
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
     /**
      * Obtains a resource in current selection.
      * @param event current event object
@@ -95,6 +122,21 @@ public class ProjectHandlerUtils {
         return null;
     }
 
+    private static List<IResource> getSelectedResources(ExecutionEvent event) {
+        ISelection selection = HandlerUtil.getCurrentSelection(event);
+        if (selection == null || selection.isEmpty() || (selection instanceof IStructuredSelection) == false) {
+            return Collections.emptyList();
+        }
+        List<IResource> results = new ArrayList<>();
+        for (Object element : ((IStructuredSelection) selection).toList()) {
+            IResource resource = adapt(element, RESOURCE_KIND);
+            if (resource != null) {
+                results.add(resource);
+            }
+        }
+        return results;
+    }
+
     private static IResource getEditingResource(ExecutionEvent event) {
         IWorkbenchPart part = HandlerUtil.getActivePart(event);
         if (part == null || (part instanceof IEditorPart) == false) {